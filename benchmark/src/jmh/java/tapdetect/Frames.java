@@ -0,0 +1,121 @@
+package tapdetect;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Fixtures of the benchmarks
+ * <br>A source is either a file in `snapshots/` or "synthetic-<n>",
+ * <br>a generated frame with `n` fingers hanging down from palms like hands over a keyboard.
+ */
+final class Frames {
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    // colors of the generated frames, in YCrCb
+    static final double[] SKIN = {150, 150, 110};
+    static final double[] BACKGROUND = {70, 128, 128};
+    static final double[] SKIN_STD = {20, 2, 3};
+
+    private Frames() {
+    }
+
+    static Mat load(String source, int height) {
+        /**
+         * @return: a BGR frame of `height` rows
+         */
+        if (source.startsWith("synthetic-")) {
+            return synthetic(height, Integer.parseInt(source.substring("synthetic-".length())));
+        }
+        File file = new File(System.getProperty("tapdetect.snapshots", "snapshots"), source);
+        Mat im = Imgcodecs.imread(file.getPath());
+        if (im.empty()) {
+            throw new IllegalStateException("Can not read snapshot " + file);
+        }
+        Util.resize(im, height);
+        return im;
+    }
+
+    static Mat synthetic(int height, int fingers) {
+        int width = height * 4 / 3;
+        Mat im = new Mat(height, width, CvType.CV_8UC3, toBgr(BACKGROUND));
+        Scalar skin = toBgr(SKIN);
+        Random random = new Random(fingers);
+
+        double slot = width / (fingers + 1.0);
+        int fingerWidth = (int) Math.max(slot / 2, 2);
+        for (int hand = 0; hand * 5 < fingers; ++hand) {
+            // a palm above every 5 fingers
+            int first = hand * 5, last = Math.min(first + 5, fingers) - 1;
+            Imgproc.rectangle(im,
+                    new Point(slot * (first + 1) - fingerWidth, height * 0.35),
+                    new Point(slot * (last + 1) + fingerWidth, height * 0.5),
+                    skin, -1);
+        }
+        for (int i = 0; i < fingers; ++i) {
+            double x = slot * (i + 1);
+            double bottom = height * (0.6 + 0.2 * random.nextDouble());
+            Imgproc.rectangle(im,
+                    new Point(x - fingerWidth / 2, height * 0.45), new Point(x + fingerWidth / 2, bottom),
+                    skin, -1);
+        }
+        return im;
+    }
+
+    static void preprocess(Mat im) {
+        // same as `TapSession.convert`
+        Util.resize(im);
+        Imgproc.cvtColor(im, im, Imgproc.COLOR_BGR2YCrCb);
+        Imgproc.blur(im, im, new Size(Config.IM_BLUR_SIZE, Config.IM_BLUR_SIZE));
+    }
+
+    static void calibrate(ColorRange colorRange, String source) {
+        /**
+         * Bring `colorRange` to a stable calibration for `source`
+         * Generated frames get the statistic of their skin color directly,
+         * snapshots are sampled with `snapshots/sample.jpg`, falling back to the default range
+         */
+        colorRange.reset();
+        if (source.startsWith("synthetic-")) {
+            int n = 1000;
+            double[] sum = new double[3], sqSum = new double[3];
+            for (int i = 0; i < 3; ++i) {
+                sum[i] = SKIN[i] * n;
+                sqSum[i] = (SKIN[i] * SKIN[i] + SKIN_STD[i] * SKIN_STD[i]) * n;
+            }
+            for (int i = 0; i < Config.SAMPLE_STABLE_CNT; ++i) {
+                colorRange.updateRange(sum, sqSum, n);
+            }
+            return;
+        }
+
+        Mat sample = load("sample.jpg", Config.IM_HEIGHT);
+        preprocess(sample);
+        Sampler sampler = new Sampler(colorRange);
+        for (int i = 0; i < Config.SAMPLE_STABLE_CNT * 2 && !sampler.sampleCompleted(); ++i) {
+            sampler.sample(sample);
+        }
+        if (!sampler.sampleCompleted()) {
+            colorRange.reset();
+        }
+        sample.release();
+    }
+
+    private static Scalar toBgr(double[] ycrcb) {
+        Mat pixel = new Mat(1, 1, CvType.CV_8UC3, new Scalar(ycrcb));
+        Imgproc.cvtColor(pixel, pixel, Imgproc.COLOR_YCrCb2BGR);
+        Scalar bgr = new Scalar(pixel.get(0, 0));
+        pixel.release();
+        return bgr;
+    }
+}
@@ -0,0 +1,150 @@
+package tapdetect;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import tapdetect.facade.FrameResult;
+import tapdetect.facade.TapSession;
+
+/**
+ * Per-stage and end-to-end cost of the detection of one frame
+ * <br>`height` is the height of the camera frame, the stages after preprocessing
+ * <br>work on `Config.IM_HEIGHT` rows whatever the input is.
+ * <br>Stages writing into their input work on a copy, `copyFrame` and `copyMask` measure the copies.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PipelineBenchmark {
+    @Param({"synthetic-0", "synthetic-5", "synthetic-10", "synthetic-20", "detection.jpg", "sample.jpg"})
+    public String source;
+
+    @Param({"480", "720", "1080"})
+    public int height;
+
+    private Mat frame;  // BGR camera frame
+    private Mat converted;  // `frame` after preprocessing
+    private Mat hand;  // hand mask of `converted`
+    private Mat input;  // copy consumed by a stage
+
+    private ColorRange colorRange;
+    private Workspace ws;
+    private TapSession session;
+    private final FrameResult result = new FrameResult();
+    private long timestampMs = 0;  // capture time of the frames, one processing interval apart
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        frame = Frames.load(source, height);
+        input = new Mat();
+
+        session = new TapSession();
+        session.setThrottled(false);
+        colorRange = session.getColorRange();
+        Frames.calibrate(colorRange, source);
+
+        ws = new Workspace();
+        converted = frame.clone();
+        Frames.preprocess(converted);
+        hand = HandDetector.getHand(converted, colorRange, ws).clone();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        frame.release();
+        converted.release();
+        hand.release();
+        input.release();
+        ws.release();
+        session.release();
+    }
+
+    @Benchmark
+    public Mat copyFrame() {
+        frame.copyTo(input);
+        return input;
+    }
+
+    @Benchmark
+    public Mat copyMask() {
+        hand.copyTo(input);
+        return input;
+    }
+
+    @Benchmark
+    public Mat preprocess() {
+        // resize, color conversion and blur
+        frame.copyTo(input);
+        Frames.preprocess(input);
+        return input;
+    }
+
+    @Benchmark
+    public Mat handMask() {
+        return HandDetector.getHand(converted, colorRange, ws);
+    }
+
+    @Benchmark
+    public Mat colorMaskInRange() {
+        // the color mask of `handMask` by `Core.inRange`
+        Scalar[] range = colorRange.getRange();
+        Core.inRange(converted, range[0], range[1], input);
+        return input;
+    }
+
+    @Benchmark
+    public Mat colorMaskLut() {
+        // same as `colorMaskInRange` by a `SkinLut` of `MODEL_BOX`
+        ws.skinLut.update(colorRange, SkinLut.MODEL_BOX);
+        ws.skinLut.classify(converted, input);
+        return input;
+    }
+
+    @Benchmark
+    public int largeContours() {
+        List<MatOfPoint> contours = Util.largeContours(hand, Config.HAND_AREA_MIN, ws.hierarchy);
+        int cnt = contours.size();
+        for (MatOfPoint contour : contours) {
+            contour.release();
+        }
+        return cnt;
+    }
+
+    @Benchmark
+    public List<Point> fingers() {
+        // contours, polygon approximation and finger tip detection
+        hand.copyTo(input);
+        return FingerDetector.getFingers(converted, input, null, ws);
+    }
+
+    @Benchmark
+    public List<Point> fullPipeline() {
+        // `Tap.getAll` path of a calibrated session
+        frame.copyTo(input);
+        return session.getAll(input, null, null);
+    }
+
+    @Benchmark
+    public FrameResult fullPipelineFrameResult() {
+        // `Tap.process` path of a calibrated session, filling a reused result
+        frame.copyTo(input);
+        timestampMs += Config.PROCESS_INTERVAL_MS;
+        return session.process(input, timestampMs, result);
+    }
+}
@@ -0,0 +1,59 @@
+package tapdetect;
+
+import org.opencv.core.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import tapdetect.TapDetector.TapDetectPoint;
+
+/**
+ * Cost of the finger tip tracking against the number of tips in a frame
+ * <br>Frames alternate between 2 sets of tips, the second one is the first moved by a few pixels
+ * <br>plus a few noise points, like tips of 2 players on one keyboard.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrackingBenchmark {
+    @Param({"5", "10", "20", "40"})
+    public int tips;
+
+    private final List<List<Point>> frames = new ArrayList<>();
+    private int frameIndex = 0;
+    private TapDetector tapDetector;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(tips);
+        List<Point> first = new ArrayList<>(), second = new ArrayList<>();
+        for (int i = 0; i < tips; ++i) {
+            double x = random.nextInt(440), y = 120 + random.nextInt(130);
+            first.add(new Point(x, y));
+            second.add(new Point(x + random.nextInt(7) - 3, y + random.nextInt(12)));
+        }
+        for (int i = 0; i < tips / 5; ++i) {
+            second.add(new Point(random.nextInt(440), 120 + random.nextInt(130)));
+        }
+        frames.add(first);
+        frames.add(second);
+        tapDetector = new TapDetector();
+    }
+
+    @Benchmark
+    public List<TapDetectPoint> getTappingAll() {
+        frameIndex ^= 1;
+        return tapDetector.getTappingAll(null, frames.get(frameIndex));
+    }
+}
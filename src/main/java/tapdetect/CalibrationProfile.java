@@ -0,0 +1,223 @@
+package tapdetect;
+
+import org.opencv.core.Mat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A calibration saved for a camera / room, so that a session could start without sampling for seconds
+ * <br>Holds the calibrated `ColorRange` (range, sampling history, statistic values)
+ * <br>and the `Sensibility` of the session, i.e. the values set by `Tap.set*Sensibility`.
+ * <br>Profiles are saved as `<key>.tapcal` files of a few hundred bytes:
+ * <br>  int magic, short format version, UTF key, long save time, then the values as doubles.
+ * <br>A file of another format version or another key is refused by `load` with an `IOException`,
+ * <br>the caller then samples as if there were no profile.
+ */
+public class CalibrationProfile {
+    private static final int MAGIC = 0x54415043;  // "TAPC"
+    private static final short FORMAT_VERSION = 1;
+    private static final String SUFFIX = ".tapcal";
+
+    private final String key;
+    private long savedAtMs;
+
+    // `ColorRange`
+    final double[][] range;
+    final List<double[]> history;
+    final double[] aver;
+    final double[] std;
+    final double covCrCb;
+
+    // `Sensibility`
+    private int moveDistMax;
+    private int lingerDistMax;
+    private double[] colorRangeExpand;
+    private double samplePassThreshold;
+    private double[] fingerColorTolerance;
+
+    CalibrationProfile(String key, double[][] range, List<double[]> history,
+                       double[] aver, double[] std, double covCrCb) {
+        this.key = key;
+        this.range = range;
+        this.history = history;
+        this.aver = aver;
+        this.std = std;
+        this.covCrCb = covCrCb;
+        this.savedAtMs = System.currentTimeMillis();
+    }
+
+    CalibrationProfile(String key, double[][] range, List<double[]> history,
+                       double[] aver, double[] std, double covCrCb, Sensibility sensibility) {
+        this(key, range, history, aver, std, covCrCb);
+        this.moveDistMax = sensibility.getMoveDistMax();
+        this.lingerDistMax = sensibility.getLingerDistMax();
+        this.colorRangeExpand = sensibility.getColorRangeExpand().clone();
+        this.samplePassThreshold = sensibility.getSamplePassThreshold();
+        this.fingerColorTolerance = sensibility.getFingerColorTolerance().clone();
+    }
+
+    public static CalibrationProfile capture(ColorRange colorRange, String key) {
+        /**
+         * @param key: the camera / room the calibration is made for
+         * @return: the calibration of `colorRange` and its sensibility settings,
+         *      null if `colorRange` is not calibrated
+         */
+        return colorRange.toProfile(key);
+    }
+
+    public static File fileOf(File dir, String key) {
+        // keys are free text, only keep the characters safe for a file name
+        return new File(dir, key.replaceAll("[^A-Za-z0-9._-]", "_") + SUFFIX);
+    }
+
+    public static CalibrationProfile load(File dir, String key) throws IOException {
+        /**
+         * @return: the profile saved for `key` in `dir`
+         * @throws IOException: if there is none, or it is of another format version or key
+         */
+        InputStream in = new BufferedInputStream(new FileInputStream(fileOf(dir, key)));
+        try {
+            CalibrationProfile profile = read(in);
+            if (!profile.key.equals(key)) {
+                throw new IOException("Profile of key `" + profile.key + "` is saved for key `" + key + "`");
+            }
+            return profile;
+        } finally {
+            in.close();
+        }
+    }
+
+    public void save(File dir) throws IOException {
+        /**
+         * Save to `dir`, replacing the profile of the same key
+         * Written to a temporary file first, so that a crash never leaves a half written profile
+         */
+        File file = fileOf(dir, key);
+        File tmp = new File(dir, file.getName() + ".tmp");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+            throw new IOException("Failed to replace " + file);
+        }
+    }
+
+    public static CalibrationProfile read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a calibration profile");
+        }
+        short version = data.readShort();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported calibration profile version " + version);
+        }
+        String key = data.readUTF();
+        long savedAtMs = data.readLong();
+
+        double[][] range = {readDoubles(data, 3), readDoubles(data, 3)};
+        double[] aver = readDoubles(data, 3);
+        double[] std = readDoubles(data, 3);
+        double covCrCb = data.readDouble();
+        int historyCnt = data.readUnsignedByte();
+        List<double[]> history = new ArrayList<>(historyCnt);
+        for (int i = 0; i < historyCnt; ++i) {
+            history.add(readDoubles(data, 3));
+        }
+
+        CalibrationProfile profile = new CalibrationProfile(key, range, history, aver, std, covCrCb);
+        profile.savedAtMs = savedAtMs;
+        profile.moveDistMax = data.readInt();
+        profile.lingerDistMax = data.readInt();
+        profile.colorRangeExpand = readDoubles(data, 3);
+        profile.samplePassThreshold = data.readDouble();
+        profile.fingerColorTolerance = readDoubles(data, 3);
+        return profile;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(FORMAT_VERSION);
+        data.writeUTF(key);
+        data.writeLong(savedAtMs);
+
+        writeDoubles(data, range[0]);
+        writeDoubles(data, range[1]);
+        writeDoubles(data, aver);
+        writeDoubles(data, std);
+        data.writeDouble(covCrCb);
+        int historyCnt = Math.min(history.size(), 255);
+        data.writeByte(historyCnt);
+        for (int i = history.size() - historyCnt; i < history.size(); ++i) {
+            writeDoubles(data, history.get(i));
+        }
+
+        data.writeInt(moveDistMax);
+        data.writeInt(lingerDistMax);
+        writeDoubles(data, colorRangeExpand);
+        data.writeDouble(samplePassThreshold);
+        writeDoubles(data, fingerColorTolerance);
+        data.flush();
+    }
+
+    public boolean fits(Mat im, Sensibility current) {
+        /**
+         * Check the calibration against a converted frame in the sample window, see `Sampler.fits`,
+         * with the sensibility settings of the profile, nothing of the session is changed
+         * @param current: settings of the session, those not saved in the profile are taken from it
+         */
+        Sensibility trial = new Sensibility();
+        trial.copyFrom(current);
+        ColorRange colorRange = new ColorRange(trial);
+        apply(colorRange);
+        return new Sampler(colorRange).fits(im);
+    }
+
+    public void apply(ColorRange colorRange) {
+        /**
+         * Restore the calibration into `colorRange` and the sensibility settings into its `Sensibility`
+         * Check a loaded profile with `fits` first, the settings are not restored if it does not fit
+         */
+        Sensibility sensibility = colorRange.getSensibility();
+        sensibility.setMotion(moveDistMax, lingerDistMax);
+        sensibility.setColorRangeExpand(colorRangeExpand);
+        sensibility.setFingerColorTolerance(samplePassThreshold, fingerColorTolerance);
+        colorRange.restore(this);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getSavedAtMs() {
+        return savedAtMs;
+    }
+
+    private static double[] readDoubles(DataInputStream data, int n) throws IOException {
+        double[] ret = new double[n];
+        for (int i = 0; i < n; ++i) {
+            ret[i] = data.readDouble();
+        }
+        return ret;
+    }
+
+    private static void writeDoubles(DataOutputStream data, double[] values) throws IOException {
+        for (double v : values) {
+            data.writeDouble(v);
+        }
+    }
+}
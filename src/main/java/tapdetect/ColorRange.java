@@ -4,25 +4,137 @@ import org.opencv.core.Mat;
 import org.opencv.core.Point;
 import org.opencv.core.Scalar;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 
+/**
+ * Skin color range calibrated by `Sampler`
+ * <br>Each `TapSession` owns its own instance, all methods are synchronized
+ * <br>so that the range could be read by detection while being updated by sampling
+ */
 public class ColorRange {
-    private static double[][] range =
+    private double[][] range =
             {Config.FINGER_COLOR_RANGE[0].clone(), Config.FINGER_COLOR_RANGE[1].clone()};
-    private static Queue<double[]> history = new LinkedList<>();
+    private Queue<double[]> history = new LinkedList<>();
 
-    public static void reset() {
+    // statistic values of the last accepted samples, used by `SkinLut`
+    // `stdCalibrated == null` if no sample is accepted since the last reset
+    double[] averCalibrated = null;
+    double[] stdCalibrated = null;
+    double covCrCb = 0.0;  // covariance between Cr and Cb
+    // increased whenever the range changes
+    long version = 0;
+    // settings of the session owning this range
+    final Sensibility sensibility;
+
+    public ColorRange() {
+        this(new Sensibility());
+    }
+
+    public ColorRange(Sensibility sensibility) {
+        this.sensibility = sensibility;
+    }
+
+    public Sensibility getSensibility() {
+        return sensibility;
+    }
+
+    public synchronized void reset() {
         /**
          * Reset the class, calculate the color range through next frames
          */
         range[0] = Config.FINGER_COLOR_RANGE[0].clone();
         range[1] = Config.FINGER_COLOR_RANGE[1].clone();
         history.clear();
+        averCalibrated = stdCalibrated = null;
+        covCrCb = 0.0;
+        ++version;
+    }
+
+    public void copyFrom(ColorRange other) {
+        /**
+         * Take over the calibration of `other`, e.g. to start a new session already calibrated
+         */
+        double[][] otherRange;
+        Queue<double[]> otherHistory = new LinkedList<>();
+        double[] otherAver, otherStd;
+        double otherCov;
+        synchronized (other) {
+            otherRange = new double[][]{other.range[0].clone(), other.range[1].clone()};
+            for (double[] val : other.history) {
+                otherHistory.add(val.clone());
+            }
+            otherAver = other.averCalibrated == null ? null : other.averCalibrated.clone();
+            otherStd = other.stdCalibrated == null ? null : other.stdCalibrated.clone();
+            otherCov = other.covCrCb;
+        }
+        synchronized (this) {
+            range = otherRange;
+            history = otherHistory;
+            averCalibrated = otherAver;
+            stdCalibrated = otherStd;
+            covCrCb = otherCov;
+            ++version;
+        }
+    }
+
+    synchronized CalibrationProfile toProfile(String key) {
+        /**
+         * @return: a copy of the calibration, null if not calibrated
+         */
+        if (stdCalibrated == null) {
+            return null;
+        }
+        List<double[]> historyCopy = new ArrayList<>(history.size());
+        for (double[] val : history) {
+            historyCopy.add(val.clone());
+        }
+        return new CalibrationProfile(key, new double[][]{range[0].clone(), range[1].clone()},
+                historyCopy, averCalibrated.clone(), stdCalibrated.clone(), covCrCb, sensibility);
+    }
+
+    synchronized void restore(CalibrationProfile profile) {
+        /**
+         * Take over the calibration saved in `profile`
+         */
+        range = new double[][]{profile.range[0].clone(), profile.range[1].clone()};
+        history.clear();
+        for (double[] val : profile.history) {
+            if (history.size() == Config.SAMPLE_STABLE_CNT) {
+                history.remove();
+            }
+            history.add(val.clone());
+        }
+        averCalibrated = profile.aver.clone();
+        stdCalibrated = profile.std.clone();
+        covCrCb = profile.covCrCb;
+        ++version;
+    }
+
+    public synchronized boolean fits(double[] sum, int n) {
+        /**
+         * Whether samples of the statistic values `sum` and `n` agree with the calibration,
+         * i.e. aver(samples) is within `Config.PROFILE_FIT_STD` std of the calibrated one
+         * do not check Y channel because it changes much more than Cr or Cb
+         */
+        if (stdCalibrated == null || n == 0) {
+            return false;
+        }
+        for (int i = 1; i < 3; ++i) {
+            if (Math.abs(sum[i] / n - averCalibrated[i]) > stdCalibrated[i] * Config.PROFILE_FIT_STD) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    public static boolean isStable() {
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized boolean isStable() {
         /**
          * whether max(history) - min(history) < [+inf, 0.5, 0.5]
          * do not check Y channel because it changes much more than Cr or Cb
@@ -49,7 +161,7 @@ public class ColorRange {
         return true;
     }
 
-    public static Scalar[] getRange() {
+    public synchronized Scalar[] getRange() {
         double[][] ret = new double[2][3];
         for (int i = 0; i < 2; ++i) {
             for (int j = 0; j < 3; ++j) {
@@ -60,33 +172,63 @@ public class ColorRange {
         return new Scalar[]{new Scalar(ret[0]), new Scalar(ret[1])};
     }
 
-    public static void updateRange(Mat im, List<Point> samplePixels) {
+    public synchronized void updateRange(Mat im, List<Point> samplePixels) {
         /**
          * Update color range according to statistic values of samples
          */
         if (samplePixels.isEmpty()) {
             return;
         }
-        double[] aver = {0, 0, 0};
-        double[] std = {0, 0, 0};
+        double[] sum = {0, 0, 0};
+        double[] sqSum = {0, 0, 0};
+        double crCbSum = 0;
 
         // calc stat values
-        int n = samplePixels.size();
         for (Point point : samplePixels) {
             double[] val = im.get((int) point.y, (int) point.x);
             for (int i = 0; i < 3; ++i) {
-                aver[i] += val[i];
-                std[i] += val[i] * val[i];
+                sum[i] += val[i];
+                sqSum[i] += val[i] * val[i];
             }
+            crCbSum += val[1] * val[2];
+        }
+        updateRange(sum, sqSum, crCbSum, samplePixels.size());
+    }
+
+    public synchronized void updateRange(double[] sum, double[] sqSum, int n) {
+        /**
+         * Same with `updateRange(sum, sqSum, crCbSum, n)`,
+         * but Cr and Cb are regarded as uncorrelated
+         */
+        updateRange(sum, sqSum, n == 0 ? 0 : sum[1] * sum[2] / n, n);
+    }
+
+    public synchronized void updateRange(double[] sum, double[] sqSum, double crCbSum, int n) {
+        /**
+         * Update color range according to statistic values of samples
+         * @param sum: sum of each channel of the `n` samples
+         * @param sqSum: sum of squares of each channel of the `n` samples
+         * @param crCbSum: sum of Cr * Cb of the `n` samples
+         */
+        if (n == 0) {
+            return;
         }
+        double[] aver = {0, 0, 0};
+        double[] std = {0, 0, 0};
+
         for (int i = 0; i < 3; ++i) {
-            aver[i] /= n;
-            std[i] = Math.sqrt(std[i] / n - aver[i] * aver[i]);
+            aver[i] = sum[i] / n;
+            std[i] = Math.sqrt(sqSum[i] / n - aver[i] * aver[i]);
         }
+        averCalibrated = aver.clone();
+        stdCalibrated = std.clone();
+        covCrCb = crCbSum / n - aver[1] * aver[2];
+        ++version;
 
         // calc new color range
+        double[] expand = sensibility.getColorRangeExpand();
         for (int i = 0; i < 3; ++i) {
-            std[i] *= Config.COLOR_RANGE_EXPAND[i];
+            std[i] *= expand[i];
 
             range[0][i] = Math.max(aver[i] - std[i], 0);
             range[1][i] = Math.min(aver[i] + std[i], 255.0);
@@ -97,4 +239,22 @@ public class ColorRange {
         }
         history.add(aver);
     }
+
+    synchronized long updateStatistics(double[] aver, double[] std, double cov) {
+        /**
+         * Replace the statistic values and the range by those learned during detection (`Recalibrator`),
+         * the sampling history is kept so that the range stays stable
+         * @return: the new version
+         */
+        averCalibrated = aver.clone();
+        stdCalibrated = std.clone();
+        covCrCb = cov;
+        double[] expand = sensibility.getColorRangeExpand();
+        for (int i = 0; i < 3; ++i) {
+            double expanded = std[i] * expand[i];
+            range[0][i] = Math.max(aver[i] - expanded, 0);
+            range[1][i] = Math.min(aver[i] + expanded, 255.0);
+        }
+        return ++version;
+    }
 }
@@ -7,23 +7,108 @@
 
 package tapdetect;
 
+// Shared by all sessions, to be set before any session starts,
+// except `PROCESS_INTERVAL_MS`, `FINGER_TIP_*_DIST_MAX`, `COLOR_RANGE_EXPAND`, `SAMPLE_PASS_THRESHOLD`
+// and `FINGER_COLOR_TOLERANCE`, which are only the defaults of the `Sensibility` of new sessions
 public class Config {
     public static int IM_HEIGHT = 250;
     public static int TAP_THRESHOLD_ROW = 160;
     public static int HAND_AREA_MIN = 300;
     public static int FINGER_TIP_WIDTH = 15;
 
-    // max distance the finger tip could move between 2 frames
+    // max distance the finger tip could move between 2 frames `PROCESS_INTERVAL_MS` apart,
+    // scaled by the real interval for frames further apart
     public static int FINGER_TIP_MOVE_DIST_MAX = 25;
     // max distance the finger tip could move if to judge the point as lingering
     public static int FINGER_TIP_LINGER_DIST_MAX = 2;
 
     public static int IM_BLUR_SIZE = 10;
 
+    // Region of interest mode (`RoiTracker`)
+    // pixels padded around the hands of the last frame
+    public static int ROI_PADDING = 20;
+    // the full frame is scanned once every `ROI_RESCAN_INTERVAL` frames
+    public static int ROI_RESCAN_INTERVAL = 10;
+
+    // Pyramid mode (`PyramidDetector`)
+    // height hands are searched at
+    public static int PYRAMID_COARSE_HEIGHT = 125;
+    // height finger tips are refined at, at most the height of the frame
+    public static int PYRAMID_FINE_HEIGHT = 720;
+    // half size of the refining window around a finger tip, in pixels of a `IM_HEIGHT` image
+    public static int PYRAMID_WINDOW = 12;
+    // blur size of the refining window, in pixels of the fine resolution
+    public static int PYRAMID_REFINE_BLUR_SIZE = 3;
+
+    // Load shedding (`LoadController`)
+    // weight of the newest frame in the average cost
+    public static double LOAD_EWMA_ALPHA = 0.2;
+    // step down after `LOAD_STEP_DOWN_FRAMES` frames over the budget
+    public static int LOAD_STEP_DOWN_FRAMES = 5;
+    // step up after `LOAD_STEP_UP_FRAMES` frames under `LOAD_HEADROOM` of the budget
+    public static int LOAD_STEP_UP_FRAMES = 30;
+    public static double LOAD_HEADROOM = 0.6;
+    // stretch the processing interval once a frame takes more than this share of it
+    public static double LOAD_CPU_MAX = 0.8;
+
+    // Parallel segmentation (`ParallelSegmenter`)
+    // threads segmenting the strips of each session, 0 for the number of cores, followed at the next frame
+    public static int SEGMENT_THREADS = 0;
+    // strips are at least `SEGMENT_STRIP_ROWS_MIN` rows, smaller images are segmented in one piece
+    public static int SEGMENT_STRIP_ROWS_MIN = 32;
+
+    // Motion gate (`MotionGate`)
+    // size of a tile compared between frames, in pixels of a `IM_HEIGHT` image
+    public static int MOTION_TILE_SIZE = 16;
+    // a tile is changed if the mean of any channel moves more than `MOTION_TILE_THRESHOLD`
+    public static int MOTION_TILE_THRESHOLD = 6;
+    // the full hand mask is recomputed once every `MOTION_REFRESH_INTERVAL` frames
+    public static int MOTION_REFRESH_INTERVAL = 30;
+    // foreground threshold of the deprecated `ForegroundDetector`, MOG2 marks shadows as 127
+    public static int FINGER_FG_THRESHOLD = 200;
+
     // min interval between 2 frame to avoid to slow the moving speed
     public static int PROCESS_INTERVAL_MS = 50;
+    // a finger tip not seen for more than `TRACK_GAP_MAX_MS` loses its track
+    public static int TRACK_GAP_MAX_MS = 300;
+    // weight of the newest move in the velocity of a finger tip, which predicts where it is next frame
+    public static double TRACK_VELOCITY_GAIN = 0.5;
+    // slots of the ring buffer of `TapEventStream`
+    public static int EVENT_RING_SIZE = 256;
+    // max frames waiting for one stream in `FrameScheduler`, the oldest will be dropped if exceeded
+    public static int SCHEDULER_QUEUE_SIZE = 4;
+    // max frames waiting between 2 stages of `TapPipeline`, the oldest will be dropped if exceeded
+    public static int PIPELINE_QUEUE_SIZE = 2;
+    // `VideoProcessor` splits a video into chunks of `OFFLINE_CHUNK_FRAMES` frames,
+    // each chunk starts `OFFLINE_WARMUP_FRAMES` frames earlier to warm up the tracker
+    public static int OFFLINE_CHUNK_FRAMES = 900;
+    public static int OFFLINE_WARMUP_FRAMES = 30;
     public static double[][] FINGER_COLOR_RANGE = {{0, 135, 100}, {255, 142, 130}};
 
+    // Skin classification
+    /////////////////////
+    // -1: mask by the box of `ColorRange` with `Core.inRange`
+    // otherwise: mask by a `SkinLut` of the model `SkinLut.MODEL_*`
+    public static int SKIN_LUT_MODEL = -1;
+    // max Mahalanobis distance from the sampled color for `SkinLut.MODEL_GAUSSIAN`
+    public static double SKIN_MAHALANOBIS_MAX = 2.5;
+
+    // Continuous recalibration (`Recalibrator`)
+    /////////////////////
+    // recalibrate once every `RECALIBRATE_INTERVAL` processed frames
+    public static int RECALIBRATE_INTERVAL = 5;
+    // only hands larger than `RECALIBRATE_AREA_MIN` are trusted
+    public static int RECALIBRATE_AREA_MIN = 1500;
+    // pixels within `RECALIBRATE_MARGIN` of the border of a hand are not learned
+    public static int RECALIBRATE_MARGIN = 3;
+    // frames giving less than `RECALIBRATE_PIXELS_MIN` pixels are ignored
+    public static int RECALIBRATE_PIXELS_MIN = 200;
+    // the statistics weigh about the last `RECALIBRATE_WINDOW` pixels learned
+    public static int RECALIBRATE_WINDOW = 20000;
+    // std never shrinks below `RECALIBRATE_STD_MIN_RATIO` of the sampled one,
+    // since only pixels already classified as skin are learned
+    public static double RECALIBRATE_STD_MIN_RATIO = 0.8;
+
     // Sampling
     /////////////////////
     // A pixel is judged `maybe hand` if its color is between
@@ -42,4 +127,10 @@ public class Config {
     // sampling is not stable until the last `SAMPLE_STABLE_CNT` frames
     // have approximately same values
     public static int SAMPLE_STABLE_CNT = 5;
+
+    // Calibration profiles (`CalibrationProfile`)
+    /////////////////////
+    // a loaded profile still fits if the sampled Cr and Cb of the first frame
+    // are within `PROFILE_FIT_STD` std of the saved ones
+    public static double PROFILE_FIT_STD = 1.0;
 }
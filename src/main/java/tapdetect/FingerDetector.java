@@ -16,7 +16,7 @@ import org.opencv.core.MatOfPoint;
 import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
 import org.opencv.core.Mat;
-import org.opencv.core.Size;
+import org.opencv.core.Rect;
 import org.opencv.imgproc.Imgproc;
 
 public class FingerDetector {
@@ -25,74 +25,133 @@ public class FingerDetector {
     }
 
     public static List<Point> getFingers(Mat im, Mat hand, List<MatOfPoint> contourOutput) {
+        /**
+         * Same with `getFingers(im, hand, contourOutput, ws)` with a workspace of its own,
+         * contours saved in `contourOutput` are owned by the caller
+         */
+        Workspace ws = new Workspace();
+        try {
+            List<Point> fingers = getFingers(im, hand, contourOutput, ws);
+            if (contourOutput != null) {
+                ws.contours.clear();  // handed over, not to be released with `ws`
+            }
+            return fingers;
+        } finally {
+            ws.release();
+        }
+    }
+
+    public static List<Point> getFingers(Mat im, Mat hand, List<MatOfPoint> contourOutput, Workspace ws) {
+        return getFingers(im, hand, contourOutput, ws, null);
+    }
+
+    public static List<Point> getFingers(Mat im, Mat hand, List<MatOfPoint> contourOutput, Workspace ws, Rect roi) {
         /**
          * @param: im: A YCrCb image with same shape as `hand`
          * @param: hand: A binary image indicating which pixel is part of hand
          * @param: contourOutput:
-         *      If is not null, contours will be saved for debug
+         *      If is not null, contours will be saved for debug,
+         *      they are valid until the next frame using `ws`
+         * @param: ws: buffers reused between frames
+         * @param: roi: if is not null, only search hands in this region of `hand`
          * @return: A list of points indicating the detected finger tip points
-         *      This function will not change `in` or `hand`
+         *      This function will not change `in`, but dilates `hand`
          */
 
         // assert im.size().height == Config.IM_HEIGHT;
         // assert im.size().height == hand.size().height
 
-        List<MatOfPoint> contours = Util.largeContours(hand, Config.HAND_AREA_MIN);
-        Imgproc.dilate(hand, hand, Mat.ones(new Size(5, 5), CvType.CV_8UC1));
+        Metrics metrics = ws.metrics;
+        long t = metrics == null ? 0 : System.nanoTime();
+
+        ws.recycleContours();
+        Mat handRoi = roi == null ? hand : hand.submat(roi);
+        List<MatOfPoint> contours = Util.largeContours(
+                handRoi, (int) (Config.HAND_AREA_MIN * ws.scale * ws.scale), ws, roi == null ? null : roi.tl());
+        ws.contours.addAll(contours);
+        if (roi == null && hand == ws.hand && ws.handDilatedReady) {
+            ws.handDilated.copyTo(hand);  // dilated in parallel already
+        } else {
+            Imgproc.dilate(handRoi, handRoi, ws.kernel5);
+        }
+        ws.handDilatedReady = false;
+        if (roi != null) {
+            handRoi.release();
+        }
+        if (metrics != null) {
+            t = metrics.record(Metrics.CONTOUR, t);
+        }
 
+        if (contourOutput != null) {
+            contourOutput.clear();
+        }
         if (contours.isEmpty()) {
+            if (metrics != null) {
+                metrics.record(Metrics.FINGER, t);
+            }
             return new ArrayList<>();
         }
 
         ArrayList<Point> fingerTips = new ArrayList<>();
 
+        // one bulk copy of the mask instead of a `Mat.get` for each apex
+        int rows = hand.rows(), cols = hand.cols();
+        if (ws.handPixels.length < rows * cols) {
+            ws.handPixels = new byte[rows * cols];
+        }
+        hand.get(0, 0, ws.handPixels);
+
         for (int i = 0; i < contours.size(); ++i) {
             // apply polygon approximation
             MatOfPoint cnt = contours.get(i);
 
-            double epsilon = 5;
-            MatOfPoint2f approx = new MatOfPoint2f(), cntCvt = new MatOfPoint2f();
+            double epsilon = 5 * ws.scale;
+            MatOfPoint2f approx = ws.approx, cntCvt = ws.cntCvt;
 
             cnt.convertTo(cntCvt, CvType.CV_32FC2);
             Imgproc.approxPolyDP(cntCvt, approx, epsilon, true);
             approx.convertTo(cnt, CvType.CV_32S);
 
             // apply polygon approximation
-            fingerTips.addAll(findFingerTips(approx.toList(), hand));
+            int len = (int) approx.total();
+            ws.ensureApexCapacity(len);
+            approx.get(0, 0, ws.apexes);
+            findFingerTips(len, ws, rows, cols, fingerTips);
         }
 
         if (contourOutput != null) {
-            contourOutput.clear();
             contourOutput.addAll(contours);
         }
+        if (metrics != null) {
+            metrics.record(Metrics.FINGER, t);
+        }
         return fingerTips;
     }
 
-    private static List<Point> findFingerTips(List<Point> contour, Mat hand) {
+    private static void findFingerTips(int len, Workspace ws, int rows, int cols, List<Point> output) {
         /**
-         * @param: contour: A list of the apex of the contour
-         * @param: hand: A binary image indicating which pixel is part of hand
+         * @param: len: number of the apexes of the contour, saved as x0, y0, x1, y1, ... in `ws.apexes`
+         * @param: ws: `ws.handPixels` holds the binary hand image of `rows` x `cols`
+         * @param: output: finger tips found are appended
+         * Works on the primitive buffers of `ws`, nothing is allocated but the finger tips
          */
-        int len = contour.size();
-
-        Point[] diff_n = new Point[len];  // vector_this_pt_to_next
-        Point[] diff_p = new Point[len];  // vector_this_pt_to_prev, = -diff_n[i - 1], preserved for convenience
-        double[] dist = new double[len]; // |<vector_this_pt_to_next>|
+        float[] apex = ws.apexes;
+        double[] edgeX = ws.edgeX;  // vector_this_pt_to_next
+        double[] edgeY = ws.edgeY;
+        double[] dist = ws.edgeLength;  // |<vector_this_pt_to_next>|
+        // vector_this_pt_to_prev is the negative edge of the previous point
+        double[] tan = ws.edgeTan;  // (-inf, +inf), tan(<vector_this_pt_to_next>)
+        boolean[] isConvex = ws.isConvex;
+        int probe = Math.max((int) Math.round(5 * ws.scale), 1);  // distance of the mask probe inside an apex
 
         for (int i = 0; i < len; ++i) {
             int next_i = (i == len - 1) ? 0 : (i + 1);
-            int prev_i = (i == 0) ? (len - 1) : (i - 1);
 
-            Point p = contour.get(i), next = contour.get(next_i), prev = contour.get(prev_i);
-
-            diff_n[i] = new Point(next.x - p.x, next.y - p.y);
-            diff_p[i] = new Point(prev.x - p.x, prev.y - p.y);
-            dist[i] = Math.sqrt(diff_n[i].x * diff_n[i].x + diff_n[i].y * diff_n[i].y);
+            edgeX[i] = (double) apex[next_i * 2] - apex[i * 2];
+            edgeY[i] = (double) apex[next_i * 2 + 1] - apex[i * 2 + 1];
+            dist[i] = Math.sqrt(edgeX[i] * edgeX[i] + edgeY[i] * edgeY[i]);
         }
 
-        boolean[] isConvex = new boolean[len];
-        double[] cos = new double[len]; // [0, 1], cos(<vector_this_pt_to_next>)
-        double[] tan = new double[len]; // (-inf, +inf), tan(<vector_this_pt_to_next>)
         // tan:  | -1
         //       |
         // 0 ----+----> row
@@ -100,61 +159,76 @@ public class FingerDetector {
         //  -1   |  1
         //       v col
         for (int i = 0; i < len; ++i) {
-            int next_i = (i == len - 1) ? 0 : (i + 1);
             int prev_i = (i == 0) ? (len - 1) : (i - 1);
 
-            Point p = contour.get(i), next = contour.get(next_i), prev = contour.get(prev_i);
+            isConvex[i] = isConvexPoint(apex, i, prev_i, (i == len - 1) ? 0 : (i + 1),
+                    dist[prev_i], dist[i], probe, ws.handPixels, rows, cols);
 
-            isConvex[i] = isConvexPoint(p, prev, next, hand);
-
-            if (isConvex[i]) {
-                tan[i] = diff_n[i].y / diff_n[i].x; // maybe infinity
-                // cos[i] = Util.intersectCos(p, prev, next);
-            } // otherwise skip the calculation
+            tan[i] = isConvex[i] ? edgeY[i] / edgeX[i] : 0.0; // maybe infinity
         }
 
-        List<Point> ret = new ArrayList<>();
+        // bounds of `dist` for a finger tip width, instead of a division per apex
+        double tipWidth = Config.FINGER_TIP_WIDTH * ws.scale;
+        double minDist = tipWidth * 0.5, maxDist = tipWidth * 2.0;
         for (int i = 0; i < len; ++i) {
             if (!isConvex[i]) {
                 continue;
             }
 
             int next_i = (i == len - 1) ? 0 : (i + 1);
+            int prev_i = (i == 0) ? (len - 1) : (i - 1);
 
-            boolean isLowestLocal = diff_p[i].y < 0 && diff_n[i].y < 0;
-            // boolean goodAngle = cos[i] < 0.8;
-
-            boolean isLowestPair = diff_p[i].y <= 0 && diff_n[next_i].y <= 0;
+            // the y of vector_this_pt_to_prev is -edgeY[prev_i]
+            boolean isLowestLocal = edgeY[prev_i] > 0 && edgeY[i] < 0;
+            boolean isLowestPair = edgeY[prev_i] >= 0 && edgeY[next_i] <= 0;
 
             boolean isFlat = Math.abs(tan[i]) < 0.5;
-            double distRatio = dist[i] / (double) Config.FINGER_TIP_WIDTH;
-            boolean goodDist = distRatio < 2 && distRatio > 0.5;
-            boolean isColumn = isConvex[i] && isConvex[next_i] && isLowestPair && isFlat && goodDist;
-            boolean isCorner = isConvex[i] && isLowestLocal;
-
-            Point p = contour.get(i);
-            if (isCorner) {
-                ret.add(p.clone());
+            boolean goodDist = dist[i] < maxDist && dist[i] > minDist;
+            boolean isColumn = isConvex[next_i] && isLowestPair && isFlat && goodDist;
+
+            double x = apex[i * 2], y = apex[i * 2 + 1];
+            if (isLowestLocal) {
+                // corner
+                output.add(new Point(x, y));
             }
             if (isColumn) {
-                ret.add(new Point(
-                        (p.x + contour.get(next_i).x) / 2.0,
-                        (p.y + contour.get(next_i).y) / 2.0)
+                output.add(new Point(
+                        (x + apex[next_i * 2]) / 2.0,
+                        (y + apex[next_i * 2 + 1]) / 2.0)
                 );
             }
         }
-        return ret;
     }
 
-    private static boolean isConvexPoint(Point p, Point prev, Point next, Mat hand) {
-        Point center = Util.incenter(p, prev, next);
-        double tan_normal = (center.y - p.y) / (center.x - p.x); // maybe infinity
+    private static boolean isConvexPoint(float[] apex, int i, int prev_i, int next_i,
+                                         double distPrev, double distNext, int probe,
+                                         byte[] hand, int rows, int cols) {
+        /**
+         * @param: distPrev, distNext: distance from apex i to apex prev_i and next_i
+         * @param: probe: the mask is checked `probe` pixels inside the apex
+         * @param: hand: the binary hand image, row major
+         */
+        double x = apex[i * 2], y = apex[i * 2 + 1];
+        double prevX = apex[prev_i * 2], prevY = apex[prev_i * 2 + 1];
+        double nextX = apex[next_i * 2], nextY = apex[next_i * 2 + 1];
+
+        // incenter of the triangle, same as `Util.incenter(p, prev, next)`
+        double distPrevNext = Math.sqrt((prevX - nextX) * (prevX - nextX) + (prevY - nextY) * (prevY - nextY));
+        double circum = distPrev + distPrevNext + distNext;
+        double centerX = (x * distPrevNext + prevX * distNext + nextX * distPrev) / circum;
+        double centerY = (y * distPrevNext + prevY * distNext + nextY * distPrev) / circum;
+        if (!(centerY < y)) {
+            return false;
+        }
+
+        double tan_normal = (centerY - y) / (centerX - x); // maybe infinity
 
         // 2.414 = tan(67.5), 0.414 = tan(22.5), one-eighth of 360
-        int dx = (Math.abs(tan_normal) > 2.414) ? 0 : (center.x > p.x ? 5 : -5);
-        int dy = (Math.abs(tan_normal) < 0.414) ? 0 : (center.y > p.y ? 5 : -5);
+        int dx = (Math.abs(tan_normal) > 2.414) ? 0 : (centerX > x ? probe : -probe);
+        int dy = (Math.abs(tan_normal) < 0.414) ? 0 : (centerY > y ? probe : -probe);
 
-        return center.y < p.y && hand.get((int) p.y + dy, (int) p.x + dx)[0] > 0;
+        int row = (int) y + dy, col = (int) x + dx;
+        return row >= 0 && row < rows && col >= 0 && col < cols && hand[row * cols + col] != 0;
         // hard to have 100% precision since of the holes in `hand`
     }
-}
\ No newline at end of file
+}
@@ -7,58 +7,127 @@
 package tapdetect;
 
 import org.opencv.core.Core;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Scalar;
 import org.opencv.core.Range;
-import org.opencv.core.CvType;
+import org.opencv.core.Rect;
 import org.opencv.imgproc.Imgproc;
 
 
 public class HandDetector {
 
-    public static Mat getHand(Mat im) {
+    public static Mat getHand(Mat im, ColorRange colorRange) {
         /**
          * @param im: image in YCrCb color space
+         * @param colorRange: the calibrated skin color range of the session
          * @param fgmask: foreground mask given by `org.opencv.video.BackgroundSubtractor`,
          *              denoting whether or not a pixel is moving
          * will adjust color range according to `fgmask`
          * this function will not change `im` or `fgmask`
-         * @return: a binary image will white pixels are in range
+         * @return: a binary image will white pixels are in range, owned by the caller
          */
-        return colorRange(im, ColorRange.getRange());
+        Mat hand = new Mat();
+        Workspace ws = new Workspace();
+        try {
+            maskByColor(im, colorRange, hand, ws);
+            cleanMask(hand, hand.rows() / 4, ws);
+            return hand;
+        } finally {
+            ws.release();
+        }
     }
 
+    public static Mat getHand(Mat im, ColorRange colorRange, Workspace ws) {
+        /**
+         * Same with `getHand(im, colorRange)` but reuses the buffers of `ws`
+         * @return: `ws.hand`, valid until the next frame using `ws`
+         */
+        maskByColor(im, colorRange, ws.hand, ws);
+        cleanMask(ws.hand, ws.hand.rows() / 4, ws);
+        return ws.hand;
+    }
+
+    public static Mat getHand(Mat im, ColorRange colorRange, Workspace ws, Rect roi) {
+        /**
+         * Same with `getHand(im, colorRange, ws)` but only pixels inside `roi` are processed,
+         * those outside are black in the result
+         * @param roi: region of interest, all of `im` if is null
+         */
+        if (roi == null) {
+            return getHand(im, colorRange, ws);
+        }
+        ws.hand.create(im.rows(), im.cols(), CvType.CV_8UC1);
+        ws.hand.setTo(Util.SCALAR_BLACK);
+
+        Mat imRoi = im.submat(roi), maskRoi = ws.hand.submat(roi);
+        maskByColor(imRoi, colorRange, maskRoi, ws);
+        cleanMask(maskRoi, Math.min(Math.max(im.rows() / 4 - roi.y, 0), roi.height), ws);
+        imRoi.release();
+        maskRoi.release();
+        return ws.hand;
+    }
 
-    private static Mat colorRange(Mat im, Scalar[] colorRange) {
+    static void updateHand(Mat im, ColorRange colorRange, Workspace ws, Rect dirty, Mat mask, Mat patch) {
         /**
-         *  Get coarse area of hand according to colorRange
-         *  @param: colorRange:
-         *      [
-         *        [lower_bound_channel_0, lower_bound_channel_1, lower_bound_channel_2, ...],
-         *        [upper_bound_channel_0, upper_bound_channel_1, upper_bound_channel_2, ...]
-         *      ]
-         *  will not change `im` or `colorRange`
-         *
-         *  @return: a binary image will white pixels are in range
+         * Recompute the clean hand mask `mask` of the last frame only inside `dirty`
+         * A halo around `dirty` is processed as well then dropped, so that the morphology inside `dirty`
+         * sees the same neighbours as on the full frame, and the result equals that of `getHand` there
+         * @param patch: buffer of the region with its halo
          */
+        // open (erode + dilate) and dilate by 3x3 kernels reach 3 pixels, only 1 without opening
+        int halo = ws.morphology ? 3 : 1;
+        int left = Math.max(dirty.x - halo, 0), top = Math.max(dirty.y - halo, 0);
+        int right = Math.min(dirty.x + dirty.width + halo, im.cols());
+        int bottom = Math.min(dirty.y + dirty.height + halo, im.rows());
+
+        Mat imOuter = im.submat(top, bottom, left, right);
+        maskByColor(imOuter, colorRange, patch, ws);
+        cleanMask(patch, Math.min(Math.max(im.rows() / 4 - top, 0), bottom - top), ws);
+        imOuter.release();
 
+        Mat inner = patch.submat(dirty.y - top, dirty.y - top + dirty.height,
+                dirty.x - left, dirty.x - left + dirty.width);
+        Mat maskInner = mask.submat(dirty);
+        inner.copyTo(maskInner);
+        inner.release();
+        maskInner.release();
+    }
+
+    static void maskByColor(Mat im, ColorRange colorRange, Mat mask, Workspace ws) {
         // 1. Mask by color
-        Mat mask = new Mat();
-        Core.inRange(im, colorRange[0], colorRange[1], mask);
+        if (Config.SKIN_LUT_MODEL >= 0) {
+            ws.skinLut.update(colorRange, Config.SKIN_LUT_MODEL);
+            ws.skinLut.classify(im, mask);
+        } else {
+            Scalar[] range = colorRange.getRange();
+            Core.inRange(im, range[0], range[1], mask);
+        }
+    }
+
+    static void cleanMask(Mat mask, int faceRows, Workspace ws) {
+        /**
+         *  Remove the face and noise from the coarse area of hand in `mask`
+         *  @param faceRows: rows at the top of `mask` which belongs to the face area
+         */
         // ImgLogger.debug("01_color_range.jpg", mask);
 
         // 2. Ignore face
         // Ignore first 1/3 in height to ignore face
         // We assume fingers only appear at between 1/4 and bottom
         // FIXME: may be useless?
-        mask.submat(new Range(0, (int) mask.size().height / 4), new Range(0, (int) mask.size().width)).setTo(Util.SCALAR_BLACK);
+        if (faceRows > 0) {
+            Mat face = mask.submat(new Range(0, faceRows), new Range(0, mask.cols()));
+            face.setTo(Util.SCALAR_BLACK);
+            face.release();
+        }
 
         // 3. remove noise
-        // Morphology Open
-        Imgproc.morphologyEx(mask, mask, Imgproc.MORPH_OPEN, Mat.ones(3, 3, CvType.CV_8U));
-        Imgproc.dilate(mask, mask, Mat.ones(3, 3, CvType.CV_8U));
+        // Morphology Open, may be skipped to shed load
+        if (ws.morphology) {
+            Imgproc.morphologyEx(mask, mask, Imgproc.MORPH_OPEN, ws.kernel3);
+        }
+        Imgproc.dilate(mask, mask, ws.kernel3);
         // ImgLogger.debug("02_morpho_open.jpg", mask);
-
-        return mask;
     }
 }
\ No newline at end of file
@@ -0,0 +1,226 @@
+package tapdetect;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms of every stage and frame counters of one session
+ * <br>Latencies are counted in power-of-2 buckets of microseconds: bucket i holds [2^i, 2^(i+1)) us,
+ * <br>bucket 0 also holds anything below 1 us, the last bucket holds anything above.
+ * <br>Recording is a `System.nanoTime()` and a few uncontended atomic increments, safe from any thread,
+ * <br>so stages of `TapPipeline` could record on their own threads.
+ * <br>When metrics are disabled the session holds no `Metrics` at all, costing one null check per stage.
+ * <br>`snapshot()` copies the values into an immutable `Snapshot`, without blocking the detection.
+ * <br>Values of a snapshot are read one by one, thus may differ by the frame in flight.
+ */
+public class Metrics {
+    // stages
+    public static final int RESIZE = 0;
+    public static final int COLOR = 1;  // color space conversion
+    public static final int BLUR = 2;
+    public static final int HAND = 3;  // hand mask
+    public static final int CONTOUR = 4;  // contour extraction
+    public static final int FINGER = 5;  // finger tip detection
+    public static final int TRACK = 6;  // tap tracking
+    public static final int REFINE = 7;  // finger tip refinement of the pyramid mode
+    public static final int MOTION = 8;  // motion check of `MotionGate`
+    public static final int STAGE_COUNT = 9;
+
+    public static final int BUCKET_COUNT = 24;  // the last bucket begins at 2^23 us, ~8 s
+
+    private static final String[] STAGE_NAMES = {
+            "resize", "color", "blur", "hand", "contour", "finger", "track", "refine", "motion",
+    };
+
+    private final AtomicLongArray histograms = new AtomicLongArray(STAGE_COUNT * BUCKET_COUNT);
+    private final AtomicLongArray totalNanos = new AtomicLongArray(STAGE_COUNT);
+    private final AtomicLong framesProcessed = new AtomicLong();
+    private final AtomicLong framesThrottled = new AtomicLong();
+    private final AtomicLong framesCalibrating = new AtomicLong();
+    private final AtomicLong framesStatic = new AtomicLong();
+    private final AtomicLong framesFailed = new AtomicLong();
+    private final AtomicLong contours = new AtomicLong();
+    private final AtomicLong tips = new AtomicLong();
+
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    public long record(int stage, long startNanos) {
+        /**
+         * Record the latency of `stage`, from `startNanos` until now
+         * @return: now, so that consecutive stages could be chained:
+         *      t = metrics.record(Metrics.RESIZE, t);
+         *      t = metrics.record(Metrics.COLOR, t);
+         */
+        long now = System.nanoTime();
+        long nanos = now - startNanos;
+        histograms.incrementAndGet(stage * BUCKET_COUNT + bucketOf(nanos / 1000));
+        totalNanos.addAndGet(stage, nanos);
+        return now;
+    }
+
+    public void countFrame(int contourCnt, int tipCnt) {
+        /**
+         * Count a frame going through detection, with its number of hand contours and finger tips
+         */
+        framesProcessed.incrementAndGet();
+        contours.addAndGet(contourCnt);
+        tips.addAndGet(tipCnt);
+    }
+
+    public void countThrottled() {
+        framesThrottled.incrementAndGet();
+    }
+
+    public void countCalibrating() {
+        framesCalibrating.incrementAndGet();
+    }
+
+    public void countStatic() {
+        // a frame skipped before preprocessing by `MotionGate` as nothing moved
+        framesStatic.incrementAndGet();
+    }
+
+    public void countFailed() {
+        // a frame whose processing threw, by `FrameScheduler` or `TapPipeline`
+        framesFailed.incrementAndGet();
+    }
+
+    public Snapshot snapshot() {
+        long[][] hist = new long[STAGE_COUNT][BUCKET_COUNT];
+        long[] total = new long[STAGE_COUNT];
+        for (int s = 0; s < STAGE_COUNT; ++s) {
+            for (int b = 0; b < BUCKET_COUNT; ++b) {
+                hist[s][b] = histograms.get(s * BUCKET_COUNT + b);
+            }
+            total[s] = totalNanos.get(s);
+        }
+        return new Snapshot(hist, total, framesProcessed.get(), framesThrottled.get(),
+                framesCalibrating.get(), framesStatic.get(), framesFailed.get(), contours.get(), tips.get());
+    }
+
+    public void reset() {
+        for (int i = 0; i < histograms.length(); ++i) {
+            histograms.set(i, 0);
+        }
+        for (int i = 0; i < totalNanos.length(); ++i) {
+            totalNanos.set(i, 0);
+        }
+        framesProcessed.set(0);
+        framesThrottled.set(0);
+        framesCalibrating.set(0);
+        framesStatic.set(0);
+        framesFailed.set(0);
+        contours.set(0);
+        tips.set(0);
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros <= 1) {
+            return 0;
+        }
+        return Math.min(63 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1);
+    }
+
+    public static class Snapshot {
+        private final long[][] histograms;
+        private final long[] totalNanos;
+        private final long framesProcessed, framesThrottled, framesCalibrating, framesStatic, framesFailed;
+        private final long contours, tips;
+
+        Snapshot(long[][] histograms, long[] totalNanos,
+                 long framesProcessed, long framesThrottled, long framesCalibrating, long framesStatic,
+                 long framesFailed, long contours, long tips) {
+            this.histograms = histograms;
+            this.totalNanos = totalNanos;
+            this.framesProcessed = framesProcessed;
+            this.framesThrottled = framesThrottled;
+            this.framesCalibrating = framesCalibrating;
+            this.framesStatic = framesStatic;
+            this.framesFailed = framesFailed;
+            this.contours = contours;
+            this.tips = tips;
+        }
+
+        public long getCount(int stage) {
+            long cnt = 0;
+            for (long c : histograms[stage]) {
+                cnt += c;
+            }
+            return cnt;
+        }
+
+        public long getBucket(int stage, int bucket) {
+            return histograms[stage][bucket];
+        }
+
+        public double getMeanMicros(int stage) {
+            long cnt = getCount(stage);
+            return cnt == 0 ? 0.0 : totalNanos[stage] / 1000.0 / cnt;
+        }
+
+        public long getPercentileMicros(int stage, double percentile) {
+            /**
+             * @param percentile: in [0, 100]
+             * @return: upper bound of the bucket holding the percentile, 0 if nothing recorded
+             */
+            long cnt = getCount(stage);
+            if (cnt == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(cnt * percentile / 100.0);
+            long seen = 0;
+            for (int b = 0; b < BUCKET_COUNT; ++b) {
+                seen += histograms[stage][b];
+                if (seen >= rank && seen > 0) {
+                    return 1L << (b + 1);
+                }
+            }
+            return 1L << BUCKET_COUNT;
+        }
+
+        public long getFramesProcessed() {
+            return framesProcessed;
+        }
+
+        public long getFramesThrottled() {
+            return framesThrottled;
+        }
+
+        public long getFramesCalibrating() {
+            return framesCalibrating;
+        }
+
+        public long getFramesStatic() {
+            return framesStatic;
+        }
+
+        public long getFramesFailed() {
+            return framesFailed;
+        }
+
+        public double getContoursPerFrame() {
+            return framesProcessed == 0 ? 0.0 : (double) contours / framesProcessed;
+        }
+
+        public double getTipsPerFrame() {
+            return framesProcessed == 0 ? 0.0 : (double) tips / framesProcessed;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("frames: %d processed, %d static, %d throttled, %d calibrating, %d failed%n",
+                    framesProcessed, framesStatic, framesThrottled, framesCalibrating, framesFailed));
+            sb.append(String.format("per frame: %.2f contours, %.2f tips%n",
+                    getContoursPerFrame(), getTipsPerFrame()));
+            for (int s = 0; s < STAGE_COUNT; ++s) {
+                sb.append(String.format("%-8s n=%d mean=%.0fus p50<%dus p99<%dus%n",
+                        STAGE_NAMES[s], getCount(s), getMeanMicros(s),
+                        getPercentileMicros(s, 50), getPercentileMicros(s, 99)));
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package tapdetect;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Cheap motion check in front of the preprocessing and `HandDetector`
+ * <br>The raw frame is shrunk to one pixel per tile of `Config.MOTION_TILE_SIZE` (of a `Config.IM_HEIGHT` image),
+ * <br>i.e. the mean YCrCb color of each tile, and compared with the tile means of when each tile was last segmented.
+ * <br>A tile is changed if any channel moved more than `Config.MOTION_TILE_THRESHOLD`,
+ * <br>so a slow drift builds up until it is noticed instead of being missed frame after frame.
+ * <br>  - no tile changed: the frame is static, the hands and finger tips of the last frame still hold
+ * <br>  - otherwise: the hand mask of the last frame is kept and only recomputed inside the bounding box
+ * <br>    of the changed tiles, grown by one tile, see `HandDetector.updateHand`
+ * <br>The full mask is recomputed on the first frame, every `Config.MOTION_REFRESH_INTERVAL` frames,
+ * <br>when the frame size, the color range or the morphology changes, and when most tiles changed.
+ */
+public class MotionGate {
+    private final Mat thumb = new Mat();
+    private final Mat mask = new Mat();  // clean hand mask of the last frame, before `FingerDetector` dilates it
+    private final Mat patch = new Mat();
+    private final YuvFrame.Buffers yuvBuffers = new YuvFrame.Buffers();
+    private byte[] thumbPixels = new byte[0];
+    private byte[] refPixels = new byte[0];  // tile means of when each tile was last segmented
+    private int tileRows = 0, tileCols = 0;
+
+    private boolean valid = false;  // whether `mask` and `refPixels` are of the last frame
+    private long colorVersion = -1;
+    private boolean morphology = true;
+    private int framesSinceRefresh = 0;
+    private boolean full = true;  // whether the full mask is to be recomputed
+    // changed tiles [top, bottom) x [left, right), grown by one tile, empty if none
+    private int top = 0, bottom = 0, left = 0, right = 0;
+
+    public boolean isStatic(Mat im, ColorRange colorRange, Workspace ws) {
+        /**
+         * Compare a raw frame with the last one, must be called once for every frame before `getHand`
+         * @param im: the BGR frame before preprocessing, not modified
+         * @return: whether nothing changed since the last frame
+         */
+        Metrics m = ws.metrics;
+        long t = m == null ? 0 : System.nanoTime();
+        int tr = tileRows(), tc = tileCols(tr, im.cols(), im.rows());
+        Imgproc.resize(im, thumb, new Size(tc, tr), 0, 0, Imgproc.INTER_AREA);
+        Imgproc.cvtColor(thumb, thumb, Imgproc.COLOR_BGR2YCrCb);
+        boolean still = compare(tr, tc, colorRange, ws);
+        if (m != null) {
+            m.record(Metrics.MOTION, t);
+        }
+        return still;
+    }
+
+    public boolean isStatic(YuvFrame frame, ColorRange colorRange, Workspace ws) {
+        /**
+         * Same with `isStatic(im, colorRange, ws)` on a raw camera frame, its tile means are read from the planes
+         */
+        Metrics m = ws.metrics;
+        long t = m == null ? 0 : System.nanoTime();
+        int tr = tileRows(), tc = tileCols(tr, frame.getWidth(), frame.getHeight());
+        frame.toYCrCb(tr, thumb, yuvBuffers);
+        boolean still = compare(tr, tc, colorRange, ws);
+        if (m != null) {
+            m.record(Metrics.MOTION, t);
+        }
+        return still;
+    }
+
+    private static int tileRows() {
+        // the tiles of a working image of any height, `Config.MOTION_TILE_SIZE` scaled with it
+        return Math.max((int) Math.round((double) Config.IM_HEIGHT / Config.MOTION_TILE_SIZE), 1);
+    }
+
+    private static int tileCols(int tileRows, int width, int height) {
+        // as `YuvFrame.toYCrCb` keeps the aspect ratio
+        return Math.max((int) ((long) tileRows * width / height), 1);
+    }
+
+    private boolean compare(int tr, int tc, ColorRange colorRange, Workspace ws) {
+        long version = colorRange.getVersion();
+        full = !valid || tr != tileRows || tc != tileCols
+                || version != colorVersion || ws.morphology != morphology
+                || ++framesSinceRefresh >= Config.MOTION_REFRESH_INTERVAL;
+
+        int len = tr * tc * 3;
+        if (thumbPixels.length < len) {
+            thumbPixels = new byte[len];
+            refPixels = new byte[len];
+        }
+        thumb.get(0, 0, thumbPixels);
+
+        tileRows = tr;
+        tileCols = tc;
+        colorVersion = version;
+        morphology = ws.morphology;
+        if (full) {
+            setFull(len);
+            return false;
+        }
+
+        // bounding box of the changed tiles, tile means of changed tiles become the reference
+        int t = tr, b = -1, l = tc, r = -1, changed = 0;
+        for (int row = 0; row < tr; ++row) {
+            for (int col = 0; col < tc; ++col) {
+                int i = (row * tc + col) * 3;
+                boolean tileChanged = false;
+                for (int ch = 0; ch < 3; ++ch) {
+                    if (Math.abs((thumbPixels[i + ch] & 0xff) - (refPixels[i + ch] & 0xff))
+                            > Config.MOTION_TILE_THRESHOLD) {
+                        tileChanged = true;
+                    }
+                }
+                if (tileChanged) {
+                    System.arraycopy(thumbPixels, i, refPixels, i, 3);
+                    t = Math.min(t, row);
+                    b = Math.max(b, row);
+                    l = Math.min(l, col);
+                    r = Math.max(r, col);
+                    ++changed;
+                }
+            }
+        }
+        if (changed == 0) {
+            top = bottom = left = right = 0;
+            return true;
+        }
+        if (changed * 2 > tr * tc) {
+            setFull(len);
+            return false;
+        }
+
+        // grown by one tile, for changes too small to move the mean of a tile they touch
+        top = Math.max(t - 1, 0);
+        left = Math.max(l - 1, 0);
+        bottom = Math.min(b + 2, tr);
+        right = Math.min(r + 2, tc);
+        return false;
+    }
+
+    public Mat getHand(Mat im, ColorRange colorRange, Workspace ws) {
+        /**
+         * Same with `HandDetector.getHand(im, colorRange, ws)`, recomputed only where `isStatic` saw changes
+         * @return: `ws.hand`, valid until the next frame using `ws`
+         */
+        int rows = im.rows(), cols = im.cols();
+        if (full || mask.rows() != rows || mask.cols() != cols) {
+            full = false;
+            HandDetector.getHand(im, colorRange, ws);
+            ws.hand.copyTo(mask);
+            valid = true;
+            return ws.hand;
+        }
+        if (bottom > top) {
+            int y0 = top * rows / tileRows, y1 = bottom * rows / tileRows;
+            int x0 = left * cols / tileCols, x1 = right * cols / tileCols;
+            HandDetector.updateHand(im, colorRange, ws, new Rect(x0, y0, x1 - x0, y1 - y0), mask, patch);
+        }
+        mask.copyTo(ws.hand);
+        return ws.hand;
+    }
+
+    public void invalidate() {
+        /**
+         * The hand mask of this frame is not made by `getHand` (e.g. in ROI mode),
+         * recompute the full one next time
+         */
+        valid = false;
+    }
+
+    public void reset() {
+        valid = false;
+        full = true;
+    }
+
+    public void release() {
+        thumb.release();
+        mask.release();
+        patch.release();
+    }
+
+    private void setFull(int len) {
+        System.arraycopy(thumbPixels, 0, refPixels, 0, len);
+        framesSinceRefresh = 0;
+        valid = false;  // until `getHand` makes the full mask
+    }
+}
@@ -0,0 +1,158 @@
+package tapdetect;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Hand segmentation split into horizontal strips processed in parallel
+ * <br>Each strip runs the steps of `HandDetector.getHand` (color mask, face removal, opening and dilation)
+ * <br>and the 5x5 dilation of `FingerDetector` on its rows plus `HALO` rows above and below,
+ * <br>then keeps only its own rows, so the stitched masks equal those of the sequential path:
+ * <br>the 3x3 opening and dilation reach 3 rows, the 5x5 dilation 2 more.
+ * <br>Each session owns its segmenter, holding the buffers of its strips and a `ForkJoinPool` of `Config.SEGMENT_THREADS`,
+ * <br>which is created again when the setting changes and shut down by `release()`.
+ * <br>Only the full frame is split, ROI mode still segments its region in one piece.
+ */
+public class ParallelSegmenter {
+    private static final int HALO = 5;
+
+    ForkJoinPool pool = null;  // created at the first frame
+
+    private final List<Strip> strips = new ArrayList<>();
+
+    public Mat getHand(Mat im, ColorRange colorRange, Workspace ws) {
+        /**
+         * Same with `HandDetector.getHand(im, colorRange, ws)`,
+         * `ws.handDilated` is filled as well for the following `FingerDetector.getFingers`
+         * @return: `ws.hand`, valid until the next frame using `ws`
+         */
+        int rows = im.rows(), cols = im.cols();
+        ForkJoinPool workers = getPool();
+        int n = Math.min(workers.getParallelism(), rows / Math.max(Config.SEGMENT_STRIP_ROWS_MIN, 1));
+        if (n <= 1) {
+            return HandDetector.getHand(im, colorRange, ws);
+        }
+
+        // shared by all strips, read only while they run
+        Scalar[] range = null;
+        if (Config.SKIN_LUT_MODEL >= 0) {
+            ws.skinLut.update(colorRange, Config.SKIN_LUT_MODEL);
+        } else {
+            range = colorRange.getRange();
+        }
+        ws.hand.create(rows, cols, CvType.CV_8UC1);
+        ws.handDilated.create(rows, cols, CvType.CV_8UC1);
+
+        while (strips.size() < n) {
+            strips.add(new Strip());
+        }
+        final List<Strip> tasks = new ArrayList<>(n);
+        for (int i = 0; i < n; ++i) {
+            Strip strip = strips.get(i);
+            strip.reinitialize();
+            strip.set(im, i * rows / n, (i + 1) * rows / n, range, ws);
+            tasks.add(strip);
+        }
+        workers.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        ws.handDilatedReady = true;
+        return ws.hand;
+    }
+
+    public void release() {
+        /**
+         * Release the buffers and stop the threads, the segmenter could still be used afterwards
+         */
+        for (Strip strip : strips) {
+            strip.mask.release();
+            strip.dilated.release();
+        }
+        strips.clear();
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    private ForkJoinPool getPool() {
+        int threads = Config.SEGMENT_THREADS > 0
+                ? Config.SEGMENT_THREADS : Runtime.getRuntime().availableProcessors();
+        if (pool == null || pool.getParallelism() != threads) {
+            // no strip runs between frames, the old pool is idle
+            if (pool != null) {
+                pool.shutdown();
+            }
+            pool = new ForkJoinPool(threads);
+        }
+        return pool;
+    }
+
+    private static class Strip extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final Mat mask = new Mat();
+        final Mat dilated = new Mat();
+        byte[] pixels = new byte[0];
+        byte[] maskPixels = new byte[0];
+
+        // of the current frame
+        Mat im;
+        int begin, end;  // rows of this strip
+        Scalar[] range;  // null if masked by `ws.skinLut`
+        Workspace ws;
+
+        void set(Mat im, int begin, int end, Scalar[] range, Workspace ws) {
+            this.im = im;
+            this.begin = begin;
+            this.end = end;
+            this.range = range;
+            this.ws = ws;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = im.rows();
+            int top = Math.max(begin - HALO, 0), bottom = Math.min(end + HALO, rows);
+            Mat imStrip = im.submat(top, bottom, 0, im.cols());
+            if (range == null) {
+                int len = imStrip.rows() * imStrip.cols();
+                if (pixels.length < len * 3) {
+                    pixels = new byte[len * 3];
+                    maskPixels = new byte[len];
+                }
+                ws.skinLut.classify(imStrip, mask, pixels, maskPixels);
+            } else {
+                Core.inRange(imStrip, range[0], range[1], mask);
+            }
+            imStrip.release();
+
+            HandDetector.cleanMask(mask, Math.min(Math.max(rows / 4 - top, 0), bottom - top), ws);
+            copyRows(mask, top, ws.hand);
+            Imgproc.dilate(mask, dilated, ws.kernel5);
+            copyRows(dilated, top, ws.handDilated);
+            im = null;
+            ws = null;
+        }
+
+        private void copyRows(Mat src, int top, Mat dst) {
+            // rows [begin, end) of `src`, which starts at row `top` of the frame, into `dst`
+            Mat from = src.rowRange(begin - top, end - top), to = dst.rowRange(begin, end);
+            from.copyTo(to);
+            from.release();
+            to.release();
+        }
+    }
+}
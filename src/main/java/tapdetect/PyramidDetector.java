@@ -0,0 +1,216 @@
+package tapdetect;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Coarse-to-fine finger tip detection
+ * <br>Hands and finger tips are searched at the low resolution `Config.PYRAMID_COARSE_HEIGHT`,
+ * <br>then each finger tip is refined at `Config.PYRAMID_FINE_HEIGHT` (at most the frame itself),
+ * <br>only inside a window of `Config.PYRAMID_WINDOW` around it:
+ * <br>starting from the coarse tip, the finger is followed down the skin mask of the window
+ * <br>to its lowest row, the middle of which is the refined tip.
+ * <br>Thresholds in pixels are scaled to the coarse resolution by `Workspace.scale`,
+ * <br>`Config` values are still those of a `Config.IM_HEIGHT` image.
+ * <br>Results are in the coordinate of a `Config.IM_HEIGHT` image, so that the tracker keeps its thresholds,
+ * <br>but with the precision of the fine resolution.
+ * <br>Its images are reused frame after frame, call `release()` once it is no longer used.
+ */
+public class PyramidDetector {
+    // the coarse image, one refining window and its mask
+    private final Mat coarse = new Mat();
+    private final Mat window = new Mat();
+    private final Mat windowMask = new Mat();
+    private byte[] windowPixels = new byte[0];
+
+    public List<Point> getFingers(Mat frame, ColorRange colorRange, Workspace ws,
+                                         List<MatOfPoint> contourOutput) {
+        /**
+         * @param frame: a BGR image at the camera resolution, will not be changed
+         * @param colorRange: the calibrated skin color range of the session
+         * @param ws: buffers reused between frames
+         * @param contourOutput: if is not null, contours of hands will be saved,
+         *      in the coordinate of a `Config.IM_HEIGHT` image and valid until the next frame using `ws`
+         * @return: finger tips in the coordinate of a `Config.IM_HEIGHT` image
+         */
+        Metrics metrics = ws.metrics;
+        long t = metrics == null ? 0 : System.nanoTime();
+
+        int rows = frame.rows(), cols = frame.cols();
+        int coarseRows = Math.min(Config.PYRAMID_COARSE_HEIGHT, rows);
+        double coarseRatio = (double) coarseRows / rows;  // coarse image / frame
+        double workRatio = (double) Config.IM_HEIGHT / rows;  // `Config.IM_HEIGHT` image / frame
+        double coarseScale = (double) coarseRows / Config.IM_HEIGHT;
+
+        // 1. coarse image
+        Imgproc.resize(frame, coarse, new Size(Math.max(Math.round(cols * coarseRatio), 1), coarseRows),
+                0, 0, Imgproc.INTER_AREA);
+        if (metrics != null) {
+            t = metrics.record(Metrics.RESIZE, t);
+        }
+        Imgproc.cvtColor(coarse, coarse, Imgproc.COLOR_BGR2YCrCb);
+        if (metrics != null) {
+            t = metrics.record(Metrics.COLOR, t);
+        }
+        int blurSize = Math.max((int) Math.round(Config.IM_BLUR_SIZE * coarseScale), 1);
+        Imgproc.blur(coarse, coarse, new Size(blurSize, blurSize));
+        if (metrics != null) {
+            t = metrics.record(Metrics.BLUR, t);
+        }
+
+        // 2. hands and finger tips at the coarse resolution
+        Mat hand = HandDetector.getHand(coarse, colorRange, ws);
+        if (metrics != null) {
+            metrics.record(Metrics.HAND, t);
+        }
+        double scale = ws.scale;
+        List<Point> coarseTips;
+        ws.scale = coarseScale;
+        try {
+            coarseTips = FingerDetector.getFingers(coarse, hand, contourOutput, ws);
+        } finally {
+            ws.scale = scale;
+        }
+
+        t = metrics == null ? 0 : System.nanoTime();
+        double toWork = (double) Config.IM_HEIGHT / coarseRows;
+        for (MatOfPoint cnt : ws.contours) {
+            Core.multiply(cnt, new Scalar(toWork, toWork), cnt);
+        }
+
+        // 3. refine every tip at the fine resolution
+        int fineRows = Math.min(Config.PYRAMID_FINE_HEIGHT, rows);
+        double fineRatio = (double) fineRows / rows;  // fine image / frame
+        double fineScale = (double) fineRows / Config.IM_HEIGHT;
+        int half = (int) Math.ceil(Config.PYRAMID_WINDOW / workRatio);  // in pixels of the frame
+        int reach = Math.max((int) Math.round(Config.FINGER_TIP_WIDTH * fineScale / 2), 1);
+
+        List<Point> tips = new ArrayList<>(coarseTips.size());
+        for (Point p : coarseTips) {
+            Point tip = new Point(p.x / coarseRatio, p.y / coarseRatio);
+            refine(frame, tip, half, fineRatio, reach, colorRange, ws);
+            tip.x *= workRatio;
+            tip.y *= workRatio;
+            tips.add(tip);
+        }
+        if (metrics != null) {
+            metrics.record(Metrics.REFINE, t);
+        }
+        return tips;
+    }
+
+    boolean refine(Mat frame, Point tip, int half, double fineRatio, int reach,
+                   ColorRange colorRange, Workspace ws) {
+        /**
+         * Move `tip` to the lowest row of the finger around it
+         * @param tip: in the coordinate of `frame`, modified in place
+         * @param half: half size of the window in pixels of `frame`
+         * @param reach: max distance in pixels of the fine image from `tip` to the finger
+         * @return: false if `tip` is left unchanged,
+         *      when there is no skin near it or the finger goes beyond the window
+         */
+        int left = Math.max((int) tip.x - half, 0), top = Math.max((int) tip.y - half, 0);
+        int right = Math.min((int) tip.x + half + 1, frame.cols());
+        int bottom = Math.min((int) tip.y + half + 1, frame.rows());
+        if (right <= left || bottom <= top) {
+            return false;
+        }
+
+        Mat source = frame.submat(top, bottom, left, right);
+        int w = Math.max((int) Math.round((right - left) * fineRatio), 1);
+        int h = Math.max((int) Math.round((bottom - top) * fineRatio), 1);
+        if (w != right - left || h != bottom - top) {
+            Imgproc.resize(source, window, new Size(w, h), 0, 0, Imgproc.INTER_AREA);
+        } else {
+            source.copyTo(window);
+        }
+        source.release();
+
+        Imgproc.cvtColor(window, window, Imgproc.COLOR_BGR2YCrCb);
+        if (Config.PYRAMID_REFINE_BLUR_SIZE > 1) {
+            Imgproc.blur(window, window,
+                    new Size(Config.PYRAMID_REFINE_BLUR_SIZE, Config.PYRAMID_REFINE_BLUR_SIZE));
+        }
+        HandDetector.maskByColor(window, colorRange, windowMask, ws);
+        Imgproc.morphologyEx(windowMask, windowMask, Imgproc.MORPH_OPEN, ws.kernel3);
+
+        if (windowPixels.length < w * h) {
+            windowPixels = new byte[w * h];
+        }
+        byte[] mask = windowPixels;
+        windowMask.get(0, 0, mask);
+
+        // the run of skin pixels next to the coarse tip, searched upwards in case the coarse tip is below the finger
+        int x = Math.min((int) ((tip.x - left) * fineRatio), w - 1);
+        int row = Math.min((int) ((tip.y - top) * fineRatio), h - 1);
+        int col = -1;
+        for (; row >= 0 && col < 0; --row) {
+            col = nearestSkin(mask, row * w, w, x, reach);
+        }
+        if (col < 0) {
+            return false;
+        }
+        ++row;
+
+        // follow the finger downwards
+        int runLeft = runStart(mask, row * w, col), runRight = runEnd(mask, row * w, w, col);
+        while (row + 1 < h) {
+            int mid = (runLeft + runRight) / 2;
+            int next = nearestSkin(mask, (row + 1) * w, w, mid, (runRight - runLeft) / 2);
+            if (next < 0) {
+                break;
+            }
+            ++row;
+            runLeft = runStart(mask, row * w, next);
+            runRight = runEnd(mask, row * w, w, next);
+        }
+        if (row == h - 1 && bottom < frame.rows()) {
+            return false;  // the finger goes on below the window
+        }
+
+        tip.x = left + (runLeft + runRight) / 2.0 / fineRatio;
+        tip.y = top + row / fineRatio;
+        return true;
+    }
+
+    public void release() {
+        coarse.release();
+        window.release();
+        windowMask.release();
+    }
+
+    private static int nearestSkin(byte[] mask, int offset, int width, int x, int reach) {
+        // @return: the column of the skin pixel nearest to `x` within `reach`, -1 if none
+        for (int d = 0; d <= reach; ++d) {
+            if (x - d >= 0 && x - d < width && mask[offset + x - d] != 0) {
+                return x - d;
+            }
+            if (x + d >= 0 && x + d < width && mask[offset + x + d] != 0) {
+                return x + d;
+            }
+        }
+        return -1;
+    }
+
+    private static int runStart(byte[] mask, int offset, int x) {
+        while (x > 0 && mask[offset + x - 1] != 0) {
+            --x;
+        }
+        return x;
+    }
+
+    private static int runEnd(byte[] mask, int offset, int width, int x) {
+        while (x + 1 < width && mask[offset + x + 1] != 0) {
+            ++x;
+        }
+        return x;
+    }
+}
@@ -0,0 +1,178 @@
+package tapdetect;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Continuous recalibration of the skin color during detection
+ * <br>Every `Config.RECALIBRATE_INTERVAL` frames, pixels inside the confidently detected hands
+ * <br>(contours larger than `Config.RECALIBRATE_AREA_MIN`, away from their border) are learned
+ * <br>into running statistics of the color, and the `ColorRange` is updated from them,
+ * <br>so that the range follows lighting changes without pausing detection to sample again.
+ * <br>Statistics (mean, variance of each channel and covariance of Cr and Cb) are updated
+ * <br>in one pass over the new pixels with Welford's method, then merged into the running ones,
+ * <br>which are scaled down to weigh about `Config.RECALIBRATE_WINDOW` pixels, so old lighting fades out.
+ * <br>The running statistics start from the result of the last sampling,
+ * <br>and restart whenever `ColorRange` is calibrated again by sampling.
+ */
+public class Recalibrator {
+    private final ColorRange colorRange;
+    private long version = -1;  // version of `colorRange` after the last update by this
+    private int frameCnt = 0;
+
+    // running statistics
+    private double weight = 0;
+    private final double[] mean = new double[3];
+    private final double[] m2 = new double[3];  // sum of squared differences from the mean
+    private double coM2 = 0;  // sum of products of the differences of Cr and Cb
+    private final double[] minStd = new double[3];
+
+    // buffers
+    private final Mat mask = new Mat();
+    private byte[] maskPixels = new byte[0];
+    private byte[] imPixels = new byte[0];
+
+    public Recalibrator(ColorRange colorRange) {
+        this.colorRange = colorRange;
+    }
+
+    public boolean update(Mat im, Workspace ws) {
+        /**
+         * Learn the hand pixels of the current frame
+         * @param im: the YCrCb image the hands in `ws` were found in
+         * @param ws: holds the hand contours of `im`
+         * @return: whether `colorRange` is updated
+         */
+        if (!start()) {
+            return false;
+        }
+        if (++frameCnt < Config.RECALIBRATE_INTERVAL) {
+            return false;
+        }
+        frameCnt = 0;
+
+        // 1. interior of the confident hands
+        int rows = im.rows(), cols = im.cols();
+        mask.create(rows, cols, CvType.CV_8UC1);
+        mask.setTo(Util.SCALAR_BLACK);
+        double areaMin = Config.RECALIBRATE_AREA_MIN * ws.scale * ws.scale;
+        boolean any = false;
+        for (int i = 0; i < ws.contours.size(); ++i) {
+            if (Imgproc.contourArea(ws.contours.get(i)) >= areaMin) {
+                Imgproc.drawContours(mask, ws.contours, i, Util.SCALAR_WHITE, Core.FILLED);
+                any = true;
+            }
+        }
+        if (!any) {
+            return false;
+        }
+        for (int i = 0; i < Config.RECALIBRATE_MARGIN; ++i) {
+            Imgproc.erode(mask, mask, ws.kernel3);
+        }
+
+        // 2. statistics of the new pixels, every other row and col
+        if (maskPixels.length < rows * cols) {
+            maskPixels = new byte[rows * cols];
+            imPixels = new byte[rows * cols * 3];
+        }
+        mask.get(0, 0, maskPixels);
+        im.get(0, 0, imPixels);
+
+        int n = 0;
+        double[] batchMean = {0, 0, 0};
+        double[] batchM2 = {0, 0, 0};
+        double batchCoM2 = 0;
+        double[] val = new double[3];
+        double[] tolerance = colorRange.sensibility.getFingerColorTolerance();
+        pixelLoop:
+        for (int r = 0; r < rows; r += 2) {
+            for (int c = 0, i = r * cols; c < cols; c += 2, i += 2) {
+                if (maskPixels[i] == 0) {
+                    continue;
+                }
+                for (int ch = 0; ch < 3; ++ch) {
+                    val[ch] = imPixels[i * 3 + ch] & 0xff;
+                    if (Math.abs(val[ch] - Config.FINGER_COLOR[ch]) >= tolerance[ch]) {
+                        continue pixelLoop;  // not a skin color at all
+                    }
+                }
+                ++n;
+                double deltaCr = val[1] - batchMean[1];
+                for (int ch = 0; ch < 3; ++ch) {
+                    double delta = val[ch] - batchMean[ch];
+                    batchMean[ch] += delta / n;
+                    batchM2[ch] += delta * (val[ch] - batchMean[ch]);
+                }
+                batchCoM2 += deltaCr * (val[2] - batchMean[2]);
+            }
+        }
+        if (n < Config.RECALIBRATE_PIXELS_MIN) {
+            return false;
+        }
+
+        // 3. fade out the old pixels and merge
+        double keep = Math.min(Math.max(Config.RECALIBRATE_WINDOW - n, 0) / weight, 1.0);
+        weight *= keep;
+        coM2 *= keep;
+        for (int ch = 0; ch < 3; ++ch) {
+            m2[ch] *= keep;
+        }
+
+        double total = weight + n;
+        double[] delta = new double[3];
+        for (int ch = 0; ch < 3; ++ch) {
+            delta[ch] = batchMean[ch] - mean[ch];
+            mean[ch] += delta[ch] * n / total;
+            m2[ch] += batchM2[ch] + delta[ch] * delta[ch] * weight * n / total;
+        }
+        coM2 += batchCoM2 + delta[1] * delta[2] * weight * n / total;
+        weight = total;
+
+        // 4. update the range
+        double[] std = new double[3];
+        for (int ch = 0; ch < 3; ++ch) {
+            std[ch] = Math.max(Math.sqrt(m2[ch] / weight), minStd[ch]);
+        }
+        version = colorRange.updateStatistics(mean, std, coM2 / weight);
+        return true;
+    }
+
+    public void reset() {
+        /**
+         * Start again from the calibration of `colorRange` at the next update
+         */
+        version = -1;
+    }
+
+    public void release() {
+        mask.release();
+    }
+
+    private boolean start() {
+        /**
+         * (Re)start the running statistics from the sampled calibration if `colorRange` is calibrated again
+         * @return: false if `colorRange` is not calibrated
+         */
+        synchronized (colorRange) {
+            if (colorRange.stdCalibrated == null) {
+                return false;
+            }
+            if (colorRange.version == version) {
+                return true;
+            }
+            weight = Config.RECALIBRATE_WINDOW;
+            for (int ch = 0; ch < 3; ++ch) {
+                mean[ch] = colorRange.averCalibrated[ch];
+                double std = colorRange.stdCalibrated[ch];
+                m2[ch] = std * std * weight;
+                minStd[ch] = std * Config.RECALIBRATE_STD_MIN_RATIO;
+            }
+            coM2 = colorRange.covCrCb * weight;
+            version = colorRange.version;
+            frameCnt = 0;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package tapdetect;
+
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Region of interest around the hands, tracked from frame to frame
+ * <br>The region of the next frame is the bounding box of the hand contours of the last frame,
+ * <br>padded by `Config.ROI_PADDING` (scaled with the working image) and limited below the face area (the top 1/4 rows).
+ * <br>A full frame is scanned every `Config.ROI_RESCAN_INTERVAL` frames, whenever no hand is found,
+ * <br>and whenever a hand touches an edge of the region inside the frame, as it may be cut there,
+ * <br>so that new hands entering the frame and hands moving fast are caught.
+ */
+public class RoiTracker {
+    private Rect roi = null;  // null for the full frame
+    private Rect current = null;  // the region of the frame being processed, null for the full frame
+    private int framesSinceScan = 0;
+
+    public Rect next() {
+        /**
+         * @return: the region to process in the next frame, null for the full frame
+         */
+        if (roi == null || framesSinceScan >= Config.ROI_RESCAN_INTERVAL) {
+            framesSinceScan = 0;
+            current = null;
+            return null;
+        }
+        ++framesSinceScan;
+        current = roi;
+        return roi;
+    }
+
+    public void update(Workspace ws, int rows, int cols) {
+        /**
+         * Compute the region of the next frame from the hand contours found in `ws`
+         * @param rows, cols: size of the frame
+         */
+        if (ws.contours.isEmpty()) {
+            roi = null;
+            return;
+        }
+        int left = cols, top = rows, right = 0, bottom = 0;
+        for (MatOfPoint cnt : ws.contours) {
+            Rect box = Imgproc.boundingRect(cnt);
+            if (current != null && touchesInnerEdge(box, rows, cols)) {
+                // the hand may go on beyond the region, scan the full frame next
+                roi = null;
+                return;
+            }
+            left = Math.min(left, box.x);
+            top = Math.min(top, box.y);
+            right = Math.max(right, box.x + box.width);
+            bottom = Math.max(bottom, box.y + box.height);
+        }
+        int padding = (int) Math.round(Config.ROI_PADDING * ws.getScale());
+        left = Math.max(left - padding, 0);
+        top = Math.max(top - padding, rows / 4);
+        right = Math.min(right + padding, cols);
+        bottom = Math.min(bottom + padding, rows);
+
+        roi = (right > left && bottom > top) ? new Rect(left, top, right - left, bottom - top) : null;
+    }
+
+    private boolean touchesInnerEdge(Rect box, int rows, int cols) {
+        // edges of `current` at the frame edges or at the face area cut nothing a full frame would not
+        return (box.x <= current.x && current.x > 0)
+                || (box.y <= current.y && current.y > rows / 4)
+                || (box.x + box.width >= current.x + current.width && current.x + current.width < cols)
+                || (box.y + box.height >= current.y + current.height && current.y + current.height < rows);
+    }
+
+    public void reset() {
+        roi = null;
+        current = null;
+        framesSinceScan = 0;
+    }
+}
@@ -21,7 +21,7 @@ import java.util.List;
  * <br>This class defines a polygon called sampling window with a shape of hand
  * <br>and will use the pixels to update the color range used in tap detection algorithm
  * <br>sample will not succeed until enough percentage of pixels have a color near skin color
- * <br>You can modify the threshold in `Config.java` and
+ * <br>You can modify the threshold by the `Sensibility` of the color range and
  * <br>get the ratio of passed pixels by `getRatio()`, and
  * <br>get the average color of passed pixels by `getAver()`
  */
@@ -47,29 +47,39 @@ public class Sampler {
 
     // mask used to saved the mask, this Mat will have same size will the image will process
     // in tap detection
-    private static Mat sampleMask;
-    public static double[] aver = {0, 0, 0};
-    public static double ratio = 0.0;
+    private Mat sampleMask;
+    private double[] aver = {0, 0, 0};
+    private double ratio = 0.0;
 
     // contain same points with sampleWindowApex except for
     // they have offsets added so that it shares a same coordinate with
     // tap-detection algorithm
-    private static List<Point> sampleWindowContour = new ArrayList<>();
-    private static List<Point> samplePixels = new ArrayList<>();
-    private static int rowOffset = 0;
-    private static int colOffset = 0;
-
-    static {
+    private List<Point> sampleWindowContour = new ArrayList<>();
+    // byte offsets of the sampled pixels (every 4 rows and cols inside the window)
+    // in `windowPixels`
+    private int[] sampleOffsets;
+    // buffer of the rows covered by the sample window, 3 bytes for each pixel
+    private byte[] windowPixels;
+    private int rowOffset = 0;
+    private int colOffset = 0;
+
+    private final ColorRange colorRange;
+
+    public Sampler(ColorRange colorRange) {
+        /**
+         * @param colorRange: the color range to be updated by sampling
+         */
+        this.colorRange = colorRange;
         for (int[] samplePt : sampleWindowApex) {
             sampleWindowContour.add(new Point(samplePt[0], samplePt[1]));
         }
     }
 
-    public static boolean isInited() {
+    public boolean isInited() {
         return sampleMask != null;
     }
 
-    public static void initSampleMask(int height, int width) {
+    public void initSampleMask(int height, int width) {
         /**
          * Init sample mask according to `height`, `width`
          */
@@ -97,13 +107,23 @@ public class Sampler {
         ));
 
 
+        byte[] mask = new byte[height * width];
+        sampleMask.get(0, 0, mask);
+
+        List<Integer> offsets = new ArrayList<>();
         for (int r = 0; r < height; r += 4) {
             for (int c = 0; c < width; c += 4) {
-                if (sampleMask.get(r, c)[0] > 0) {
-                    samplePixels.add(new Point(c, r));
+                if (mask[r * width + c] != 0) {
+                    // offset in the bytes of the rows covered by the sample window
+                    offsets.add(((r - rowOffset) * width + c) * 3);
                 }
             }
         }
+        sampleOffsets = new int[offsets.size()];
+        for (int i = 0; i < sampleOffsets.length; ++i) {
+            sampleOffsets[i] = offsets.get(i);
+        }
+        windowPixels = new byte[sampleWindowHeight * width * 3];
 
         // add points in sampleWindowContour for further use
         // now sampleWindowContour shares a same coordinate with
@@ -115,57 +135,104 @@ public class Sampler {
     }
 
 
-    public static double[] getAver() {
+    public double[] getAver() {
         return aver;
     }
 
-    public static double getRatio() {
+    public double getRatio() {
         return ratio;
     }
 
-    public static void sample(Mat im) {
+    public void sample(Mat im) {
         /**
          * Can't be used if `isInited() == false`
          * According to the `sampleMask`, retrieve the pixels in mat and update the color range
          */
+        double[] sum = {0, 0, 0};
+        double[] sqSum = {0, 0, 0};
+        double[] crCbSum = {0};
+        int passed = accumulate(im, sum, sqSum, crCbSum);
+
+        if (passed < sampleOffsets.length * colorRange.sensibility.getSamplePassThreshold()) {
+            colorRange.reset();
+        } else {
+            colorRange.updateRange(sum, sqSum, crCbSum[0], passed);
+        }
+    }
+
+    public boolean fits(Mat im) {
+        /**
+         * Check a loaded calibration against one frame, without updating the color range
+         * @return: whether the pixels in the sample window pass
+         *      and agree with the calibrated color range
+         */
+        double[] sum = {0, 0, 0};
+        double[] sqSum = {0, 0, 0};
+        double[] crCbSum = {0};
+        int passed = accumulate(im, sum, sqSum, crCbSum);
+
+        return passed >= sampleOffsets.length * colorRange.sensibility.getSamplePassThreshold()
+                && colorRange.fits(sum, passed);
+    }
+
+    private int accumulate(Mat im, double[] sum, double[] sqSum, double[] crCbSum) {
+        /**
+         * Sum up the pixels in the sample window judged `maybe hand`
+         * @param crCbSum: output, sum of Cr * Cb in `crCbSum[0]`
+         * @return: number of pixels passed
+         */
         if (!isInited()) {
             initSampleMask(im.height(), im.width());
         }
-        List<Point> pixelsToUpdate = new ArrayList<>();
+        if (im.type() != CvType.CV_8UC3) {
+            throw new IllegalArgumentException("Sampling requires a CV_8UC3 image, got type " + im.type());
+        }
+        if (!im.isContinuous()) {
+            im = im.clone();
+        }
+
+        // read all rows covered by the sample window at once
+        // instead of one `Mat.get` per pixel and channel
+        im.get(rowOffset, 0, windowPixels);
+
+        int passed = 0;
+        double[] tolerance = colorRange.sensibility.getFingerColorTolerance();
 
         aver[0] = aver[1] = aver[2] = 0;
         pixelLoop:
-        for (Point p : samplePixels) {
+        for (int offset : sampleOffsets) {
             for (int ch = 0; ch < 3; ++ch) { // channels
-                aver[ch] += im.get((int) p.y, (int) p.x)[ch];
+                aver[ch] += windowPixels[offset + ch] & 0xff;
             }
             for (int ch = 0; ch < 3; ++ch) { // channels
-                if (Math.abs(im.get((int) p.y, (int) p.x)[ch] - Config.FINGER_COLOR[ch])
-                        >= Config.FINGER_COLOR_TOLERANCE[ch]) {
+                if (Math.abs((windowPixels[offset + ch] & 0xff) - Config.FINGER_COLOR[ch])
+                        >= tolerance[ch]) {
                     continue pixelLoop;
                 }
             }
-            pixelsToUpdate.add(p);
+            for (int ch = 0; ch < 3; ++ch) { // channels
+                double val = windowPixels[offset + ch] & 0xff;
+                sum[ch] += val;
+                sqSum[ch] += val * val;
+            }
+            crCbSum[0] += (windowPixels[offset + 1] & 0xff) * (windowPixels[offset + 2] & 0xff);
+            ++passed;
         }
+        int total = sampleOffsets.length;
         // FIXME: aver and ratio is only for debug, remove them for performance
-        aver[0] = ((int) (aver[0] / (double) samplePixels.size() * 100)) / 100.0;
-        aver[1] = ((int) (aver[1] / (double) samplePixels.size() * 100)) / 100.0;
-        aver[2] = ((int) (aver[2] / (double) samplePixels.size() * 100)) / 100.0;
+        aver[0] = ((int) (aver[0] / (double) total * 100)) / 100.0;
+        aver[1] = ((int) (aver[1] / (double) total * 100)) / 100.0;
+        aver[2] = ((int) (aver[2] / (double) total * 100)) / 100.0;
 
-        ratio = (int) (((double) pixelsToUpdate.size() * 100) / (double) samplePixels.size()) / 100.0;
-
-        if (pixelsToUpdate.size() < samplePixels.size() * Config.SAMPLE_PASS_THRESHOLD) {
-            ColorRange.reset();
-        } else {
-            ColorRange.updateRange(im, pixelsToUpdate);
-        }
+        ratio = (int) (((double) passed * 100) / (double) total) / 100.0;
+        return passed;
     }
 
-    public static boolean sampleCompleted() {
-        return ColorRange.isStable();
+    public boolean sampleCompleted() {
+        return colorRange.isStable();
     }
 
-    public static List<Point> getSampleWindowContour() {
+    public List<Point> getSampleWindowContour() {
         /**
          * For debug use in case you want to draw the contour
          */
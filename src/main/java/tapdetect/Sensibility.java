@@ -0,0 +1,134 @@
+package tapdetect;
+
+/**
+ * Sensibility settings of one session, i.e. what `Tap.setHighPerformance` and `Tap.set*Sensibility` set
+ * <br>Each `TapSession` owns its own, starting from the values of `Config`,
+ * <br>so that streams with different settings could run side by side.
+ * <br>Every value is replaced as a whole (arrays included) through a volatile field,
+ * <br>a frame being processed on another thread sees either the old or the new value of each setting.
+ */
+public class Sensibility {
+    private volatile int processIntervalMs = Config.PROCESS_INTERVAL_MS;
+    private volatile int moveDistMax = Config.FINGER_TIP_MOVE_DIST_MAX;
+    private volatile int lingerDistMax = Config.FINGER_TIP_LINGER_DIST_MAX;
+    private volatile double[] colorRangeExpand = Config.COLOR_RANGE_EXPAND.clone();
+    private volatile double samplePassThreshold = Config.SAMPLE_PASS_THRESHOLD;
+    private volatile double[] fingerColorTolerance = Config.FINGER_COLOR_TOLERANCE.clone();
+
+    public void setHighPerformance(boolean highPerformance) {
+        if (highPerformance) {
+            processIntervalMs = 50;
+        } else {
+            processIntervalMs = 100;
+        }
+    }
+
+    public void setMotionSensibility(int motionSensibility) {
+        switch (motionSensibility) {
+            case 0:
+                // sensitive to small move
+                setMotion(20, 1);
+                break;
+            case 1:
+                setMotion(25, 2);
+                break;
+            case 2:
+                // sensitive to big move
+                setMotion(35, 4);
+                break;
+        }
+    }
+
+    public void setSkinColorSensibility(int colorSensibility) {
+        switch (colorSensibility) {
+            case 0:
+                // a small range of color is considered as skin color
+                colorRangeExpand = new double[]{2, 1.4, 2};
+                break;
+            case 1:
+                colorRangeExpand = new double[]{3, 1.6, 3};
+                break;
+            case 2:
+                // a large range of color is considered as skin color
+                colorRangeExpand = new double[]{3, 1.8, 3};
+                break;
+        }
+    }
+
+    public void setCalibrationColorSensibility(int calibrationColorSensibility) {
+        switch (calibrationColorSensibility) {
+            case 0:
+                // have a coarse sampling
+                setCalibration(0.75, 25, 25);
+                break;
+            case 1:
+                setCalibration(0.85, 17, 20);
+                break;
+            case 2:
+                // have a precise sampling
+                setCalibration(0.9, 15, 15);
+                break;
+        }
+    }
+
+    public void copyFrom(Sensibility other) {
+        processIntervalMs = other.processIntervalMs;
+        moveDistMax = other.moveDistMax;
+        lingerDistMax = other.lingerDistMax;
+        colorRangeExpand = other.colorRangeExpand;
+        samplePassThreshold = other.samplePassThreshold;
+        fingerColorTolerance = other.fingerColorTolerance;
+    }
+
+    public int getProcessIntervalMs() {
+        // min interval between 2 processed frames, see `Config.PROCESS_INTERVAL_MS`
+        return processIntervalMs;
+    }
+
+    public int getMoveDistMax() {
+        // see `Config.FINGER_TIP_MOVE_DIST_MAX`
+        return moveDistMax;
+    }
+
+    public int getLingerDistMax() {
+        // see `Config.FINGER_TIP_LINGER_DIST_MAX`
+        return lingerDistMax;
+    }
+
+    public double getSamplePassThreshold() {
+        // see `Config.SAMPLE_PASS_THRESHOLD`
+        return samplePassThreshold;
+    }
+
+    double[] getColorRangeExpand() {
+        // see `Config.COLOR_RANGE_EXPAND`, not to be modified
+        return colorRangeExpand;
+    }
+
+    double[] getFingerColorTolerance() {
+        // see `Config.FINGER_COLOR_TOLERANCE`, not to be modified
+        return fingerColorTolerance;
+    }
+
+    void setMotion(int moveDistMax, int lingerDistMax) {
+        this.moveDistMax = moveDistMax;
+        this.lingerDistMax = lingerDistMax;
+    }
+
+    void setColorRangeExpand(double[] colorRangeExpand) {
+        this.colorRangeExpand = colorRangeExpand.clone();
+    }
+
+    void setCalibration(double samplePassThreshold, double crTolerance, double cbTolerance) {
+        double[] tolerance = fingerColorTolerance.clone();
+        tolerance[1] = crTolerance;
+        tolerance[2] = cbTolerance;
+        this.samplePassThreshold = samplePassThreshold;
+        fingerColorTolerance = tolerance;
+    }
+
+    void setFingerColorTolerance(double samplePassThreshold, double[] fingerColorTolerance) {
+        this.samplePassThreshold = samplePassThreshold;
+        this.fingerColorTolerance = fingerColorTolerance.clone();
+    }
+}
@@ -0,0 +1,148 @@
+package tapdetect;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+/**
+ * Lookup table classifying YCrCb pixels into skin or not in one pass
+ * <br>The table is the product of a 256 x 256 table on (Cr, Cb) and a 256 table on Y,
+ * <br>so that every 8-bit color is looked up exactly, and any shape of skin model on (Cr, Cb)
+ * <br>costs the same per pixel. Y is always checked against the range of `ColorRange`.
+ * <br>The table is rebuilt only when the calibration (`ColorRange.getVersion()`) or the model changes.
+ * <br>Models:
+ * <br>  MODEL_BOX: same as `Core.inRange` with `ColorRange.getRange()`, whose bounds are rounded to levels first
+ * <br>  MODEL_ELLIPSE: the ellipse inscribed in the box
+ * <br>  MODEL_GAUSSIAN: Mahalanobis distance to the sampled (Cr, Cb) distribution,
+ * <br>      with the covariance of Cr and Cb, within `Config.SKIN_MAHALANOBIS_MAX`
+ * <br>Ellipse and gaussian fall back to box before any sample is accepted.
+ */
+public class SkinLut {
+    public static final int MODEL_BOX = 0;
+    public static final int MODEL_ELLIPSE = 1;
+    public static final int MODEL_GAUSSIAN = 2;
+
+    private static final byte SKIN = (byte) 255;
+
+    private final byte[] crCbTable = new byte[256 * 256];  // index: (cr << 8) | cb
+    private final byte[] yTable = new byte[256];
+    private long version = -1;
+    private int model = -1;
+
+    // buffers of `classify`
+    private byte[] pixels = new byte[0];
+    private byte[] maskPixels = new byte[0];
+
+    public void update(ColorRange colorRange, int model) {
+        /**
+         * Rebuild the table if `colorRange` or `model` changed since the last build
+         */
+        synchronized (colorRange) {
+            if (colorRange.version == version && model == this.model) {
+                return;
+            }
+            Scalar[] range = colorRange.getRange();
+            double[] aver = colorRange.averCalibrated;
+            double[] std = colorRange.stdCalibrated;
+
+            buildYTable(range[0].val[0], range[1].val[0]);
+            if (std == null || model == MODEL_BOX) {
+                buildBox(range);
+            } else if (model == MODEL_ELLIPSE || !buildGaussian(aver, std, colorRange.covCrCb)) {
+                buildEllipse(aver, std, colorRange.sensibility.getColorRangeExpand());
+            }
+
+            version = colorRange.version;
+            this.model = model;
+        }
+    }
+
+    public void classify(Mat im, Mat mask) {
+        /**
+         * @param im: A CV_8UC3 image in YCrCb color space, will not be changed
+         *          could be a submat, `Mat.get` and `Mat.put` copy row by row if not continuous
+         * @param mask: output, a binary image will white pixels are skin
+         */
+        int len = im.rows() * im.cols();
+        // only grows, `Mat.get` and `Mat.put` stop at the end of the mat
+        if (pixels.length < len * 3) {
+            pixels = new byte[len * 3];
+            maskPixels = new byte[len];
+        }
+        classify(im, mask, pixels, maskPixels);
+    }
+
+    void classify(Mat im, Mat mask, byte[] pixels, byte[] maskPixels) {
+        /**
+         * Same with `classify(im, mask)` with buffers of the caller,
+         * so that several threads could classify with one table once it is updated
+         * @param pixels, maskPixels: buffers of at least 3 and 1 bytes for each pixel of `im`
+         */
+        int len = im.rows() * im.cols();
+        im.get(0, 0, pixels);
+
+        for (int i = 0, j = 0; i < len; ++i, j += 3) {
+            int y = pixels[j] & 0xff, cr = pixels[j + 1] & 0xff, cb = pixels[j + 2] & 0xff;
+            maskPixels[i] = (byte) (yTable[y] & crCbTable[(cr << 8) | cb]);
+        }
+
+        mask.create(im.rows(), im.cols(), CvType.CV_8UC1);
+        mask.put(0, 0, maskPixels);
+    }
+
+    private static int level(double bound) {
+        // `Core.inRange` rounds the bounds to the depth of an 8-bit image, half to even like `cvRound`
+        return (int) Math.rint(bound);
+    }
+
+    private void buildYTable(double lower, double upper) {
+        int yLower = level(lower), yUpper = level(upper);
+        for (int y = 0; y < 256; ++y) {
+            yTable[y] = (y >= yLower && y <= yUpper) ? SKIN : 0;
+        }
+    }
+
+    private void buildBox(Scalar[] range) {
+        int crLower = level(range[0].val[1]), crUpper = level(range[1].val[1]);
+        int cbLower = level(range[0].val[2]), cbUpper = level(range[1].val[2]);
+        for (int cr = 0; cr < 256; ++cr) {
+            boolean crIn = cr >= crLower && cr <= crUpper;
+            for (int cb = 0; cb < 256; ++cb) {
+                crCbTable[(cr << 8) | cb] = (crIn && cb >= cbLower && cb <= cbUpper) ? SKIN : 0;
+            }
+        }
+    }
+
+    private void buildEllipse(double[] aver, double[] std, double[] expand) {
+        // half axes are the half widths of the box
+        double a = Math.max(std[1] * expand[1], 0.5);
+        double b = Math.max(std[2] * expand[2], 0.5);
+        for (int cr = 0; cr < 256; ++cr) {
+            double dx = (cr - aver[1]) / a;
+            for (int cb = 0; cb < 256; ++cb) {
+                double dy = (cb - aver[2]) / b;
+                crCbTable[(cr << 8) | cb] = (dx * dx + dy * dy <= 1.0) ? SKIN : 0;
+            }
+        }
+    }
+
+    private boolean buildGaussian(double[] aver, double[] std, double cov) {
+        // @return: false if the covariance matrix is singular
+        double varCr = std[1] * std[1], varCb = std[2] * std[2];
+        double det = varCr * varCb - cov * cov;
+        if (det < 1e-6) {
+            return false;
+        }
+        double maxDist = Config.SKIN_MAHALANOBIS_MAX * Config.SKIN_MAHALANOBIS_MAX;
+        for (int cr = 0; cr < 256; ++cr) {
+            double dx = cr - aver[1];
+            for (int cb = 0; cb < 256; ++cb) {
+                double dy = cb - aver[2];
+                // [dx, dy] * inverse(covariance matrix) * [dx, dy]^T
+                double dist = (varCb * dx * dx - 2 * cov * dx * dy + varCr * dy * dy) / det;
+                crCbTable[(cr << 8) | cb] = (dist <= maxDist) ? SKIN : 0;
+            }
+        }
+        return true;
+    }
+}
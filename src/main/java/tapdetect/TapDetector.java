@@ -7,15 +7,23 @@
 
 package tapdetect;
 
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.ArrayList;
 
 import org.opencv.core.Point;
 import org.opencv.core.Mat;
 
+/**
+ * Tracker judging the status of finger tips by comparing them with those of the last frame
+ * <br>One instance tracks one video stream, thus each `TapSession` owns its own
+ * <br>Each track keeps the last seen position, status and velocity of a finger tip.
+ * <br>A finger tip is matched with the position its track predicts by constant velocity at this frame,
+ * <br>within the max move distance of the `Sensibility` scaled by the time since the track was seen,
+ * <br>so frames skipped by the throttling or dropped do not break a track nor a FALLING to TAPPING transition.
+ * <br>A matched tip keeps its track id, a track not matched is kept, unseen, for up to `Config.TRACK_GAP_MAX_MS`.
+ * <br>A tip stops pressing (is released) once a tapping or pressing tip of the last frame
+ * <br>is not followed by a tapping or pressing tip of the same track.
+ */
 public class TapDetector {
     enum FingerTipStatus {
         NOT_CARE, FALLING, LINGER, TAPPING, PRESSING,
@@ -23,15 +31,37 @@ public class TapDetector {
 
     public static class TapDetectPoint extends Point {
         FingerTipStatus status;
+        int trackId;
+        double vx, vy;  // velocity of the track, in pixels per ms
+        long seenMs;  // tracker time the track was last seen
 
-        TapDetectPoint(Point point, FingerTipStatus status) {
+        TapDetectPoint(Point point, FingerTipStatus status, int trackId) {
             super(point.x, point.y);
             this.status = status;
+            this.trackId = trackId;
         }
 
         TapDetectPoint(TapDetectPoint other) {
             super(other.x, other.y);
             status = other.status;
+            trackId = other.trackId;
+            vx = other.vx;
+            vy = other.vy;
+            seenMs = other.seenMs;
+        }
+
+        public int getTrackId() {
+            return trackId;
+        }
+
+        public double getVelocityX() {
+            // pixels per ms of the working image, positive to the right
+            return vx;
+        }
+
+        public double getVelocityY() {
+            // pixels per ms of the working image, positive downwards
+            return vy;
         }
 
         int distanceFrom(Point pt) {
@@ -55,7 +85,18 @@ public class TapDetector {
         }
     }
 
-    public static List<Point> getTapping(Mat im, List<Point> fingers) {
+    public TapDetector() {
+        this(new Sensibility());
+    }
+
+    public TapDetector(Sensibility sensibility) {
+        /**
+         * @param sensibility: settings of the session, read at every frame
+         */
+        this.sensibility = sensibility;
+    }
+
+    public List<Point> getTapping(Mat im, List<Point> fingers) {
         /**
          * @param: im: A YCrCb image
          * @param: fingers: A list of points indicating the position of finger tips
@@ -72,7 +113,7 @@ public class TapDetector {
         return result;
     }
 
-    public static List<Point> getPressing(Mat im, List<Point> fingers) {
+    public List<Point> getPressing(Mat im, List<Point> fingers) {
         /**
          * @param: im: A YCrCb image
          * @param: fingers: A list of points indicating the position of finger tips
@@ -89,74 +130,211 @@ public class TapDetector {
         return result;
     }
 
-    public static List<TapDetectPoint> getTappingAll(Mat im, List<Point> fingers) {
+    public List<TapDetectPoint> getTappingAll(Mat im, List<Point> fingers) {
+        /**
+         * Same with `getTappingAll(im, fingers, timestampMs)`, frames taken one processing interval of the `Sensibility` apart
+         */
+        return getTappingAll(im, fingers, -1);
+    }
+
+    public List<TapDetectPoint> getTappingAll(Mat im, List<Point> fingers, long timestampMs) {
         /**
          * @param: im: A YCrCb image
          * @param: fingers: A list of points indicating the position of finger tips
+         * @param: timestampMs: capture time of `im`, -1 if unknown, i.e. one processing interval after the last frame
+         *      every track is lost if `im` is older than the last frame
          * @return:
          *  A list of `TapDetectPoint` whose `status` indicating the status of each finger tip point
          */
-        List<TapDetectPoint> nextFingers = new ArrayList<>();
-
-        TapDetectPoint nearestPt;
-        int nearest_dist;
+        released.clear();
+        long now = timestampMs >= 0 ? timestampMs : (clock < 0 ? 0 : clock + sensibility.getProcessIntervalMs());
+        boolean lostAll = clock >= 0 && now < clock;
+        clock = now;
 
-        for (final Point p : fingers) {
-
-            // find nearest point among all points from last frame
-            // it is assumed that if the finger tip is detected in both frame
-            // then the former must be the nearest to the latter
-            if (lastFingerTips.isEmpty()) {
-                nearestPt = null;
-                nearest_dist = Config.FINGER_TIP_MOVE_DIST_MAX + 1;  // use the max value as invalid
+        // tracks unseen for too long are lost
+        List<TapDetectPoint> lastFingerTips = new ArrayList<>(tracks.size());
+        for (TapDetectPoint p : tracks) {
+            if (lostAll || clock - p.seenMs > Config.TRACK_GAP_MAX_MS) {
+                if (p.isTapping() || p.isPressing()) {
+                    released.add(p);
+                }
             } else {
-                nearestPt = Collections.min(lastFingerTips,
-//                    (TapDetectPoint p1, TapDetectPoint p2) -> Integer.compare(p1.distanceFrom(p), p2.distanceFrom(p))
-                        new Comparator<TapDetectPoint>() {
-                            @Override
-                            public int compare(TapDetectPoint p1, TapDetectPoint p2) {
-                                return Integer.compare(p1.distanceFrom(p), p2.distanceFrom(p));
-                            }
-                        }
-                );
-                nearest_dist = nearestPt.distanceFrom(p);
+                lastFingerTips.add(p);
             }
+        }
+
+        // where each track is expected at this frame, and how far from it a tip of the track could be
+        int m = lastFingerTips.size();
+        List<TapDetectPoint> predicted = new ArrayList<>(m);
+        int[] gates = new int[m];
+        int moveDistMax = sensibility.getMoveDistMax();
+        int lingerDistMax = sensibility.getLingerDistMax();
+        int intervalMs = Math.max(sensibility.getProcessIntervalMs(), 1);
+        int maxGate = moveDistMax;
+        for (int j = 0; j < m; ++j) {
+            TapDetectPoint last = lastFingerTips.get(j);
+            long dt = elapsed(last);
+            Point at = new Point(last.x + last.vx * dt, last.y + last.vy * dt);
+            predicted.add(new TapDetectPoint(at, last.status, last.trackId));
+            double frames = Math.max((double) dt / intervalMs, 1);
+            gates[j] = (int) Math.round(moveDistMax * frames);
+            maxGate = Math.max(maxGate, gates[j]);
+        }
+
+        List<TapDetectPoint> nextFingers = new ArrayList<>();
+
+        // it is assumed that if the finger tip is detected in both frame
+        // then the pair of them is in the best assignment between the tips of 2 frames
+        int[] matches = matcher.match(predicted, fingers, maxGate, gates);
+        boolean[] seen = new boolean[m];
 
-            if (nearestPt == null || nearest_dist > Config.FINGER_TIP_MOVE_DIST_MAX) {
+        for (int i = 0; i < fingers.size(); ++i) {
+            Point p = fingers.get(i);
+            TapDetectPoint matchedPt = matches[i] < 0 ? null : lastFingerTips.get(matches[i]);
+
+            if (matchedPt == null) {
                 // has no relevant point at last frame
-                nextFingers.add(new TapDetectPoint(p, FingerTipStatus.NOT_CARE));
+                TapDetectPoint pt = new TapDetectPoint(p, FingerTipStatus.NOT_CARE, nextTrackId++);
+                pt.seenMs = clock;
+                nextFingers.add(pt);
+                continue;
+            }
+            seen[matches[i]] = true;
 
-            } else if (nearest_dist < Config.FINGER_TIP_LINGER_DIST_MAX) {
+            // statuses compare with where the tip was last seen
+            int id = matchedPt.trackId;
+            TapDetectPoint pt;
+            if (matchedPt.distanceFrom(p) < lingerDistMax) {
                 // has a point at last frame with almost a same position
-                lastFingerTips.remove(nearestPt); // can not be matched by other points
-                if (nearestPt.isFalling()) {
+                if (matchedPt.isFalling()) {
                     // last frame this is falling, and this frame it lingers
                     // Tap detected !
-                    noNeighborAdd(nextFingers, new TapDetectPoint(p, FingerTipStatus.TAPPING));
+                    pt = new TapDetectPoint(p, FingerTipStatus.TAPPING, id);
                     // nextFingers.add(new TapDetectPoint(p, FingerTipStatus.TAPPING));
-                } else if (nearestPt.isPressing() || nearestPt.isTapping()) {
-                    nextFingers.add(new TapDetectPoint(p, FingerTipStatus.PRESSING));
+                } else if (matchedPt.isPressing() || matchedPt.isTapping()) {
+                    pt = new TapDetectPoint(p, FingerTipStatus.PRESSING, id);
                 } else {
-                    nextFingers.add(new TapDetectPoint(p, FingerTipStatus.LINGER));
+                    pt = new TapDetectPoint(p, FingerTipStatus.LINGER, id);
                 }
-            } else if (Math.abs(p.x - nearestPt.x) < p.y - nearestPt.y) {
+            } else if (Math.abs(p.x - matchedPt.x) < p.y - matchedPt.y) {
                 // has a point at last frame which is above this point and not too far
-                nextFingers.add(new TapDetectPoint(p, FingerTipStatus.FALLING));
-                lastFingerTips.remove(nearestPt); // can not be matched by other points
+                pt = new TapDetectPoint(p, FingerTipStatus.FALLING, id);
             } else {
-                nextFingers.add(new TapDetectPoint(p, FingerTipStatus.NOT_CARE));
+                pt = new TapDetectPoint(p, FingerTipStatus.NOT_CARE, id);
             }
 
+            // velocity smoothed over the moves between the frames the tip is seen,
+            // kept for frames of the same time
+            pt.vx = matchedPt.vx;
+            pt.vy = matchedPt.vy;
+            if (clock > matchedPt.seenMs) {
+                long dt = clock - matchedPt.seenMs;
+                double gain = Config.TRACK_VELOCITY_GAIN;
+                pt.vx += gain * ((p.x - matchedPt.x) / dt - matchedPt.vx);
+                pt.vy += gain * ((p.y - matchedPt.y) / dt - matchedPt.vy);
+            }
+            pt.seenMs = clock;
+            if (pt.isTapping()) {
+                noNeighborAdd(nextFingers, pt);
+            } else {
+                nextFingers.add(pt);
+            }
         }
 
-        // update lastFingerTips
-        lastFingerTips.clear();
+        // tapping or pressing tips of last frame not continued by a pressing tip are released
+        for (TapDetectPoint last : lastFingerTips) {
+            if (!last.isTapping() && !last.isPressing()) {
+                continue;
+            }
+            boolean continued = false;
+            for (TapDetectPoint p : nextFingers) {
+                if (p.trackId == last.trackId && (p.isTapping() || p.isPressing())) {
+                    continued = true;
+                    break;
+                }
+            }
+            if (!continued) {
+                released.add(last);
+            }
+        }
+
+        // update tracks, those not seen this frame are kept where they were last seen
+        tracks.clear();
         for (TapDetectPoint p : nextFingers) {
-            lastFingerTips.add(new TapDetectPoint(p));
+            tracks.add(new TapDetectPoint(p));
+        }
+        for (int j = 0; j < m; ++j) {
+            if (!seen[j]) {
+                TapDetectPoint last = new TapDetectPoint(lastFingerTips.get(j));
+                if (last.isTapping() || last.isPressing()) {
+                    // released above, pressing again only after another fall
+                    last.status = FingerTipStatus.NOT_CARE;
+                }
+                tracks.add(last);
+            }
         }
         return nextFingers;
     }
 
+    public boolean isSteady() {
+        /**
+         * @return: whether the finger tips of the last frame, seen again at the same place, keep their status,
+         *      i.e. none of them is falling or tapping
+         */
+        for (TapDetectPoint p : tracks) {
+            if (p.seenMs == clock && (p.isFalling() || p.isTapping())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void hold(long timestampMs) {
+        /**
+         * Nothing moved in the frame taken at `timestampMs` (e.g. judged by `MotionGate`), skip judging it:
+         * statuses are kept and nothing is released, the finger tips of the last frame are taken as still seen
+         * where they are, at rest, so that a still hand is not lost after `Config.TRACK_GAP_MAX_MS`.
+         * Only meant while `isSteady()`, otherwise the tips have to be judged again by `getTappingAll`.
+         * @param timestampMs: capture time of the frame, -1 if unknown as `getTappingAll`
+         */
+        released.clear();
+        long now = timestampMs >= 0 ? timestampMs : (clock < 0 ? 0 : clock + sensibility.getProcessIntervalMs());
+        if (clock < 0 || now < clock) {
+            return;
+        }
+        for (TapDetectPoint p : tracks) {
+            if (p.seenMs == clock) {
+                p.seenMs = now;
+                p.vx = 0;
+                p.vy = 0;
+            }
+        }
+        clock = now;
+    }
+
+    public List<TapDetectPoint> getReleased() {
+        /**
+         * @return: tapping or pressing finger tips of the previous frame, at their last position,
+         *      released in the frame of the last `getTappingAll` call
+         *      valid until the next call
+         */
+        return released;
+    }
+
+    public void reset() {
+        /**
+         * Forget the finger tips of the last frame
+         */
+        tracks.clear();
+        released.clear();
+        clock = -1;
+    }
+
+    private long elapsed(TapDetectPoint track) {
+        // ms since `track` was last seen, at least 1
+        return Math.max(clock - track.seenMs, 1);
+    }
+
     private static void noNeighborAdd(List<TapDetectPoint> points, TapDetectPoint toAdd) {
         for (TapDetectPoint p : points) {
             if (p.isTapping() && p.distanceFrom(toAdd) < 7) {
@@ -168,5 +346,10 @@ public class TapDetector {
         points.add(toAdd);
     }
 
-    private static LinkedList<TapDetectPoint> lastFingerTips = new LinkedList<>();  // finger tips of last frame
+    private final Sensibility sensibility;
+    private final List<TapDetectPoint> tracks = new ArrayList<>();  // finger tips of last frame, and those unseen since
+    private final List<TapDetectPoint> released = new ArrayList<>();  // released in the last frame
+    private int nextTrackId = 0;
+    private long clock = -1;  // capture time of last frame, or counted by processing intervals, -1 if none yet
+    private final TipMatcher matcher = new TipMatcher();
 }
@@ -0,0 +1,286 @@
+package tapdetect;
+
+import org.opencv.core.Point;
+
+import java.util.Arrays;
+import java.util.List;
+
+import tapdetect.TapDetector.TapDetectPoint;
+
+/**
+ * Association of the finger tips of this frame with those of the last frame
+ * <br>Candidate pairs within `maxDist` (`TapDetectPoint.distanceFrom`) are looked up in a grid of buckets,
+ * <br>so each tip only checks the tips of its neighbouring cells.
+ * <br>Candidates are split into connected groups, each solved by the Hungarian algorithm,
+ * <br>giving the assignment with the least total distance, where leaving a tip unmatched
+ * <br>costs as much as a pair `maxDist + 1` away.
+ * <br>Unlike matching each tip to its nearest one in turn, the result does not depend on
+ * <br>the order of the tips, and 2 close tips can not steal the match of each other.
+ * <br>Groups are found in O(n + m + pairs), each costs O(k^3) for its k tips.
+ */
+class TipMatcher {
+    // growable buffers reused between frames, only `result` of `match` is allocated per call
+    // buckets of the grid: first point of each cell, next point of each point
+    private int[] cellHead = new int[0];
+    private int[] cellLink = new int[0];
+    // union-find of the nodes, node i for next[i], node n + j for prev[j]
+    private int[] parent = new int[0];
+    // candidate pairs
+    private int[] edgeNext = new int[16];
+    private int[] edgePrev = new int[16];
+    private int[] edgeDist = new int[16];
+    private int edgeCnt = 0;
+    // groups: group of each root (-1 if without pairs), starts of the nodes and pairs of each group,
+    // rows of each group, nodes and pairs bucketed by group, index of each node among the rows or cols of its group
+    private int[] groupOf = new int[0];
+    private int[] nodeStart = new int[0];
+    private int[] edgeStart = new int[0];
+    private int[] rowCount = new int[0];
+    private int[] groupNodes = new int[0];
+    private int[] groupEdges = new int[0];
+    private int[] localIndex = new int[0];
+    private int[] fill = new int[0];
+    // cost matrix of a group, row major, and the buffers of `hungarian`
+    private int[] cost = new int[0];
+    private int[] u = new int[0];
+    private int[] v = new int[0];
+    private int[] rowOf = new int[0];
+    private int[] way = new int[0];
+    private int[] minv = new int[0];
+    private boolean[] used = new boolean[0];
+    private int[] assign = new int[0];
+
+    int[] match(List<TapDetectPoint> prev, List<Point> next, int maxDist) {
+        /**
+         * @return: for each point in `next`, the index of the matched point in `prev`, or -1 if unmatched
+         */
+        return match(prev, next, maxDist, null);
+    }
+
+    int[] match(List<TapDetectPoint> prev, List<Point> next, int maxDist, int[] gates) {
+        /**
+         * Same with `match(prev, next, maxDist)`, a pair is only a candidate within the gate of its `prev` point
+         * @param gates: max distance of each point in `prev`, at most `maxDist`, null for `maxDist` of all
+         */
+        int n = next.size(), m = prev.size();
+        int[] result = new int[n];
+        Arrays.fill(result, -1);
+        if (n == 0 || m == 0) {
+            return result;
+        }
+
+        // 1. buckets of `prev`, a pair within `maxDist` lies in neighbouring cells:
+        // distanceFrom = |dx| / 2 + |dy| <= maxDist  =>  |dx| < cellWidth, |dy| < cellHeight
+        double cellWidth = 2 * maxDist + 2, cellHeight = maxDist + 1;
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (Point p : prev) {
+            minX = Math.min(minX, p.x);
+            minY = Math.min(minY, p.y);
+            maxX = Math.max(maxX, p.x);
+            maxY = Math.max(maxY, p.y);
+        }
+        for (Point p : next) {
+            minX = Math.min(minX, p.x);
+            minY = Math.min(minY, p.y);
+            maxX = Math.max(maxX, p.x);
+            maxY = Math.max(maxY, p.y);
+        }
+        int gridCols = (int) ((maxX - minX) / cellWidth) + 1;
+        int gridRows = (int) ((maxY - minY) / cellHeight) + 1;
+
+        cellHead = ensure(cellHead, gridCols * gridRows);
+        cellLink = ensure(cellLink, m);
+        Arrays.fill(cellHead, 0, gridCols * gridRows, -1);
+        for (int j = 0; j < m; ++j) {
+            Point p = prev.get(j);
+            int cell = (int) ((p.y - minY) / cellHeight) * gridCols + (int) ((p.x - minX) / cellWidth);
+            cellLink[j] = cellHead[cell];
+            cellHead[cell] = j;
+        }
+
+        // 2. candidate pairs and their connected groups, node i for next[i], node n + j for prev[j]
+        parent = ensure(parent, n + m);
+        for (int i = 0; i < n + m; ++i) {
+            parent[i] = i;
+        }
+        edgeCnt = 0;
+        for (int i = 0; i < n; ++i) {
+            Point p = next.get(i);
+            int cx = (int) ((p.x - minX) / cellWidth), cy = (int) ((p.y - minY) / cellHeight);
+            for (int y = Math.max(cy - 1, 0); y <= Math.min(cy + 1, gridRows - 1); ++y) {
+                for (int x = Math.max(cx - 1, 0); x <= Math.min(cx + 1, gridCols - 1); ++x) {
+                    for (int j = cellHead[y * gridCols + x]; j >= 0; j = cellLink[j]) {
+                        int dist = prev.get(j).distanceFrom(p);
+                        if (dist <= (gates == null ? maxDist : gates[j])) {
+                            addEdge(i, j, dist);
+                            parent[find(i)] = find(n + j);
+                        }
+                    }
+                }
+            }
+        }
+
+        // 3. nodes and candidate pairs of each group, bucketed by the root of the group in one pass each
+        int nodes = n + m, groups = 0;
+        groupOf = ensure(groupOf, nodes);
+        Arrays.fill(groupOf, 0, nodes, -1);
+        for (int e = 0; e < edgeCnt; ++e) {
+            int root = find(edgeNext[e]);
+            if (groupOf[root] < 0) {
+                groupOf[root] = groups++;
+            }
+        }
+        // node start of each group in `groupNodes`, rows (`next`) before cols (`prev`) in a group,
+        // and start of its pairs in `groupEdges`
+        nodeStart = ensure(nodeStart, groups + 1);
+        rowCount = ensure(rowCount, groups);
+        edgeStart = ensure(edgeStart, groups + 1);
+        Arrays.fill(nodeStart, 0, groups + 1, 0);
+        Arrays.fill(rowCount, 0, groups, 0);
+        Arrays.fill(edgeStart, 0, groups + 1, 0);
+        for (int x = 0; x < nodes; ++x) {
+            int g = groupOf[find(x)];
+            if (g >= 0) {
+                ++nodeStart[g + 1];
+                if (x < n) {
+                    ++rowCount[g];
+                }
+            }
+        }
+        for (int e = 0; e < edgeCnt; ++e) {
+            ++edgeStart[groupOf[find(edgeNext[e])] + 1];
+        }
+        for (int g = 0; g < groups; ++g) {
+            nodeStart[g + 1] += nodeStart[g];
+            edgeStart[g + 1] += edgeStart[g];
+        }
+        // nodes are visited in order, so rows come first and both are in ascending order in a group
+        groupNodes = ensure(groupNodes, nodes);
+        localIndex = ensure(localIndex, nodes);
+        fill = ensure(fill, groups);
+        System.arraycopy(nodeStart, 0, fill, 0, groups);
+        for (int x = 0; x < nodes; ++x) {
+            int g = groupOf[find(x)];
+            if (g >= 0) {
+                int at = fill[g]++;
+                groupNodes[at] = x;
+                localIndex[x] = x < n ? at - nodeStart[g] : at - nodeStart[g] - rowCount[g];
+            }
+        }
+        groupEdges = ensure(groupEdges, edgeCnt);
+        System.arraycopy(edgeStart, 0, fill, 0, groups);
+        for (int e = 0; e < edgeCnt; ++e) {
+            groupEdges[fill[groupOf[find(edgeNext[e])]]++] = e;
+        }
+
+        // 4. solve each group
+        int big = maxDist + 1;
+        for (int g = 0; g < groups; ++g) {
+            int rows = rowCount[g], cols = nodeStart[g + 1] - nodeStart[g] - rows;
+            int k = Math.max(rows, cols);
+            cost = ensure(cost, k * k);
+            Arrays.fill(cost, 0, k * k, big);
+            for (int f = edgeStart[g]; f < edgeStart[g + 1]; ++f) {
+                int e = groupEdges[f];
+                cost[localIndex[edgeNext[e]] * k + localIndex[n + edgePrev[e]]] = edgeDist[e];
+            }
+
+            hungarian(k);
+            int rowBase = nodeStart[g], colBase = nodeStart[g] + rows;
+            for (int r = 0; r < rows; ++r) {
+                int c = assign[r];
+                if (c < cols && cost[r * k + c] < big) {
+                    result[groupNodes[rowBase + r]] = groupNodes[colBase + c] - n;
+                }
+            }
+        }
+        return result;
+    }
+
+    private void hungarian(int k) {
+        /**
+         * Hungarian algorithm on the square cost matrix of `k` x `k` in `cost`, O(k^3)
+         * Writes the column assigned to each row, with the least total cost, to `assign`
+         */
+        u = ensure(u, k + 1);
+        v = ensure(v, k + 1);
+        rowOf = ensure(rowOf, k + 1);
+        way = ensure(way, k + 1);
+        minv = ensure(minv, k + 1);
+        assign = ensure(assign, k);
+        if (used.length < k + 1) {
+            used = new boolean[k + 1];
+        }
+        Arrays.fill(u, 0, k + 1, 0);
+        Arrays.fill(v, 0, k + 1, 0);
+        int[] p = rowOf;  // p[j]: row (1-based) assigned to column j, 0 if none
+        Arrays.fill(p, 0, k + 1, 0);
+
+        for (int i = 1; i <= k; ++i) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, 0, k + 1, Integer.MAX_VALUE);
+            Arrays.fill(used, 0, k + 1, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0], delta = Integer.MAX_VALUE, j1 = 0;
+                for (int j = 1; j <= k; ++j) {
+                    if (!used[j]) {
+                        int cur = cost[(i0 - 1) * k + j - 1] - u[i0] - v[j];
+                        if (cur < minv[j]) {
+                            minv[j] = cur;
+                            way[j] = j0;
+                        }
+                        if (minv[j] < delta) {
+                            delta = minv[j];
+                            j1 = j;
+                        }
+                    }
+                }
+                for (int j = 0; j <= k; ++j) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        for (int j = 1; j <= k; ++j) {
+            assign[p[j] - 1] = j - 1;
+        }
+    }
+
+    private int find(int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    private void addEdge(int next, int prev, int dist) {
+        if (edgeCnt == edgeNext.length) {
+            edgeNext = Arrays.copyOf(edgeNext, edgeCnt * 2);
+            edgePrev = Arrays.copyOf(edgePrev, edgeCnt * 2);
+            edgeDist = Arrays.copyOf(edgeDist, edgeCnt * 2);
+        }
+        edgeNext[edgeCnt] = next;
+        edgePrev[edgeCnt] = prev;
+        edgeDist[edgeCnt] = dist;
+        ++edgeCnt;
+    }
+
+    private static int[] ensure(int[] buffer, int size) {
+        return buffer.length >= size ? buffer : new int[size];
+    }
+}
@@ -12,6 +12,7 @@ import java.util.ArrayList;
 // import java.util.stream.Stream;
 // import java.util.stream.Collectors;
 
+import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.Size;
@@ -42,19 +43,87 @@ public class Util {
     }
 
     public static List<MatOfPoint> largeContours(Mat im, int area) {
-        List<MatOfPoint> contours = new ArrayList<>();
         Mat hierarchy = new Mat();
-        Imgproc.findContours(im, contours, hierarchy, 1, Imgproc.RETR_LIST);
+        try {
+            return largeContours(im, area, hierarchy);
+        } finally {
+            hierarchy.release();
+        }
+    }
+
+    public static List<MatOfPoint> largeContours(Mat im, int area, Mat hierarchy) {
+        return largeContours(im, area, hierarchy, null);
+    }
 
-        // FIXME: stream requires Android sdk >= 24
-        // return contours.stream()
-        //         .filter(cnt -> Imgproc.contourArea(cnt) > area)
-        //         .collect(Collectors.toList());
+    public static List<MatOfPoint> largeContours(Mat im, int area, Mat hierarchy, Point offset) {
+        /**
+         * @param hierarchy: buffer for the hierarchy output of `findContours`, will be overwritten
+         * @param offset: if is not null, added to every point of the contours,
+         *              e.g. the top left point when `im` is a submat
+         * @return: contours whose area is larger than `area`, the smaller ones are released
+         */
+        Mat labels = new Mat(), stats = new Mat(), centroids = new Mat(), blob = new Mat();
+        try {
+            return largeContours(im, area, offset, hierarchy, labels, stats, centroids, blob);
+        } finally {
+            labels.release();
+            stats.release();
+            centroids.release();
+            blob.release();
+        }
+    }
+
+    static List<MatOfPoint> largeContours(Mat im, int area, Workspace ws, Point offset) {
+        // same with `largeContours(im, area, hierarchy, offset)` with the buffers of `ws`
+        return largeContours(im, area, offset, ws.hierarchy, ws.labels, ws.stats, ws.centroids, ws.blob);
+    }
+
+    private static List<MatOfPoint> largeContours(Mat im, int area, Point offset, Mat hierarchy,
+                                                  Mat labels, Mat stats, Mat centroids, Mat blob) {
+        /**
+         * Contours are only traced for the blobs which could hold one larger than `area`.
+         * A contour runs through the centers of the border pixels of its blob,
+         * so any contour of a blob of a w x h bounding box, outer or hole, has an area <= (w - 1) * (h - 1).
+         * Blobs are the 8-connected components, whose contours do not depend on other blobs,
+         * so tracing each surviving blob alone gives the same contours as tracing the whole `im`,
+         * though maybe in another order.
+         */
+        int n = Imgproc.connectedComponentsWithStats(im, labels, stats, centroids, 8, CvType.CV_32S);
+        int[] stat = new int[n * 5];
+        if (n > 1) {
+            stats.get(0, 0, stat);
+        }
+        double dx = offset == null ? 0 : offset.x, dy = offset == null ? 0 : offset.y;
 
         List<MatOfPoint> ret = new ArrayList<>();
-        for (MatOfPoint cnt : contours) {
-            if (Imgproc.contourArea(cnt) > area) {
-                ret.add(cnt);
+        for (int i = 1; i < n; ++i) {  // 0 is the background
+            int left = stat[i * 5 + Imgproc.CC_STAT_LEFT], top = stat[i * 5 + Imgproc.CC_STAT_TOP];
+            int width = stat[i * 5 + Imgproc.CC_STAT_WIDTH], height = stat[i * 5 + Imgproc.CC_STAT_HEIGHT];
+            if ((long) (width - 1) * (height - 1) <= area) {
+                continue;
+            }
+
+            // the blob alone, with a margin of 1 pixel inside `im` so that it does not touch the border
+            int x0 = Math.max(left - 1, 0), y0 = Math.max(top - 1, 0);
+            int x1 = Math.min(left + width + 1, im.cols()), y1 = Math.min(top + height + 1, im.rows());
+            Mat labelsRoi = labels.submat(y0, y1, x0, x1);
+            Core.compare(labelsRoi, new Scalar(i), blob, Core.CMP_EQ);
+            labelsRoi.release();
+
+            List<MatOfPoint> contours = new ArrayList<>();
+            Imgproc.findContours(blob, contours, hierarchy, 1, Imgproc.RETR_LIST, new Point(x0 + dx, y0 + dy));
+
+            // FIXME: stream requires Android sdk >= 24
+            // return contours.stream()
+            //         .filter(cnt -> Imgproc.contourArea(cnt) > area)
+            //         .collect(Collectors.toList());
+
+            for (MatOfPoint cnt : contours) {
+                if (Imgproc.contourArea(cnt) > area) {
+                    ret.add(cnt);
+                } else {
+                    cnt.release();
+                }
             }
         }
         return ret;
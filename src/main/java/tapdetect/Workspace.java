@@ -0,0 +1,129 @@
+package tapdetect;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Preallocated native buffers used by the per-frame detection path
+ * <br>One workspace serves one frame at a time, e.g. each `TapSession` owns one.
+ * <br>Buffers are reused frame after frame, opencv only reallocates them when the frame size changes,
+ * <br>so that the native memory of a long session stays flat instead of waiting for finalizers.
+ * <br>Call `release()` once the workspace is no longer used.
+ * <br>Needs the opencv native library to be loaded before construction.
+ */
+public class Workspace {
+    // height of the working image relative to `Config.IM_HEIGHT`,
+    // thresholds in pixels of `FingerDetector` are scaled by it
+    double scale = 1.0;
+    // whether `HandDetector` opens the hand mask to remove noise
+    boolean morphology = true;
+    // binary image of the hand, written by `HandDetector`
+    final Mat hand = new Mat();
+    // `hand` dilated by `kernel5`, made by `ParallelSegmenter` along with `hand`,
+    // used by `FingerDetector` instead of dilating `hand` itself if `handDilatedReady`
+    final Mat handDilated = new Mat();
+    boolean handDilatedReady = false;
+    // skin lookup table, used if `Config.SKIN_LUT_MODEL >= 0`
+    final SkinLut skinLut = new SkinLut();
+    // kernels of the morphology operations
+    final Mat kernel3 = Mat.ones(3, 3, CvType.CV_8U);
+    final Mat kernel5 = Mat.ones(5, 5, CvType.CV_8UC1);
+    // outputs of `Imgproc.findContours` and `Imgproc.approxPolyDP`
+    final Mat hierarchy = new Mat();
+    // connected components of `Util.largeContours`: labels, their statistics and centroids, one blob
+    final Mat labels = new Mat();
+    final Mat stats = new Mat();
+    final Mat centroids = new Mat();
+    final Mat blob = new Mat();
+    final MatOfPoint2f cntCvt = new MatOfPoint2f();
+    final MatOfPoint2f approx = new MatOfPoint2f();
+    // buffers of the finger tip geometry of `FingerDetector`, grown on demand
+    byte[] handPixels = new byte[0];
+    float[] apexes = new float[0];
+    double[] edgeX = new double[0];
+    double[] edgeY = new double[0];
+    double[] edgeLength = new double[0];
+    double[] edgeTan = new double[0];
+    boolean[] isConvex = new boolean[0];
+    // contours found in the last frame, released when the next frame comes
+    final List<MatOfPoint> contours = new ArrayList<>();
+    // stage latencies of `FingerDetector` are recorded here if not null
+    Metrics metrics = null;
+
+    public Mat getHand() {
+        return hand;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    public void setScale(double scale) {
+        /**
+         * @param scale: height of the working image relative to `Config.IM_HEIGHT`
+         */
+        this.scale = scale;
+    }
+
+    public void setMorphologyEnabled(boolean morphology) {
+        this.morphology = morphology;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public int getContourCount() {
+        return contours.size();
+    }
+
+    public MatOfPoint getContour(int i) {
+        /**
+         * @return: the i-th hand contour found in the last frame, valid until the next frame
+         */
+        return contours.get(i);
+    }
+
+    void ensureApexCapacity(int len) {
+        if (isConvex.length < len) {
+            int cap = Math.max(len, isConvex.length * 2);
+            apexes = new float[cap * 2];
+            edgeX = new double[cap];
+            edgeY = new double[cap];
+            edgeLength = new double[cap];
+            edgeTan = new double[cap];
+            isConvex = new boolean[cap];
+        }
+    }
+
+    void recycleContours() {
+        /**
+         * Release the contours of the last frame
+         * Contours given out to callers are only valid until the next frame
+         */
+        for (MatOfPoint cnt : contours) {
+            cnt.release();
+        }
+        contours.clear();
+    }
+
+    public void release() {
+        recycleContours();
+        hand.release();
+        handDilated.release();
+        kernel3.release();
+        kernel5.release();
+        hierarchy.release();
+        labels.release();
+        stats.release();
+        centroids.release();
+        blob.release();
+        cntCvt.release();
+        approx.release();
+    }
+}
@@ -0,0 +1,203 @@
+package tapdetect;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A raw YUV 4:2:0 camera frame, read in place
+ * <br>Describes the Y plane and the 2x2 subsampled U (Cb) and V (Cr) planes by their buffers, offsets and strides,
+ * <br>which covers NV21 / NV12 (interleaved chroma, pixel stride 2), I420 / YV12 (planar chroma, pixel stride 1)
+ * <br>and the 3 planes of an android `YUV_420_888` image.
+ * <br>`toYCrCb` builds the downscaled YCrCb working image straight from the planes:
+ * <br>each output pixel is the mean of its block of source pixels, mapped to the full range YCrCb
+ * <br>of `Imgproc.COLOR_BGR2YCrCb`, so the frame is never converted to BGR nor copied at full resolution.
+ * <br>Planes are read one row at a time, the buffers and their positions are not changed.
+ * <br>The working image is close to, not the same as, that of the frame decoded to BGR then `Util.resize`d and converted:
+ * <br>a block mean here is a bilinear sample there, so they only differ at sharp edges,
+ * <br>by up to 19 levels of Y and 8 of Cr / Cb at the edges of hands seen by a camera, less than 1 level on average,
+ * <br>within 8 levels once blurred by `Config.IM_BLUR_SIZE`, even with single pixel edges (see `YuvFrameTest`).
+ */
+public class YuvFrame {
+    private final int width, height;
+    private final ByteBuffer y, u, v;
+    private final int yOffset, uOffset, vOffset;
+    private final int yRowStride, uvRowStride, uvPixelStride;
+
+    // video range (Y 16 ~ 235, UV 16 ~ 240) of BT.601, what `Imgproc.COLOR_YUV2BGR_NV21` expects,
+    // to full range YCrCb: Y' = 255 / 219 * (Y - 16), C' = 0.713 * 1.596 * (C - 128) + 128
+    private static final byte[] Y_VIDEO_TO_FULL = new byte[256];
+    private static final byte[] C_VIDEO_TO_FULL = new byte[256];
+
+    static {
+        for (int i = 0; i < 256; ++i) {
+            Y_VIDEO_TO_FULL[i] = (byte) clip(Math.round((i - 16) * 255.0 / 219.0));
+            C_VIDEO_TO_FULL[i] = (byte) clip(Math.round((i - 128) * 1.138 + 128));
+        }
+    }
+
+    /**
+     * Buffers of `toYCrCb` reused between frames, e.g. one for each caller converting frames one at a time
+     */
+    public static class Buffers {
+        // source column of each output column, channel sums of a row, one source row, the output pixels
+        int[] colStart = new int[0];
+        int[] sums = new int[0];
+        byte[] row = new byte[0];
+        byte[] pixels = new byte[0];
+    }
+
+    public YuvFrame(int width, int height,
+                    ByteBuffer y, int yOffset, int yRowStride,
+                    ByteBuffer u, int uOffset, ByteBuffer v, int vOffset,
+                    int uvRowStride, int uvPixelStride) {
+        /**
+         * @param width, height: size of the frame in pixels, even
+         * @param y, u, v: buffers holding the planes, could be the same buffer, direct or not
+         * @param yOffset, uOffset, vOffset: absolute index of the first byte of each plane in its buffer
+         * @param uvRowStride, uvPixelStride: strides shared by the U and V planes
+         */
+        this.width = width;
+        this.height = height;
+        this.y = y;
+        this.u = u;
+        this.v = v;
+        this.yOffset = yOffset;
+        this.uOffset = uOffset;
+        this.vOffset = vOffset;
+        this.yRowStride = yRowStride;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+    }
+
+    public static YuvFrame nv21(byte[] data, int width, int height) {
+        return nv21(ByteBuffer.wrap(data), width, height, width);
+    }
+
+    public static YuvFrame nv21(ByteBuffer data, int width, int height, int rowStride) {
+        /**
+         * The default preview format of the android camera: the Y plane then interleaved V, U
+         * @param rowStride: bytes of a row of both the Y plane and the VU plane
+         */
+        int vOffset = rowStride * height;
+        return new YuvFrame(width, height, data, 0, rowStride, data, vOffset + 1, data, vOffset, rowStride, 2);
+    }
+
+    public static YuvFrame yuv420(int width, int height,
+                                  ByteBuffer y, int yRowStride,
+                                  ByteBuffer u, ByteBuffer v, int uvRowStride, int uvPixelStride) {
+        /**
+         * The planes of an android `Image` of `ImageFormat.YUV_420_888`, as given by `Image.getPlanes()`
+         */
+        return new YuvFrame(width, height, y, y.position(), yRowStride,
+                u, u.position(), v, v.position(), uvRowStride, uvPixelStride);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public double toYCrCb(int outHeight, Mat output, Buffers buffers) {
+        /**
+         * Downscale to `outHeight` rows keeping the aspect ratio, convert to YCrCb
+         * @param output: a CV_8UC3 image, (re)allocated if needed
+         * @param buffers: reused between frames
+         * @return: the shrink ratio = new height / old height, as `Util.resize`
+         */
+        int outH = outHeight;
+        int outW = Math.max((int) ((long) outH * width / height), 1);
+        double ratio = (double) outH / height;
+
+        // source columns [colStart[i], colStart[i + 1]) make output column i
+        int[] colStart = buffers.colStart;
+        if (colStart.length < outW + 1) {
+            colStart = buffers.colStart = new int[outW + 1];
+            buffers.sums = new int[outW * 3];
+        }
+        for (int i = 0; i <= outW; ++i) {
+            colStart[i] = (int) ((long) i * width / outW);
+        }
+        int chromaRowBytes = ((width + 1) / 2 - 1) * uvPixelStride + 1;
+        int rowBytes = Math.max(width, chromaRowBytes);
+        if (buffers.row.length < rowBytes) {
+            buffers.row = new byte[rowBytes];
+        }
+        if (buffers.pixels.length < outW * outH * 3) {
+            buffers.pixels = new byte[outW * outH * 3];
+        }
+        int[] sums = buffers.sums;
+        byte[] row = buffers.row;
+        byte[] out = buffers.pixels;
+        ByteBuffer yBuf = y.duplicate(), uBuf = u.duplicate(), vBuf = v.duplicate();
+
+        for (int oy = 0; oy < outH; ++oy) {
+            int y0 = (int) ((long) oy * height / outH);
+            int y1 = Math.max((int) ((long) (oy + 1) * height / outH), y0 + 1);  // a row at least if upscaled
+            int c0 = y0 / 2, c1 = (y1 - 1) / 2 + 1;  // chroma rows covering [y0, y1)
+            Arrays.fill(sums, 0, outW * 3, 0);
+
+            // luma: every pixel of the block
+            for (int sy = y0; sy < y1; ++sy) {
+                readRow(yBuf, yOffset + sy * yRowStride, width, row);
+                for (int ox = 0; ox < outW; ++ox) {
+                    int s = 0;
+                    for (int sx = colStart[ox], x1 = colEnd(colStart, ox); sx < x1; ++sx) {
+                        s += row[sx] & 0xff;
+                    }
+                    sums[ox * 3] += s;
+                }
+            }
+            // chroma: every 2x2 cell touching the block, V is Cr, U is Cb
+            for (int cy = c0; cy < c1; ++cy) {
+                addChroma(vBuf, vOffset + cy * uvRowStride, chromaRowBytes, row, colStart, sums, outW, 1);
+                addChroma(uBuf, uOffset + cy * uvRowStride, chromaRowBytes, row, colStart, sums, outW, 2);
+            }
+
+            int yCnt = y1 - y0, cRows = c1 - c0;
+            for (int ox = 0, i = oy * outW * 3; ox < outW; ++ox, i += 3) {
+                int x0 = colStart[ox], x1 = colEnd(colStart, ox);
+                int cCnt = cRows * ((x1 - 1) / 2 + 1 - x0 / 2);
+                int n = yCnt * (x1 - x0);
+                out[i] = Y_VIDEO_TO_FULL[(sums[ox * 3] + n / 2) / n];
+                out[i + 1] = C_VIDEO_TO_FULL[(sums[ox * 3 + 1] + cCnt / 2) / cCnt];
+                out[i + 2] = C_VIDEO_TO_FULL[(sums[ox * 3 + 2] + cCnt / 2) / cCnt];
+            }
+        }
+
+        output.create(outH, outW, CvType.CV_8UC3);
+        output.put(0, 0, out);
+        return ratio;
+    }
+
+    private void addChroma(ByteBuffer buf, int offset, int rowBytes, byte[] row,
+                           int[] colStart, int[] sums, int outW, int channel) {
+        readRow(buf, offset, rowBytes, row);
+        for (int ox = 0; ox < outW; ++ox) {
+            int s = 0;
+            for (int cx = colStart[ox] / 2, cx1 = (colEnd(colStart, ox) - 1) / 2; cx <= cx1; ++cx) {
+                s += row[cx * uvPixelStride] & 0xff;
+            }
+            sums[ox * 3 + channel] += s;
+        }
+    }
+
+    private static int colEnd(int[] colStart, int ox) {
+        return Math.max(colStart[ox + 1], colStart[ox] + 1);  // a column at least if upscaled
+    }
+
+    private static void readRow(ByteBuffer buf, int offset, int len, byte[] row) {
+        // one bulk copy of a row, the last row of an android plane may stop right after its last pixel
+        buf.position(offset);
+        buf.get(row, 0, Math.min(len, buf.limit() - offset));
+    }
+
+    private static int clip(long val) {
+        return (int) Math.min(Math.max(val, 0), 255);
+    }
+}
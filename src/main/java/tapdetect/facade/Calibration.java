@@ -0,0 +1,88 @@
+package tapdetect.facade;
+
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.io.IOException;
+
+import tapdetect.CalibrationProfile;
+import tapdetect.ColorRange;
+import tapdetect.Sampler;
+import tapdetect.Sensibility;
+
+/**
+ * Skin color calibration of one session
+ * <br>The color range is sampled from the first frames, unless a saved profile fits the first frame.
+ */
+class Calibration {
+    private final Sensibility sensibility;
+    final ColorRange colorRange;
+    final Sampler sampler;
+    // a profile loaded but not checked against a frame yet, the session is untouched until it fits
+    private CalibrationProfile pendingProfile = null;
+
+    Calibration(Sensibility sensibility) {
+        this.sensibility = sensibility;
+        colorRange = new ColorRange(sensibility);
+        sampler = new Sampler(colorRange);
+    }
+
+    boolean isCompleted() {
+        return pendingProfile == null && sampler.sampleCompleted();
+    }
+
+    boolean calibrate(Mat im) {
+        /**
+         * Sample a converted `im` if sampling is not completed yet
+         * @return: whether detection could be carried out on `im`
+         */
+        if (pendingProfile != null) {
+            CalibrationProfile profile = pendingProfile;
+            pendingProfile = null;
+            if (profile.fits(im, sensibility)) {
+                profile.apply(colorRange);
+                return true;
+            }
+        }
+        if (!sampler.sampleCompleted()) {
+            if (!sampler.isInited()) {
+                sampler.initSampleMask(im.height(), im.width());
+            }
+            sampler.sample(im);
+            return false;
+        }
+        return true;
+    }
+
+    boolean save(File dir, String key) throws IOException {
+        /**
+         * @return: false if nothing is saved as sampling is not completed yet
+         */
+        if (!isCompleted()) {
+            return false;
+        }
+        CalibrationProfile profile = CalibrationProfile.capture(colorRange, key);
+        if (profile == null) {
+            return false;
+        }
+        profile.save(dir);
+        return true;
+    }
+
+    boolean load(File dir, String key) {
+        /**
+         * @return: false if there is no usable profile
+         */
+        try {
+            pendingProfile = CalibrationProfile.load(dir, key);
+        } catch (IOException e) {
+            return false;
+        }
+        return true;
+    }
+
+    void reset() {
+        colorRange.reset();
+        pendingProfile = null;
+    }
+}
@@ -0,0 +1,178 @@
+package tapdetect.facade;
+
+import org.opencv.core.MatOfPoint;
+
+import java.util.Arrays;
+import java.util.List;
+
+import tapdetect.TapDetector.TapDetectPoint;
+
+/**
+ * Everything detected in one frame, filled by `TapSession.process` in one pass
+ * <br>Finger tips of every status are stored as parallel primitive arrays,
+ * <br>in the coordinate of the original image. Arrays only grow, so a result reused frame after frame
+ * <br>stops allocating once it has seen the most fingers.
+ * <br>Hand contours are only copied if `setContoursWanted(true)`, as flattened x, y pairs.
+ * <br>A result is overwritten by the next `process` call using it, copy out what has to be kept.
+ * <br> Usage:
+ * <code>
+ * <br>  FrameResult result = new FrameResult();
+ * <br>  session.process(frame, captureTimeMs, result);
+ * <br>  for (int i = 0; i < result.size(); ++i) {
+ * <br>      if (result.isTapping(i)) { play(result.getX(i), result.getY(i)); }
+ * <br>  }
+ * </code>
+ */
+public class FrameResult {
+    // frame status
+    public static final int PROCESSED = 0;
+    public static final int THROTTLED = 1;  // skipped by `Config.PROCESS_INTERVAL_MS`, no finger tips
+    public static final int CALIBRATING = 2;  // used up by sampling, no finger tips
+    public static final int STILL = 3;  // skipped by `TapSession.setMotionGate`, no finger tips, the last ones hold
+
+    // finger tip status, same as `TapDetectPoint.is*`
+    public static final byte NOT_CARE = 0;
+    public static final byte FALLING = 1;
+    public static final byte LINGER = 2;
+    public static final byte TAPPING = 3;
+    public static final byte PRESSING = 4;
+
+    private int frameStatus = THROTTLED;
+    private long timestampMs;
+
+    private int size = 0;
+    private float[] x = new float[16];
+    private float[] y = new float[16];
+    private byte[] status = new byte[16];
+    private int[] trackId = new int[16];
+
+    private boolean contoursWanted = false;
+    private int contourCount = 0;
+    private int[] contourOffset = new int[1];  // points of contour i are [contourOffset[i], contourOffset[i + 1])
+    private float[] contourXY = new float[0];  // x0, y0, x1, y1, ...
+    private int[] pointBuffer = new int[0];
+
+    public void setContoursWanted(boolean wanted) {
+        contoursWanted = wanted;
+    }
+
+    public int getFrameStatus() {
+        return frameStatus;
+    }
+
+    public boolean isProcessed() {
+        return frameStatus == PROCESSED;
+    }
+
+    public long getTimestampMs() {
+        return timestampMs;
+    }
+
+    public int size() {
+        // number of finger tips
+        return size;
+    }
+
+    public float getX(int i) {
+        return x[i];
+    }
+
+    public float getY(int i) {
+        return y[i];
+    }
+
+    public byte getStatus(int i) {
+        return status[i];
+    }
+
+    public int getTrackId(int i) {
+        return trackId[i];
+    }
+
+    public boolean isTapping(int i) {
+        return status[i] == TAPPING;
+    }
+
+    public boolean isPressing(int i) {
+        return status[i] == PRESSING;
+    }
+
+    public int getContourCount() {
+        return contourCount;
+    }
+
+    public int getContourSize(int contour) {
+        // number of points of the contour
+        return contourOffset[contour + 1] - contourOffset[contour];
+    }
+
+    public float getContourX(int contour, int point) {
+        return contourXY[(contourOffset[contour] + point) * 2];
+    }
+
+    public float getContourY(int contour, int point) {
+        return contourXY[(contourOffset[contour] + point) * 2 + 1];
+    }
+
+    void clear(int frameStatus, long timestampMs) {
+        this.frameStatus = frameStatus;
+        this.timestampMs = timestampMs;
+        size = 0;
+        contourCount = 0;
+    }
+
+    void setTips(List<TapDetectPoint> tips, double ratio) {
+        size = tips.size();
+        if (x.length < size) {
+            int cap = Math.max(size, x.length * 2);
+            x = Arrays.copyOf(x, cap);
+            y = Arrays.copyOf(y, cap);
+            status = Arrays.copyOf(status, cap);
+            trackId = Arrays.copyOf(trackId, cap);
+        }
+        for (int i = 0; i < size; ++i) {
+            TapDetectPoint pt = tips.get(i);
+            x[i] = (float) (pt.x * ratio);
+            y[i] = (float) (pt.y * ratio);
+            status[i] = statusOf(pt);
+            trackId[i] = pt.getTrackId();
+        }
+    }
+
+    boolean isContoursWanted() {
+        return contoursWanted;
+    }
+
+    void addContour(MatOfPoint cnt, double ratio) {
+        int n = (int) cnt.total();
+        if (pointBuffer.length < n * 2) {
+            pointBuffer = new int[n * 2];
+        }
+        cnt.get(0, 0, pointBuffer);
+
+        if (contourOffset.length < contourCount + 2) {
+            contourOffset = Arrays.copyOf(contourOffset, (contourCount + 2) * 2);
+        }
+        int begin = contourOffset[contourCount];
+        if (contourXY.length < (begin + n) * 2) {
+            contourXY = Arrays.copyOf(contourXY, Math.max((begin + n) * 2, contourXY.length * 2));
+        }
+        for (int i = 0; i < n * 2; ++i) {
+            contourXY[begin * 2 + i] = (float) (pointBuffer[i] * ratio);
+        }
+        contourOffset[++contourCount] = begin + n;
+    }
+
+    private static byte statusOf(TapDetectPoint pt) {
+        if (pt.isTapping()) {
+            return TAPPING;
+        } else if (pt.isPressing()) {
+            return PRESSING;
+        } else if (pt.isFalling()) {
+            return FALLING;
+        } else if (pt.isLingering()) {
+            return LINGER;
+        }
+        return NOT_CARE;
+    }
+}
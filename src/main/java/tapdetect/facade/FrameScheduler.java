@@ -0,0 +1,287 @@
+package tapdetect.facade;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import tapdetect.Config;
+import tapdetect.Metrics;
+import tapdetect.TapDetector.TapDetectPoint;
+
+/**
+ * Engine running tap detection for many video streams on a fixed pool of worker threads
+ * <br>Each stream owns a `TapSession` and a small frame queue.
+ * <br>Frames of one stream are processed one by one in submission order,
+ * <br>while different streams are spread over the workers.
+ * <br>Instead of the wall-clock gate `Config.PROCESS_INTERVAL_MS`, frames are dropped
+ * <br>when they have waited longer than the deadline of their stream,
+ * <br>so that an oversubscribed machine drops late frames instead of stalling every stream.
+ * <br>A frame failing with an exception is reported to `Listener.onError` and the stream goes on.
+ * <br> Usage:
+ * <code>
+ * <br>  FrameScheduler scheduler = new FrameScheduler(Runtime.getRuntime().availableProcessors());
+ * <br>  int stream = scheduler.addStream(100, listener);   // frames older than 100ms are dropped
+ * <br>  scheduler.submit(stream, frame);   // from the camera thread, `frame` is owned by the scheduler now
+ * <br>  scheduler.submit(stream, frame, captureTimeMs);   // tracking is driven by the capture time of frames
+ * </code>
+ */
+public class FrameScheduler {
+    public interface Listener {
+        /**
+         * Called on a worker thread once a frame is processed,
+         * calls for the same stream never overlap and come in submission order
+         * @param taps: points detected as being tapping, in the coordinate of the submitted frame
+         * @param all: all finger tips with their status
+         */
+        void onResult(int streamId, long frameId, List<Point> taps, List<TapDetectPoint> all);
+
+        /**
+         * Called when a frame is dropped because of its deadline or a full queue
+         */
+        void onDropped(int streamId, long frameId);
+
+        /**
+         * Called on the worker thread when processing a frame (or `onResult`) threw,
+         * the stream goes on with its next frame
+         */
+        void onError(int streamId, long frameId, RuntimeException e);
+    }
+
+    private final ExecutorService workers;
+    private final Map<Integer, Stream> streams = new HashMap<>();
+    private int nextStreamId = 0;
+    private boolean shutdown = false;
+
+    public FrameScheduler(int workerCount) {
+        this.workers = Executors.newFixedThreadPool(workerCount);
+    }
+
+    public synchronized int addStream(long deadlineMs, Listener listener) {
+        /**
+         * @param deadlineMs: frames waited longer than this before processing will be dropped
+         * @return: id of the new stream
+         * @throws IllegalStateException: after `shutdown`
+         */
+        if (shutdown) {
+            throw new IllegalStateException("FrameScheduler is shut down");
+        }
+        int id = nextStreamId++;
+        streams.put(id, new Stream(id, deadlineMs, listener));
+        return id;
+    }
+
+    public synchronized TapSession getSession(int streamId) {
+        return getStream(streamId).session;
+    }
+
+    public synchronized void removeStream(int streamId) {
+        /**
+         * Frames still waiting in the stream will be dropped
+         */
+        Stream stream = streams.remove(streamId);
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    public void submit(int streamId, Mat frame) {
+        submit(streamId, frame, System.currentTimeMillis());
+    }
+
+    public void submit(int streamId, Mat frame, long timestampMs) {
+        /**
+         * Queue a BGR frame of the stream
+         * The scheduler owns `frame` afterwards and will release it after processing
+         * @param timestampMs: capture time of `frame`, passed to `TapSession`
+         * @throws IllegalStateException: after `shutdown`, `frame` is released
+         * @throws IllegalArgumentException: if the stream is unknown or removed, `frame` is released
+         */
+        Stream stream;
+        synchronized (this) {
+            stream = streams.get(streamId);
+            if (stream == null) {
+                frame.release();
+                if (shutdown) {
+                    throw new IllegalStateException("FrameScheduler is shut down");
+                }
+                throw new IllegalArgumentException("Unknown stream " + streamId);
+            }
+        }
+        stream.offer(frame, timestampMs);
+    }
+
+    public void shutdown() {
+        /**
+         * Drop all waiting frames and stop the workers
+         */
+        synchronized (this) {
+            shutdown = true;
+            for (Stream stream : streams.values()) {
+                stream.close();
+            }
+            streams.clear();
+        }
+        workers.shutdown();
+    }
+
+    public boolean awaitTermination(long timeoutMs) throws InterruptedException {
+        return workers.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private Stream getStream(int streamId) {
+        Stream stream = streams.get(streamId);
+        if (stream == null) {
+            throw new IllegalArgumentException("Unknown stream " + streamId);
+        }
+        return stream;
+    }
+
+    private static class Frame {
+        final Mat im;
+        final long id;
+        final long timestampMs;
+        final long submitNanos;
+
+        Frame(Mat im, long id, long timestampMs, long submitNanos) {
+            this.im = im;
+            this.id = id;
+            this.timestampMs = timestampMs;
+            this.submitNanos = submitNanos;
+        }
+    }
+
+    private class Stream implements Runnable {
+        final int id;
+        final long deadlineNanos;
+        final Listener listener;
+        final TapSession session = new TapSession();
+
+        // guarded by `this`
+        final ArrayDeque<Frame> queue = new ArrayDeque<>();
+        long nextFrameId = 0;
+        boolean scheduled = false;  // whether there is a task of this stream in the pool
+        boolean closed = false;
+
+        Stream(int id, long deadlineMs, Listener listener) {
+            this.id = id;
+            this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+            this.listener = listener;
+            session.setThrottled(false);  // late frames are dropped by deadline instead
+        }
+
+        void offer(Mat im, long timestampMs) {
+            Frame dropped = null;
+            Frame frame;
+            synchronized (this) {
+                frame = new Frame(im, nextFrameId++, timestampMs, System.nanoTime());
+                if (closed) {
+                    dropped = frame;
+                } else {
+                    if (queue.size() >= Config.SCHEDULER_QUEUE_SIZE) {
+                        dropped = queue.poll();
+                    }
+                    queue.add(frame);
+                    if (!scheduled) {
+                        scheduled = true;
+                        workers.execute(this);
+                    }
+                }
+            }
+            if (dropped != null) {
+                drop(dropped);
+            }
+        }
+
+        void close() {
+            List<Frame> dropped;
+            boolean idle;
+            synchronized (this) {
+                closed = true;
+                dropped = new ArrayList<>(queue);
+                queue.clear();
+                idle = !scheduled;
+            }
+            for (Frame frame : dropped) {
+                drop(frame);
+            }
+            if (idle) {
+                // otherwise released by the task in the pool, once the frame in flight is done
+                session.release();
+            }
+        }
+
+        @Override
+        public void run() {
+            // process one frame each time and reschedule,
+            // so that a busy stream can not starve the others
+            Frame frame = nextFrame();
+            if (frame != null) {
+                process(frame);
+            }
+
+            boolean release;
+            synchronized (this) {
+                if (!closed && !queue.isEmpty()) {
+                    workers.execute(this);
+                    return;
+                }
+                scheduled = false;
+                release = closed;
+            }
+            if (release) {
+                session.release();
+            }
+        }
+
+        private void process(Frame frame) {
+            try {
+                List<TapDetectPoint> all = new ArrayList<>();
+                List<Point> taps = session.getAll(frame.im, frame.timestampMs, null, all);
+                listener.onResult(id, frame.id, new ArrayList<>(taps), all);
+            } catch (RuntimeException e) {
+                Metrics m = session.metrics();
+                if (m != null) {
+                    m.countFailed();
+                }
+                listener.onError(id, frame.id, e);
+            } finally {
+                frame.im.release();
+            }
+        }
+
+        private Frame nextFrame() {
+            // take the first frame not beyond the deadline, drop the rest
+            List<Frame> dropped = new ArrayList<>();
+            Frame frame = null;
+            synchronized (this) {
+                long now = System.nanoTime();
+                while (!queue.isEmpty()) {
+                    Frame f = queue.poll();
+                    if (now - f.submitNanos > deadlineNanos) {
+                        dropped.add(f);
+                    } else {
+                        frame = f;
+                        break;
+                    }
+                }
+            }
+            for (Frame f : dropped) {
+                drop(f);
+            }
+            return frame;
+        }
+
+        private void drop(Frame frame) {
+            frame.im.release();
+            listener.onDropped(id, frame.id);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package tapdetect.facade;
+
+import tapdetect.Config;
+
+/**
+ * Closed-loop load shedding of one session
+ * <br>The cost of every processed frame is averaged (exponential moving average) and drives two controls:
+ * <br>  - the level of quality, against the budget of a frame: above the budget for `Config.LOAD_STEP_DOWN_FRAMES`
+ * <br>    frames in a row, the session steps one level down; below `Config.LOAD_HEADROOM` of the budget for
+ * <br>    `Config.LOAD_STEP_UP_FRAMES` frames in a row, it steps one level up. The average restarts after each step,
+ * <br>    as the cost of the new level is not known yet.
+ * <br>  - the processing interval, against the share of it a frame takes (the CPU load): stretched one step
+ * <br>    above `Config.LOAD_CPU_MAX`, shortened one step once the load would stay below `Config.LOAD_HEADROOM`
+ * <br>    of it at the shorter interval. The interval does not change the cost of a frame, only the load.
+ * <br>Stepping up takes longer than stepping down, and each level is at most about 1.4 times as costly as the next,
+ * <br>within the 1 / `Config.LOAD_HEADROOM` band between stepping down and up, so a steady cost settles on a level.
+ * <br>Levels, from the best quality to the cheapest, shed the cheapest losses first:
+ * <br>  0: everything as `Config`
+ * <br>  1: half blur size
+ * <br>  2, 3: 90%, 80% working height
+ * <br>  4: no morphology opening of the hand mask
+ * <br>  5, 6: 70%, 60% working height
+ * <br>Intervals: 1x, 1.5x, 2x the processing interval of the `Sensibility` of the session.
+ */
+public class LoadController {
+    // {height, blur size} relative to `Config`, whether to open the hand mask
+    private static final double[][] LEVELS = {
+            {1.0, 1.0, 1},
+            {1.0, 0.5, 1},
+            {0.9, 0.5, 1},
+            {0.8, 0.5, 1},
+            {0.8, 0.5, 0},
+            {0.7, 0.5, 0},
+            {0.6, 0.5, 0},
+    };
+    // processing interval relative to that of the `Sensibility`
+    private static final double[] INTERVALS = {1.0, 1.5, 2.0};
+
+    private final double budgetMs;
+    private int level = 0;
+    private double averageMs = -1;  // -1 before the first frame of the level
+    private int overCnt = 0;
+    private int underCnt = 0;
+    private int interval = 0;
+    private int busyCnt = 0;
+    private int idleCnt = 0;
+
+    public LoadController(double budgetMs) {
+        /**
+         * @param budgetMs: target cost of processing one frame
+         */
+        this.budgetMs = budgetMs;
+    }
+
+    public boolean onFrame(double costMs, long baseMs) {
+        /**
+         * @param costMs: time spent on one processed frame
+         * @param baseMs: processing interval of the session at the shortest interval, the load is not controlled if 0
+         * @return: whether the level changed
+         */
+        averageMs = averageMs < 0 ? costMs : averageMs + Config.LOAD_EWMA_ALPHA * (costMs - averageMs);
+        if (baseMs > 0) {
+            controlInterval(baseMs);
+        }
+
+        overCnt = averageMs > budgetMs ? overCnt + 1 : 0;
+        underCnt = averageMs < budgetMs * Config.LOAD_HEADROOM ? underCnt + 1 : 0;
+
+        if (overCnt >= Config.LOAD_STEP_DOWN_FRAMES && level < LEVELS.length - 1) {
+            return setLevel(level + 1);
+        }
+        if (underCnt >= Config.LOAD_STEP_UP_FRAMES && level > 0) {
+            return setLevel(level - 1);
+        }
+        return false;
+    }
+
+    private void controlInterval(long baseMs) {
+        // the load at the current interval, and that it would be at the shorter one
+        double load = averageMs / (baseMs * INTERVALS[interval]);
+        double shorterLoad = interval > 0 ? averageMs / (baseMs * INTERVALS[interval - 1]) : 0;
+
+        busyCnt = load > Config.LOAD_CPU_MAX ? busyCnt + 1 : 0;
+        idleCnt = interval > 0 && shorterLoad < Config.LOAD_CPU_MAX * Config.LOAD_HEADROOM ? idleCnt + 1 : 0;
+
+        if (busyCnt >= Config.LOAD_STEP_DOWN_FRAMES && interval < INTERVALS.length - 1) {
+            ++interval;
+            busyCnt = idleCnt = 0;
+        } else if (idleCnt >= Config.LOAD_STEP_UP_FRAMES) {
+            --interval;
+            busyCnt = idleCnt = 0;
+        }
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getLevelCount() {
+        return LEVELS.length;
+    }
+
+    public double getAverageCostMs() {
+        return averageMs;
+    }
+
+    public long getIntervalMs(long baseMs) {
+        /**
+         * @param baseMs: processing interval of the session at the shortest interval
+         */
+        return Math.round(baseMs * INTERVALS[interval]);
+    }
+
+    public int getHeight() {
+        return (int) Math.round(Config.IM_HEIGHT * LEVELS[level][0]);
+    }
+
+    public int getBlurSize() {
+        // scaled with the working height as well
+        return Math.max((int) Math.round(Config.IM_BLUR_SIZE * LEVELS[level][1] * LEVELS[level][0]), 1);
+    }
+
+    public boolean isMorphologyEnabled() {
+        return LEVELS[level][2] > 0;
+    }
+
+    private boolean setLevel(int level) {
+        this.level = level;
+        averageMs = -1;
+        overCnt = 0;
+        underCnt = 0;
+        return true;
+    }
+}
@@ -0,0 +1,445 @@
+package tapdetect.facade;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import tapdetect.ColorRange;
+import tapdetect.MotionGate;
+import tapdetect.ParallelSegmenter;
+import tapdetect.PyramidDetector;
+import tapdetect.Recalibrator;
+import tapdetect.RoiTracker;
+import tapdetect.Workspace;
+import tapdetect.YuvFrame;
+
+/**
+ * An optional mode of `TapSession`, hooked into the stages of every calibrated frame
+ * <br>Hooks do nothing unless overridden, a session calls them on its modes through a `Chain`,
+ * <br>in the fixed order of their slots, e.g. the region of `Roi` wins over the whole frame of `Gate` or `Parallel`.
+ */
+abstract class SessionMode {
+    long getIntervalMs(long intervalMs) {
+        /**
+         * @param intervalMs: processing interval given by the modes before
+         */
+        return intervalMs;
+    }
+
+    boolean detects(YuvFrame yuv) {
+        /**
+         * @param yuv: the raw frame if the frame is one, null for a BGR image
+         * @return: whether the frame is left in its raw form to `getFingers` of this mode
+         */
+        return false;
+    }
+
+    List<Point> getFingers(Mat frame, Workspace ws, List<MatOfPoint> contourOutput) {
+        /**
+         * Detect finger tips in a frame this mode `detects`
+         * @return: finger tips in the coordinate of a `Config.IM_HEIGHT` image
+         */
+        return null;
+    }
+
+    boolean isStatic(Mat im, YuvFrame yuv, Workspace ws) {
+        /**
+         * @param im: the BGR frame before preprocessing, used if `yuv` is null
+         * @return: whether nothing moved since the last frame
+         */
+        return false;
+    }
+
+    void prepare(Workspace ws) {
+        /**
+         * Set up `ws` for the next frame, before it is converted
+         */
+    }
+
+    int getHeight(int height) {
+        return height;
+    }
+
+    int getBlurSize(int blurSize) {
+        return blurSize;
+    }
+
+    Rect nextRoi() {
+        /**
+         * @return: the region to segment in the next frame, null for the full frame
+         */
+        return null;
+    }
+
+    Mat getHand(Mat im, Workspace ws) {
+        /**
+         * @return: the hand mask of the full frame, null to leave it to the next mode
+         */
+        return null;
+    }
+
+    void invalidate() {
+        /**
+         * The hand mask of this frame is not made by `getHand` of this mode
+         */
+    }
+
+    void update(Mat im, Workspace ws) {
+        /**
+         * Called once the hands and finger tips of `im` are found in `ws`
+         */
+    }
+
+    boolean onFrame(double costMs, long intervalMs) {
+        /**
+         * @param costMs: time spent on the last processed frame
+         * @param intervalMs: processing interval of the `Sensibility`, 0 if frames are not throttled
+         * @return: whether the working image changes its size from the next frame
+         */
+        return false;
+    }
+
+    void resize() {
+        /**
+         * The working image may change its size from the next frame
+         */
+    }
+
+    void reset() {
+        /**
+         * The calibration of the session is reset
+         */
+    }
+
+    void release() {
+        /**
+         * Release native buffers, the mode could still be used afterwards
+         */
+    }
+
+    static class Chain extends SessionMode {
+        // slots of the modes, in the order their hooks are called
+        static final int PYRAMID = 0, ROI = 1, GATE = 2, PARALLEL = 3, RECALIBRATION = 4, LOAD = 5;
+
+        private final SessionMode[] slots = new SessionMode[6];
+        private final List<SessionMode> modes = new ArrayList<>();  // those turned on, in the order of their slots
+        private SessionMode detector = null;  // the mode the last frame is left to by `detects`, null if none
+
+        SessionMode get(int slot) {
+            return slots[slot];
+        }
+
+        void set(int slot, SessionMode mode) {
+            /**
+             * Turn on `mode` in `slot` in place of the one before, which is released
+             * @param mode: null to turn the slot off
+             */
+            if (slots[slot] != null) {
+                slots[slot].release();
+            }
+            slots[slot] = mode;
+            modes.clear();
+            for (SessionMode m : slots) {
+                if (m != null) {
+                    modes.add(m);
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return modes.isEmpty();
+        }
+
+        @Override
+        long getIntervalMs(long intervalMs) {
+            for (SessionMode mode : modes) {
+                intervalMs = mode.getIntervalMs(intervalMs);
+            }
+            return intervalMs;
+        }
+
+        @Override
+        boolean detects(YuvFrame yuv) {
+            detector = null;
+            for (SessionMode mode : modes) {
+                if (mode.detects(yuv)) {
+                    detector = mode;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        List<Point> getFingers(Mat frame, Workspace ws, List<MatOfPoint> contourOutput) {
+            return detector.getFingers(frame, ws, contourOutput);
+        }
+
+        @Override
+        boolean isStatic(Mat im, YuvFrame yuv, Workspace ws) {
+            // every mode sees every frame
+            boolean still = false;
+            for (SessionMode mode : modes) {
+                if (mode.isStatic(im, yuv, ws)) {
+                    still = true;
+                }
+            }
+            return still;
+        }
+
+        @Override
+        void prepare(Workspace ws) {
+            for (SessionMode mode : modes) {
+                mode.prepare(ws);
+            }
+        }
+
+        @Override
+        int getHeight(int height) {
+            for (SessionMode mode : modes) {
+                height = mode.getHeight(height);
+            }
+            return height;
+        }
+
+        @Override
+        int getBlurSize(int blurSize) {
+            for (SessionMode mode : modes) {
+                blurSize = mode.getBlurSize(blurSize);
+            }
+            return blurSize;
+        }
+
+        @Override
+        Rect nextRoi() {
+            for (SessionMode mode : modes) {
+                Rect roi = mode.nextRoi();
+                if (roi != null) {
+                    return roi;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        Mat getHand(Mat im, Workspace ws) {
+            // the first mode segmenting the frame, the others are invalidated
+            Mat hand = null;
+            for (SessionMode mode : modes) {
+                if (hand == null) {
+                    hand = mode.getHand(im, ws);
+                    if (hand != null) {
+                        continue;
+                    }
+                }
+                mode.invalidate();
+            }
+            return hand;
+        }
+
+        @Override
+        void invalidate() {
+            for (SessionMode mode : modes) {
+                mode.invalidate();
+            }
+        }
+
+        @Override
+        void update(Mat im, Workspace ws) {
+            for (SessionMode mode : modes) {
+                mode.update(im, ws);
+            }
+        }
+
+        @Override
+        boolean onFrame(double costMs, long intervalMs) {
+            boolean resized = false;
+            for (SessionMode mode : modes) {
+                if (mode.onFrame(costMs, intervalMs)) {
+                    resized = true;
+                }
+            }
+            return resized;
+        }
+
+        @Override
+        void resize() {
+            for (SessionMode mode : modes) {
+                mode.resize();
+            }
+        }
+
+        @Override
+        void reset() {
+            for (SessionMode mode : modes) {
+                mode.reset();
+            }
+        }
+
+        @Override
+        void release() {
+            for (SessionMode mode : modes) {
+                mode.release();
+            }
+        }
+    }
+
+    static class Roi extends SessionMode {
+        // @see RoiTracker
+        private final RoiTracker tracker = new RoiTracker();
+
+        @Override
+        Rect nextRoi() {
+            return tracker.next();
+        }
+
+        @Override
+        void update(Mat im, Workspace ws) {
+            tracker.update(ws, im.rows(), im.cols());
+        }
+
+        @Override
+        void resize() {
+            tracker.reset();
+        }
+    }
+
+    static class Pyramid extends SessionMode {
+        // @see PyramidDetector
+        private final ColorRange colorRange;
+        private final PyramidDetector detector = new PyramidDetector();
+
+        Pyramid(ColorRange colorRange) {
+            this.colorRange = colorRange;
+        }
+
+        @Override
+        boolean detects(YuvFrame yuv) {
+            // a BGR frame is needed
+            return yuv == null;
+        }
+
+        @Override
+        List<Point> getFingers(Mat frame, Workspace ws, List<MatOfPoint> contourOutput) {
+            return detector.getFingers(frame, colorRange, ws, contourOutput);
+        }
+
+        @Override
+        void release() {
+            detector.release();
+        }
+    }
+
+    static class Gate extends SessionMode {
+        // @see MotionGate
+        private final ColorRange colorRange;
+        private final MotionGate gate = new MotionGate();
+
+        Gate(ColorRange colorRange) {
+            this.colorRange = colorRange;
+        }
+
+        @Override
+        boolean isStatic(Mat im, YuvFrame yuv, Workspace ws) {
+            return yuv != null ? gate.isStatic(yuv, colorRange, ws) : gate.isStatic(im, colorRange, ws);
+        }
+
+        @Override
+        Mat getHand(Mat im, Workspace ws) {
+            return gate.getHand(im, colorRange, ws);
+        }
+
+        @Override
+        void invalidate() {
+            gate.invalidate();
+        }
+
+        @Override
+        void reset() {
+            gate.reset();
+        }
+
+        @Override
+        void release() {
+            gate.release();
+            gate.reset();
+        }
+    }
+
+    static class Parallel extends SessionMode {
+        // @see ParallelSegmenter
+        private final ColorRange colorRange;
+        private final ParallelSegmenter segmenter = new ParallelSegmenter();
+
+        Parallel(ColorRange colorRange) {
+            this.colorRange = colorRange;
+        }
+
+        @Override
+        Mat getHand(Mat im, Workspace ws) {
+            return segmenter.getHand(im, colorRange, ws);
+        }
+
+        @Override
+        void release() {
+            segmenter.release();
+        }
+    }
+
+    static class Recalibration extends SessionMode {
+        // @see Recalibrator
+        private final Recalibrator recalibrator;
+
+        Recalibration(ColorRange colorRange) {
+            recalibrator = new Recalibrator(colorRange);
+        }
+
+        @Override
+        void update(Mat im, Workspace ws) {
+            recalibrator.update(im, ws);
+        }
+
+        @Override
+        void release() {
+            recalibrator.release();
+        }
+    }
+
+    static class Load extends SessionMode {
+        // @see LoadController
+        final LoadController controller;
+
+        Load(double budgetMs) {
+            controller = new LoadController(budgetMs);
+        }
+
+        @Override
+        long getIntervalMs(long intervalMs) {
+            return controller.getIntervalMs(intervalMs);
+        }
+
+        @Override
+        void prepare(Workspace ws) {
+            ws.setMorphologyEnabled(controller.isMorphologyEnabled());
+        }
+
+        @Override
+        int getHeight(int height) {
+            return controller.getHeight();
+        }
+
+        @Override
+        int getBlurSize(int blurSize) {
+            return controller.getBlurSize();
+        }
+
+        @Override
+        boolean onFrame(double costMs, long intervalMs) {
+            return controller.onFrame(costMs, intervalMs);
+        }
+    }
+}
@@ -8,23 +8,15 @@
 package tapdetect.facade;
 
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfPoint;
 import org.opencv.core.Point;
-import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
-import tapdetect.ColorRange;
-import tapdetect.Config;
-import tapdetect.FingerDetector;
-import tapdetect.HandDetector;
-import tapdetect.ImgLogger;
-import tapdetect.Sampler;
-import tapdetect.TapDetector;
+import tapdetect.Metrics;
 import tapdetect.TapDetector.TapDetectPoint;
-import tapdetect.Util;
+import tapdetect.YuvFrame;
 
 // import java.util.stream.Collectors;
 
@@ -53,16 +45,62 @@ public class Tap {
         // ImgLogger.silent(); // should be silent on mobile phones
     }
 
+    private static final TapSession defaultSession = new TapSession();
+
+    public static TapSession getDefaultSession() {
+        /**
+         * The session used by all static methods of this facade
+         * Create a `TapSession` for each video stream instead if there are more than one
+         */
+        return defaultSession;
+    }
+
     public static long getProcessInterval() {
-        return processInterval;
+        return defaultSession.getProcessInterval();
     }
 
     public static boolean readyForNextFrame() {
-        return System.currentTimeMillis() - lastProcess > Config.PROCESS_INTERVAL_MS;
+        return defaultSession.readyForNextFrame();
+    }
+
+    public static boolean readyForNextFrame(long timestampMs) {
+        return defaultSession.readyForNextFrame(timestampMs);
+    }
+
+    public static void setMetricsEnabled(boolean enabled) {
+        defaultSession.setMetricsEnabled(enabled);
+    }
+
+    public static Metrics.Snapshot getMetrics() {
+        /**
+         * @see TapSession#getMetrics
+         */
+        return defaultSession.getMetrics();
+    }
+
+    public static TapEventStream getEventStream() {
+        /**
+         * @see TapSession#getEventStream
+         */
+        return defaultSession.getEventStream();
     }
 
     public static void reset() {
-        ColorRange.reset();
+        defaultSession.reset();
+    }
+
+    public static boolean saveProfile(File dir, String key) throws IOException {
+        /**
+         * @see TapSession#saveProfile
+         */
+        return defaultSession.saveProfile(dir, key);
+    }
+
+    public static boolean loadProfile(File dir, String key) {
+        /**
+         * @see TapSession#loadProfile
+         */
+        return defaultSession.loadProfile(dir, key);
     }
 
     public static boolean sampleCompleted() {
@@ -71,7 +109,7 @@ public class Tap {
          * sampling function will not be called anymore.
          * However you can call `Tap.sample` manually if you really want
          */
-        return Sampler.sampleCompleted();
+        return defaultSession.sampleCompleted();
     }
 
 
@@ -79,48 +117,29 @@ public class Tap {
         /**
          * Searching tapping points from `im`
          * This is the most used func in this facade
-         * @param im: one frame from a video
-         * @return : A list of `Point` indicating the points which
-         *  (1) is regarded as the finger tip
-         *  (2) is regarded as being tapping
+         * @see TapSession#getTaps
          */
-        if (!preprocess(im)) {
-            return resultCache;
-        }
-
-        Mat hand = HandDetector.getHand(im);
-        List<Point> fingers = FingerDetector.getFingers(im, hand);
-        List<Point> taps = TapDetector.getTapping(im, fingers);
-
-        scaleResult(taps);
-        updateResultCache(taps);
+        return defaultSession.getTaps(im);
+    }
 
-        return taps;
+    public static List<Point> getTaps(Mat im, long timestampMs) {
+        /**
+         * Same with `getTaps(im)`, with the capture time of `im` driving throttling and tracking
+         * @see TapSession#getTaps
+         */
+        return defaultSession.getTaps(im, timestampMs);
     }
 
     public static List<Point> getPress(Mat im) {
         /**
          * Searching pressing finger tips from `im`
-         * @param im: one frame from a video
-         * @return : A list of `Point` indicating the points which
-         *  (1) is regarded as the finger tip
-         *  (2) is regarded as being pressing
-         *
-         *  @warning: do not use getPress and getTaps in a row for the sake of performance.
-         *      Use `getAll` to get every finger tips instead
+         * @see TapSession#getPress
          */
-        if (!preprocess(im)) {
-            return resultCache;
-        }
-
-        Mat hand = HandDetector.getHand(im);
-        List<Point> fingers = FingerDetector.getFingers(im, hand);
-        List<Point> press = TapDetector.getPressing(im, fingers);
-
-        scaleResult(press);
-        updateResultCache(press);
+        return defaultSession.getPress(im);
+    }
 
-        return press;
+    public static List<Point> getPress(Mat im, long timestampMs) {
+        return defaultSession.getPress(im, timestampMs);
     }
 
     public static List<Point> getAll(Mat im,
@@ -128,55 +147,37 @@ public class Tap {
                                      List<TapDetectPoint> tapDetectPointsOutput
     ) {
         /**
-         * @param: im: A image in color space BGR
-         * @param: contoursOutput
-         *      if is not null, apexes of the contour of hand will be saved
-         * @param: tapDetectPointsOutput
-         *      if is not null, all results of detected points will be saved
-         * @retrun:
-         *      A list of points detected as being tapping
-         *      (nothing but `TapDetectPoint` with status `FALLING` in `tapDetectPointsOutput`)
-         *  This function will modify `im` into YCrCb as well as a smaller size
+         * @see TapSession#getAll
          */
+        return defaultSession.getAll(im, contoursOutput, tapDetectPointsOutput);
+    }
 
-        if (!preprocess(im)) {
-            return resultCache;
-        }
-        Mat hand = HandDetector.getHand(im);
-
-        List<MatOfPoint> contour = new ArrayList<>();
-        List<Point> fingers = FingerDetector.getFingers(im, hand, contour);
-        List<TapDetectPoint> taps = TapDetector.getTappingAll(im, fingers);
-
-        if (contoursOutput != null) {
-            contoursOutput.clear();
-            for (MatOfPoint cnt : contour) {
-                List<Point> cntPt = cnt.toList();
-                scaleResult(cntPt);
-                contoursOutput.add(cntPt);
-            }
-        }
-
-        for (TapDetectPoint pt : taps) {
-            pt.x *= recoverRatio;
-            pt.y *= recoverRatio;
-        }
-
-        if (contoursOutput != null) {
-            tapDetectPointsOutput.clear();
-            tapDetectPointsOutput.addAll(taps);
-        }
+    public static List<Point> getAll(Mat im, long timestampMs,
+                                     List<List<Point>> contoursOutput,
+                                     List<TapDetectPoint> tapDetectPointsOutput
+    ) {
+        return defaultSession.getAll(im, timestampMs, contoursOutput, tapDetectPointsOutput);
+    }
 
-        List<Point> ret = new ArrayList<>();
+    public static List<Point> getAll(YuvFrame frame, long timestampMs,
+                                     List<List<Point>> contoursOutput,
+                                     List<TapDetectPoint> tapDetectPointsOutput
+    ) {
+        /**
+         * @see TapSession#getAll(YuvFrame, long, List, List)
+         */
+        return defaultSession.getAll(frame, timestampMs, contoursOutput, tapDetectPointsOutput);
+    }
 
-        for (TapDetectPoint pt : taps) {
-            if (pt.isTapping()) {
-                ret.add(pt);
-            }
-        }
-        updateResultCache(ret);
+    public static FrameResult process(YuvFrame frame, long timestampMs, FrameResult result) {
+        return defaultSession.process(frame, timestampMs, result);
+    }
 
-        return ret;
+    public static FrameResult process(Mat im, long timestampMs, FrameResult result) {
+        /**
+         * @see TapSession#process
+         */
+        return defaultSession.process(im, timestampMs, result);
     }
 
     public static List<Point> getPressAll(Mat im,
@@ -186,191 +187,83 @@ public class Tap {
         /**
          * Same with `getAll` but returns a list of `pressing` points
          */
+        return defaultSession.getPressAll(im, contoursOutput, tapDetectPointsOutput);
+    }
 
-        if (!preprocess(im)) {
-            return resultCache;
-        }
-        Mat hand = HandDetector.getHand(im);
-
-        List<MatOfPoint> contour = new ArrayList<>();
-        List<Point> fingers = FingerDetector.getFingers(im, hand, contour);
-        List<TapDetectPoint> taps = TapDetector.getTappingAll(im, fingers);
-
-        if (contoursOutput != null) {
-            contoursOutput.clear();
-            for (MatOfPoint cnt : contour) {
-                List<Point> cntPt = cnt.toList();
-                scaleResult(cntPt);
-                contoursOutput.add(cntPt);
-            }
-        }
-
-        for (TapDetectPoint pt : taps) {
-            pt.x *= recoverRatio;
-            pt.y *= recoverRatio;
-        }
-
-        if (contoursOutput != null) {
-            tapDetectPointsOutput.clear();
-            tapDetectPointsOutput.addAll(taps);
-        }
-
-        List<Point> ret = new ArrayList<>();
+    public static List<Point> getPressAll(Mat im, long timestampMs,
+                                          List<List<Point>> contoursOutput,
+                                          List<TapDetectPoint> tapDetectPointsOutput
+    ) {
+        return defaultSession.getPressAll(im, timestampMs, contoursOutput, tapDetectPointsOutput);
+    }
 
-        for (TapDetectPoint pt : taps) {
-            if (pt.isPressing()) {
-                ret.add(pt);
-            }
-        }
-        updateResultCache(ret);
 
-        return ret;
+    public static List<Point> getSampleWindowContour() {
+        return defaultSession.getSampleWindowContour();
     }
 
 
-    public static List<Point> getSampleWindowContour() {
-        if (sampleWindowContour == null && recoverRatio > 0.0) {
-            sampleWindowContour = new ArrayList<>();
-            for (Point p : Sampler.getSampleWindowContour()) {
-                sampleWindowContour.add(new Point(p.x * recoverRatio, p.y * recoverRatio));
-            }
-        }
-        return sampleWindowContour;
-    }
-
-    private static boolean checkTime() {
-        long t = System.currentTimeMillis();
-        if (t - lastProcess < Config.PROCESS_INTERVAL_MS) {
-            // too higher the camera fps
-            return false;
-        } else {
-            processInterval = t - lastProcess;
-            lastProcess = t;
-            return true;
-        }
-    }
-
-    private static boolean sample(Mat mat) {
+    // Configs
+    public static void setRoiMode(boolean roiMode) {
         /**
-         * Sampling pixels from mat to get a appropriate hand color
-         * This will be called automatically before tapping detection being carried out
+         * @see TapSession#setRoiMode
          */
-        if (!Sampler.isInited()) {
-            Sampler.initSampleMask(mat.height(), mat.width());
-        }
-        Sampler.sample(mat);
-        return Sampler.sampleCompleted();
+        defaultSession.setRoiMode(roiMode);
     }
 
-    private static boolean preprocess(Mat im) {
-        // check time
-        if (!checkTime()) {
-            return false;
-        }
-
-        // resize to the standard size
-        recoverRatio = 1.0 / Util.resize(im);
-
-        Imgproc.cvtColor(im, im, Imgproc.COLOR_BGR2YCrCb);
-        Imgproc.blur(im, im, new Size(Config.IM_BLUR_SIZE, Config.IM_BLUR_SIZE));
-
-        if (!Sampler.sampleCompleted()) {
-            sample(im);
-            return false;
-        }
-        return true;
+    public static void setPyramidMode(boolean pyramidMode) {
+        /**
+         * @see TapSession#setPyramidMode
+         */
+        defaultSession.setPyramidMode(pyramidMode);
     }
 
-    private static void scaleResult(List<Point> result) {
-        for (Point pt : result) {
-            pt.x *= recoverRatio;
-            pt.y *= recoverRatio;
-        }
+    public static void setRecalibration(boolean recalibration) {
+        /**
+         * @see TapSession#setRecalibration
+         */
+        defaultSession.setRecalibration(recalibration);
     }
 
-    private static void updateResultCache(List<Point> result) {
-        resultCache.clear();
-        for (Point pt : result) {
-            resultCache.add(pt);
-        }
+    public static void setParallelSegmentation(boolean parallel) {
+        /**
+         * @see TapSession#setParallelSegmentation
+         */
+        defaultSession.setParallelSegmentation(parallel);
     }
 
-    private static double recoverRatio = 0.0;
-    private static long lastProcess = 0;
-    private static long processInterval;
-    private static List<Point> resultCache = new ArrayList<>();
-    private static List<Point> sampleWindowContour = null;
+    public static void setMotionGate(boolean motionGate) {
+        /**
+         * @see TapSession#setMotionGate
+         */
+        defaultSession.setMotionGate(motionGate);
+    }
 
+    public static void setLoadBudget(double budgetMs) {
+        /**
+         * Adapt the quality at runtime instead of a fixed `setHighPerformance`
+         * @see TapSession#setLoadBudget
+         */
+        defaultSession.setLoadBudget(budgetMs);
+    }
 
-    // Configs
     public static void setHighPerformance(boolean highPerformance) {
-        if (highPerformance) {
-            Config.PROCESS_INTERVAL_MS = 50;
-        } else {
-            Config.PROCESS_INTERVAL_MS = 100;
-        }
+        /**
+         * Sensibility settings only apply to the default session,
+         * other sessions have their own, see `TapSession.getSensibility`
+         */
+        defaultSession.getSensibility().setHighPerformance(highPerformance);
     }
 
     public static void setMotionSensibility(int motionSensibility) {
-        switch (motionSensibility) {
-            case 0:
-                // sensitive to small move
-                Config.FINGER_TIP_MOVE_DIST_MAX = 20;
-                Config.FINGER_TIP_LINGER_DIST_MAX = 1;
-                break;
-            case 1:
-                Config.FINGER_TIP_MOVE_DIST_MAX = 25;
-                Config.FINGER_TIP_LINGER_DIST_MAX = 2;
-                break;
-            case 2:
-                // sensitive to big move
-                Config.FINGER_TIP_MOVE_DIST_MAX = 35;
-                Config.FINGER_TIP_LINGER_DIST_MAX = 4;
-                break;
-        }
+        defaultSession.getSensibility().setMotionSensibility(motionSensibility);
     }
 
     public static void setSkinColorSensibility(int colorSensibility) {
-        switch (colorSensibility) {
-            case 0:
-                // a small range of color is considered as skin color
-                Config.COLOR_RANGE_EXPAND[0] = 2;
-                Config.COLOR_RANGE_EXPAND[1] = 1.4;
-                Config.COLOR_RANGE_EXPAND[2] = 2;
-                break;
-            case 1:
-                Config.COLOR_RANGE_EXPAND[0] = 3;
-                Config.COLOR_RANGE_EXPAND[1] = 1.6;
-                Config.COLOR_RANGE_EXPAND[2] = 3;
-                break;
-            case 2:
-                // a large range of color is considered as skin color
-                Config.COLOR_RANGE_EXPAND[0] = 3;
-                Config.COLOR_RANGE_EXPAND[1] = 1.8;
-                Config.COLOR_RANGE_EXPAND[2] = 3;
-                break;
-        }
+        defaultSession.getSensibility().setSkinColorSensibility(colorSensibility);
     }
 
     public static void setCalibritionColorSensibility(int calibritionColorSensibility) {
-        switch (calibritionColorSensibility) {
-            case 0:
-                // have a coarse sampling
-                Config.SAMPLE_PASS_THRESHOLD = 0.75;
-                Config.FINGER_COLOR_TOLERANCE[1] = 25;
-                Config.FINGER_COLOR_TOLERANCE[2] = 25;
-                break;
-            case 1:
-                Config.SAMPLE_PASS_THRESHOLD = 0.85;
-                Config.FINGER_COLOR_TOLERANCE[1] = 17;
-                Config.FINGER_COLOR_TOLERANCE[2] = 20;
-                break;
-            case 2:
-                // have a precise sampling
-                Config.SAMPLE_PASS_THRESHOLD = 0.9;
-                Config.FINGER_COLOR_TOLERANCE[1] = 15;
-                Config.FINGER_COLOR_TOLERANCE[2] = 15;
-                break;
-        }
+        defaultSession.getSensibility().setCalibrationColorSensibility(calibritionColorSensibility);
     }
 }
@@ -0,0 +1,301 @@
+package tapdetect.facade;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import tapdetect.TapDetector.TapDetectPoint;
+
+/**
+ * Tap, press and release events of one session, pushed to any number of subscribers
+ * <br>Events are written into a preallocated ring of `Config.EVENT_RING_SIZE` reusable slots,
+ * <br>publishing allocates nothing, takes no lock and never waits for subscribers.
+ * <br>Each subscriber reads the ring from its own cursor, so subscribers run in parallel
+ * <br>and a slow one, or one never polled, does not delay the others nor the publisher.
+ * <br>The oldest event is overwritten once the ring is full, a subscriber lapped by the publisher
+ * <br>skips to the oldest event still in the ring; events are numbered in order, so it sees the gap
+ * <br>in the sequence numbers, and counts the events it missed.
+ * <br>Events:
+ * <br>  TAP: a finger tip lands, once per tap
+ * <br>  PRESS: a finger tip keeps pressing, once per processed frame after the tap
+ * <br>  RELEASE: a tapping or pressing finger tip is lifted or lost, at its last position
+ * <br>Events of one finger share the same track id.
+ * <br> Usage:
+ * <code>
+ * <br>  TapEventStream.Subscription sub = session.getEventStream().dispatch("synth", new TapEventStream.Listener() {
+ * <br>      public void onEvent(TapEventStream.Event e) { ... }  // on the "synth" thread
+ * <br>  });
+ * <br>  ...
+ * <br>  sub.close();
+ * </code>
+ */
+public class TapEventStream {
+    public enum Type {
+        TAP, PRESS, RELEASE,
+    }
+
+    public static class Event {
+        Type type;
+        long sequence;
+        long timestampMs;
+        int trackId;
+        double x, y;
+
+        public Type getType() {
+            return type;
+        }
+
+        public long getSequence() {
+            // number of events published before this one, a gap to the last event delivered means missed events
+            return sequence;
+        }
+
+        public long getTimestampMs() {
+            // capture time of the frame
+            return timestampMs;
+        }
+
+        public int getTrackId() {
+            return trackId;
+        }
+
+        public double getX() {
+            return x;
+        }
+
+        public double getY() {
+            return y;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("#%d %s %d@(%.1f, %.1f) %dms", sequence, type, trackId, x, y, timestampMs);
+        }
+    }
+
+    public interface Listener {
+        /**
+         * @param event: valid only during the call, it is reused for the next event of the subscription
+         */
+        void onEvent(Event event);
+    }
+
+    public class Subscription {
+        private volatile long cursor;  // next position to read, only written by the reading thread
+        private volatile long missed = 0;  // overwritten before read, only written by the reading thread
+        private final Event event = new Event();  // copy of the slot being delivered
+        private volatile Thread waiter = null;
+        private volatile boolean closed = false;
+
+        Subscription(long position) {
+            cursor = position;
+        }
+
+        public int poll(Listener listener) {
+            /**
+             * Deliver all events published so far to `listener` on the calling thread
+             * Events overwritten before they are read are skipped, see `getMissed`
+             * @return: number of events delivered
+             */
+            long pos = cursor, to = published.get();
+            int cnt = 0;
+            while (pos < to) {
+                if (!slots[(int) (pos & mask)].copyTo(pos, event)) {
+                    // lapped, skip to the oldest event still in the ring
+                    to = published.get();
+                    long oldest = Math.max(pos + 1, to - slots.length);
+                    missed += oldest - pos;
+                    pos = oldest;
+                    continue;
+                }
+                ++pos;
+                listener.onEvent(event);
+                ++cnt;
+            }
+            cursor = pos;
+            return cnt;
+        }
+
+        public long getMissed() {
+            /**
+             * @return: events overwritten by the publisher before this subscription read them
+             */
+            return missed;
+        }
+
+        public int await(Listener listener, long timeoutMs) {
+            /**
+             * Same with `poll`, but waits up to `timeoutMs` for an event if there is none
+             */
+            int cnt = poll(listener);
+            if (cnt > 0 || closed) {
+                return cnt;
+            }
+            waiter = Thread.currentThread();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            try {
+                while (cursor == published.get() && !closed) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0 || Thread.interrupted()) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, left);
+                }
+            } finally {
+                waiter = null;
+            }
+            return poll(listener);
+        }
+
+        public void close() {
+            /**
+             * Stop receiving events, the dispatching thread if any will exit
+             */
+            closed = true;
+            unsubscribe(this);
+            Thread t = waiter;
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+    }
+
+    private static class Slot {
+        // position of the event in the slot, -1 while it is being written
+        // fields are volatile so that a reader seeing the same position before and after copying them
+        // knows they were not overwritten in between
+        volatile long position = -1;
+        volatile Type type;
+        volatile long timestampMs;
+        volatile int trackId;
+        volatile double x, y;
+
+        boolean copyTo(long pos, Event e) {
+            /**
+             * @return: false if the event at `pos` is overwritten, `e` is garbage then
+             */
+            if (position != pos) {
+                return false;
+            }
+            e.type = type;
+            e.sequence = pos;
+            e.timestampMs = timestampMs;
+            e.trackId = trackId;
+            e.x = x;
+            e.y = y;
+            return position == pos;
+        }
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong published = new AtomicLong(0);  // events so far
+    private volatile Subscription[] subscriptions = new Subscription[0];
+
+    public TapEventStream(int capacity) {
+        /**
+         * @param capacity: rounded up to a power of 2
+         */
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        slots = new Slot[size];
+        for (int i = 0; i < size; ++i) {
+            slots[i] = new Slot();
+        }
+        mask = size - 1;
+    }
+
+    public synchronized Subscription subscribe() {
+        /**
+         * @return: a subscription receiving events published from now on
+         */
+        Subscription sub = new Subscription(published.get());
+        Subscription[] subs = new Subscription[subscriptions.length + 1];
+        System.arraycopy(subscriptions, 0, subs, 0, subscriptions.length);
+        subs[subscriptions.length] = sub;
+        subscriptions = subs;
+        return sub;
+    }
+
+    public Subscription dispatch(String threadName, final Listener listener) {
+        /**
+         * Subscribe and push events to `listener` on a new daemon thread until the subscription is closed
+         */
+        final Subscription sub = subscribe();
+        Thread t = new Thread(threadName) {
+            @Override
+            public void run() {
+                while (!sub.isClosed()) {
+                    sub.await(listener, 1000);
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+        return sub;
+    }
+
+    void publish(Type type, long timestampMs, int trackId, double x, double y) {
+        /**
+         * Called by the only publishing thread at a time (the session lock serializes them)
+         * Overwrites the oldest event if the ring is full, whoever has not read it yet
+         */
+        long pos = published.get();
+        Slot slot = slots[(int) (pos & mask)];
+        slot.position = -1;
+        slot.type = type;
+        slot.timestampMs = timestampMs;
+        slot.trackId = trackId;
+        slot.x = x;
+        slot.y = y;
+        slot.position = pos;
+        published.set(pos + 1);  // a full fence, so that `flush` can not miss a waiter
+    }
+
+    void publishFrame(List<TapDetectPoint> released, List<TapDetectPoint> tips, long timestampMs, double ratio) {
+        /**
+         * Publish the events of one frame judged by the tracker, then `flush`
+         * @param released: finger tips released by the frame, as `TapDetector.getReleased()`
+         * @param ratio: the ratio to recover a point to the coordinate of the original image
+         */
+        for (TapDetectPoint pt : released) {
+            publish(Type.RELEASE, timestampMs, pt.getTrackId(), pt.x * ratio, pt.y * ratio);
+        }
+        for (TapDetectPoint pt : tips) {
+            if (pt.isTapping() || pt.isPressing()) {
+                publish(pt.isTapping() ? Type.TAP : Type.PRESS, timestampMs,
+                        pt.getTrackId(), pt.x * ratio, pt.y * ratio);
+            }
+        }
+        flush();
+    }
+
+    void flush() {
+        /**
+         * Wake up waiting subscribers, called once after the events of a frame are published
+         */
+        for (Subscription sub : subscriptions) {
+            Thread t = sub.waiter;
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
+        }
+    }
+
+    private synchronized void unsubscribe(Subscription sub) {
+        Subscription[] subs = subscriptions;
+        for (int i = 0; i < subs.length; ++i) {
+            if (subs[i] == sub) {
+                Subscription[] rest = new Subscription[subs.length - 1];
+                System.arraycopy(subs, 0, rest, 0, i);
+                System.arraycopy(subs, i + 1, rest, i, subs.length - i - 1);
+                subscriptions = rest;
+                return;
+            }
+        }
+    }
+}
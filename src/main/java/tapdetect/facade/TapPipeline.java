@@ -0,0 +1,285 @@
+package tapdetect.facade;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import tapdetect.Config;
+import tapdetect.FingerDetector;
+import tapdetect.HandDetector;
+import tapdetect.Metrics;
+import tapdetect.TapDetector.TapDetectPoint;
+import tapdetect.Workspace;
+
+/**
+ * Pipelined tap detection of one video stream
+ * <br>The four stages, preprocessing (resize, color conversion, blur and sampling),
+ * <br>hand mask, finger tip extraction and tracking, run on their own threads
+ * <br>and work on consecutive frames at the same time,
+ * <br>so that the throughput is limited by the slowest stage instead of the sum of all stages.
+ * <br>Stages are connected by bounded queues of `Config.PIPELINE_QUEUE_SIZE`,
+ * <br>if a stage falls behind, the oldest waiting frame is dropped.
+ * <br>Frames reach the tracking stage in submission order.
+ * <br>Native buffers come from a pool of `Workspace` shared by the frames in flight.
+ * <br>A frame failing with an exception in any stage is reported to `Listener.onError`, the stage goes on.
+ * <br>Only the plain detection path is pipelined: ROI, pyramid, motion gate, load shedding, recalibration
+ * <br>and parallel segmentation of the session are refused by `start` and ignored if turned on later.
+ * <br> Usage:
+ * <code>
+ * <br>  TapPipeline pipeline = new TapPipeline(listener);
+ * <br>  pipeline.start();
+ * <br>  pipeline.submit(frame, captureTimeMs);   // `frame` is owned by the pipeline now
+ * <br>  ...
+ * <br>  pipeline.stop();
+ * </code>
+ */
+public class TapPipeline {
+    public interface Listener {
+        /**
+         * Called on the tracking thread in submission order
+         * @param taps: points detected as being tapping, in the coordinate of the submitted frame
+         * @param all: all finger tips with their status
+         */
+        void onResult(long frameId, List<Point> taps, List<TapDetectPoint> all);
+
+        /**
+         * Called when a frame is dropped by a full queue or used up by sampling
+         */
+        void onDropped(long frameId);
+
+        /**
+         * Called on the thread of the stage where processing the frame (or `onResult`) threw
+         */
+        void onError(long frameId, RuntimeException e);
+    }
+
+    private final TapSession session = new TapSession();
+    private final Listener listener;
+
+    private final BlockingQueue<Frame> toPreprocess = new ArrayBlockingQueue<>(Config.PIPELINE_QUEUE_SIZE);
+    private final BlockingQueue<Frame> toHand = new ArrayBlockingQueue<>(Config.PIPELINE_QUEUE_SIZE);
+    private final BlockingQueue<Frame> toFinger = new ArrayBlockingQueue<>(Config.PIPELINE_QUEUE_SIZE);
+    private final BlockingQueue<Frame> toTrack = new ArrayBlockingQueue<>(Config.PIPELINE_QUEUE_SIZE);
+    private final List<Thread> threads = new ArrayList<>();
+    private final Queue<Workspace> workspaces = new ConcurrentLinkedQueue<>();
+
+    private long nextFrameId = 0;
+
+    public TapPipeline(Listener listener) {
+        this.listener = listener;
+    }
+
+    public TapSession getSession() {
+        /**
+         * The session holding the calibration and tracking state of this pipeline
+         * Do not feed frames to it directly while the pipeline is running
+         */
+        return session;
+    }
+
+    public synchronized void start() {
+        /**
+         * @throws IllegalStateException: if the session uses a mode the pipeline does not run
+         */
+        if (!threads.isEmpty()) {
+            return;
+        }
+        if (session.hasDetectionModes()) {
+            throw new IllegalStateException("TapPipeline only runs the plain detection path, "
+                    + "turn off ROI, pyramid, motion gate, load shedding, recalibration and parallel segmentation");
+        }
+        threads.add(new StageThread("tap-preprocess", toPreprocess) {
+            @Override
+            boolean process(Frame frame) {
+                frame.recoverRatio = session.convert(frame.im);
+                if (!session.calibrate(frame.im)) {
+                    return false;
+                }
+                handOff(toHand, frame);
+                return true;
+            }
+        });
+        threads.add(new StageThread("tap-hand", toHand) {
+            @Override
+            boolean process(Frame frame) {
+                Metrics metrics = session.metrics();
+                long t = metrics == null ? 0 : System.nanoTime();
+                frame.ws = acquireWorkspace();
+                frame.ws.setMetrics(metrics);
+                frame.hand = HandDetector.getHand(frame.im, session.getColorRange(), frame.ws);
+                if (metrics != null) {
+                    metrics.record(Metrics.HAND, t);
+                }
+                handOff(toFinger, frame);
+                return true;
+            }
+        });
+        threads.add(new StageThread("tap-finger", toFinger) {
+            @Override
+            boolean process(Frame frame) {
+                frame.fingers = FingerDetector.getFingers(frame.im, frame.hand, null, frame.ws);
+                Metrics metrics = session.metrics();
+                if (metrics != null) {
+                    metrics.countFrame(frame.ws.getContourCount(), frame.fingers.size());
+                }
+                handOff(toTrack, frame);
+                return true;
+            }
+        });
+        threads.add(new StageThread("tap-track", toTrack) {
+            @Override
+            boolean process(Frame frame) {
+                List<TapDetectPoint> all = session.track(frame.im, frame.fingers, frame.timestampMs, frame.recoverRatio);
+                List<Point> taps = new ArrayList<>();
+                for (TapDetectPoint pt : all) {
+                    pt.x *= frame.recoverRatio;
+                    pt.y *= frame.recoverRatio;
+                    if (pt.isTapping()) {
+                        taps.add(pt);
+                    }
+                }
+                release(frame);
+                listener.onResult(frame.id, taps, all);
+                return true;
+            }
+        });
+        for (Thread t : threads) {
+            t.start();
+        }
+    }
+
+    public void submit(Mat im) {
+        submit(im, System.currentTimeMillis());
+    }
+
+    public void submit(Mat im, long timestampMs) {
+        /**
+         * Queue a BGR frame, the pipeline owns `im` afterwards and will release it
+         * @param timestampMs: capture time of `im`, used by the tracking stage
+         */
+        Frame frame;
+        synchronized (this) {
+            frame = new Frame(im, nextFrameId++, timestampMs);
+        }
+        handOff(toPreprocess, frame);
+    }
+
+    public void stop() throws InterruptedException {
+        /**
+         * Stop all stage threads and drop frames in flight
+         */
+        List<Thread> toJoin;
+        synchronized (this) {
+            toJoin = new ArrayList<>(threads);
+            threads.clear();
+        }
+        for (Thread t : toJoin) {
+            t.interrupt();
+        }
+        for (Thread t : toJoin) {
+            t.join();
+        }
+        List<Frame> inFlight = new ArrayList<>();
+        toPreprocess.drainTo(inFlight);
+        toHand.drainTo(inFlight);
+        toFinger.drainTo(inFlight);
+        toTrack.drainTo(inFlight);
+        for (Frame frame : inFlight) {
+            drop(frame);
+        }
+
+        Workspace ws;
+        while ((ws = workspaces.poll()) != null) {
+            ws.release();
+        }
+    }
+
+    private void handOff(BlockingQueue<Frame> queue, Frame frame) {
+        // drop the oldest frames until there is room for the new one
+        while (!queue.offer(frame)) {
+            Frame oldest = queue.poll();
+            if (oldest != null) {
+                drop(oldest);
+            }
+        }
+    }
+
+    private void drop(Frame frame) {
+        release(frame);
+        listener.onDropped(frame.id);
+    }
+
+    private Workspace acquireWorkspace() {
+        // every frame between the hand stage and the tracking stage holds a workspace,
+        // the pool stops growing once it covers all frames in flight
+        Workspace ws = workspaces.poll();
+        return ws == null ? new Workspace() : ws;
+    }
+
+    private void release(Frame frame) {
+        frame.im.release();
+        if (frame.ws != null) {
+            workspaces.add(frame.ws);
+            frame.ws = null;
+        }
+    }
+
+    private static class Frame {
+        final Mat im;
+        final long id;
+        final long timestampMs;
+        double recoverRatio;
+        Workspace ws;
+        Mat hand;
+        List<Point> fingers;
+
+        Frame(Mat im, long id, long timestampMs) {
+            this.im = im;
+            this.id = id;
+            this.timestampMs = timestampMs;
+        }
+    }
+
+    private abstract class StageThread extends Thread {
+        private final BlockingQueue<Frame> input;
+
+        StageThread(String name, BlockingQueue<Frame> input) {
+            super(name);
+            this.input = input;
+            setDaemon(true);
+        }
+
+        // @return: false if the frame ends up in this stage and should be dropped
+        abstract boolean process(Frame frame);
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                Frame frame;
+                try {
+                    frame = input.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    if (!process(frame)) {
+                        drop(frame);
+                    }
+                } catch (RuntimeException e) {
+                    release(frame);
+                    Metrics metrics = session.metrics();
+                    if (metrics != null) {
+                        metrics.countFailed();
+                    }
+                    listener.onError(frame.id, e);
+                }
+            }
+        }
+    }
+}
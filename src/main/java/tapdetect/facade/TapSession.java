@@ -0,0 +1,705 @@
+package tapdetect.facade;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import tapdetect.ColorRange;
+import tapdetect.Config;
+import tapdetect.FingerDetector;
+import tapdetect.HandDetector;
+import tapdetect.Metrics;
+import tapdetect.Sampler;
+import tapdetect.Sensibility;
+import tapdetect.TapDetector;
+import tapdetect.TapDetector.TapDetectPoint;
+import tapdetect.Util;
+import tapdetect.Workspace;
+import tapdetect.YuvFrame;
+
+/**
+ * One tap detection session, i.e. the detection state of one video stream
+ * <br>A session owns its calibration, tracker state, throttle clock and result cache,
+ * <br>so that many streams could be processed in one process, each frame judged by its capture time.
+ * <br>Optional modes (ROI, pyramid, motion gate, ...) are turned on by their setters, see `SessionMode`.
+ * <br>Calls on a same session are serialized, `Config` values are shared by all sessions.
+ * <br> Usage:
+ * <code>
+ * <br>  TapSession session = new TapSession();
+ * <br>  List<Point> taps = session.getTaps(nextFrame);
+ * <br>  List<Point> taps = session.getTaps(nextFrame, captureTimeMs);
+ * </code>
+ */
+public class TapSession {
+    private final Sensibility sensibility = new Sensibility();
+    private final Calibration calibration = new Calibration(sensibility);
+    private final ColorRange colorRange = calibration.colorRange;
+    private final TapDetector tapDetector = new TapDetector(sensibility);
+    private final SessionMode.Chain modes = new SessionMode.Chain();
+    private boolean detectedByMode = false;  // whether the frame being processed is left to `modes.getFingers`
+    private Workspace workspace;  // created at the first frame, after opencv is loaded
+    private Mat ingest;  // working image of `YuvFrame` frames, created at the first one
+    private final YuvFrame.Buffers ingestBuffers = new YuvFrame.Buffers();
+    private long frameStartNanos = 0;  // when the frame being processed started, 0 if none
+    private volatile Metrics metrics = null;  // null if metrics are disabled
+    private TapEventStream eventStream = null;  // created at the first subscription
+
+    private double recoverRatio = 0.0;
+    private boolean throttled = true;
+    private long lastProcess = 0;
+    private long processInterval;
+    private List<Point> resultCache = new ArrayList<>();
+    private List<Point> sampleWindowContour = null;
+
+    public ColorRange getColorRange() {
+        return colorRange;
+    }
+
+    public Sampler getSampler() {
+        return calibration.sampler;
+    }
+
+    public Sensibility getSensibility() {
+        /**
+         * Settings of this session only, could be changed at any time,
+         * a frame being processed meanwhile sees each value either before or after the change
+         */
+        return sensibility;
+    }
+
+    public synchronized long getProcessInterval() {
+        return processInterval;
+    }
+
+    public boolean readyForNextFrame() {
+        return readyForNextFrame(System.currentTimeMillis());
+    }
+
+    public synchronized boolean readyForNextFrame(long timestampMs) {
+        /**
+         * @param timestampMs: capture time of the next frame
+         * @return: whether the next frame will be processed rather than skipped by the throttling
+         */
+        return !throttled || timestampMs - lastProcess > minInterval() || timestampMs < lastProcess;
+    }
+
+    public synchronized void setThrottled(boolean throttled) {
+        /**
+         * If `throttled` is false, every frame passed in will be processed
+         * regardless of the processing interval of the `Sensibility`,
+         * used when the caller decides which frames to drop by itself (e.g. `FrameScheduler`)
+         */
+        this.throttled = throttled;
+    }
+
+    public synchronized void setRoiMode(boolean roiMode) {
+        /**
+         * In ROI mode, only the region around the hands of the last frame is processed,
+         * with a full frame scan every `Config.ROI_RESCAN_INTERVAL` frames or when hands are lost
+         * @see RoiTracker
+         */
+        modes.set(SessionMode.Chain.ROI, roiMode ? new SessionMode.Roi() : null);
+    }
+
+    public synchronized void setPyramidMode(boolean pyramidMode) {
+        /**
+         * In pyramid mode, hands are searched at a lower resolution
+         * and finger tips are refined at a higher one around each tip, once sampling completes.
+         * Frames are left in BGR at their own size then.
+         * Once sampling completes, ROI mode, the motion gate, parallel segmentation and recalibration
+         * are silently skipped for BGR frames, and load shedding only adapts the processing interval.
+         * `YuvFrame` frames are not detected by the pyramid but take the normal path, with all other modes.
+         * @see PyramidDetector
+         */
+        modes.set(SessionMode.Chain.PYRAMID, pyramidMode ? new SessionMode.Pyramid(colorRange) : null);
+    }
+
+    public synchronized void setRecalibration(boolean recalibration) {
+        /**
+         * Keep learning the skin color from the detected hands during detection,
+         * so that the color range follows lighting changes without sampling again.
+         * Not used in pyramid mode.
+         * @see Recalibrator
+         */
+        modes.set(SessionMode.Chain.RECALIBRATION, recalibration ? new SessionMode.Recalibration(colorRange) : null);
+    }
+
+    public synchronized void setParallelSegmentation(boolean parallel) {
+        /**
+         * Segment hands in horizontal strips on several cores, worth it for a large `Config.IM_HEIGHT`.
+         * Results are the same as the sequential segmentation.
+         * Not used in ROI mode and pyramid mode, nor when the motion gate segments only a part of the frame.
+         * @see ParallelSegmenter
+         */
+        modes.set(SessionMode.Chain.PARALLEL, parallel ? new SessionMode.Parallel(colorRange) : null);
+    }
+
+    public synchronized void setMotionGate(boolean motionGate) {
+        /**
+         * Compare every raw frame with the last one by tiles before preprocessing:
+         * if nothing changed and no finger tip is on its way to a tap, the frame is skipped as `FrameResult.STILL`,
+         * the tracker keeps the finger tips of the last frame without judging them again;
+         * otherwise the hand mask is only recomputed around the changed tiles.
+         * Not used in pyramid mode.
+         * @see MotionGate
+         */
+        modes.set(SessionMode.Chain.GATE, motionGate ? new SessionMode.Gate(colorRange) : null);
+    }
+
+    public synchronized void setLoadBudget(double budgetMs) {
+        /**
+         * Adapt the working height, blur size and morphology to keep the average cost of a frame within `budgetMs`,
+         * and the processing interval to keep the share of it a frame takes within `Config.LOAD_CPU_MAX`
+         * @param budgetMs: 0 to turn load shedding off and go back to `Config`
+         * @see LoadController
+         */
+        modes.set(SessionMode.Chain.LOAD, budgetMs > 0 ? new SessionMode.Load(budgetMs) : null);
+        modes.resize();
+    }
+
+    public synchronized LoadController getLoadController() {
+        /**
+         * @return: the controller of load shedding, to inspect its level, null if it is off
+         */
+        SessionMode.Load load = (SessionMode.Load) modes.get(SessionMode.Chain.LOAD);
+        return load == null ? null : load.controller;
+    }
+
+    public synchronized void setMetricsEnabled(boolean enabled) {
+        /**
+         * Start recording stage latencies and frame counters from zero, or stop recording
+         */
+        metrics = enabled ? new Metrics() : null;
+        if (workspace != null) {
+            workspace.setMetrics(metrics);
+        }
+    }
+
+    public Metrics.Snapshot getMetrics() {
+        /**
+         * @return: the metrics recorded so far, null if metrics are disabled
+         *      does not wait for the frame being processed
+         */
+        Metrics m = metrics;
+        return m == null ? null : m.snapshot();
+    }
+
+    public synchronized TapEventStream getEventStream() {
+        /**
+         * Events are only published once this has been called
+         */
+        if (eventStream == null) {
+            eventStream = new TapEventStream(Config.EVENT_RING_SIZE);
+        }
+        return eventStream;
+    }
+
+    public synchronized void reset() {
+        calibration.reset();
+        modes.reset();
+    }
+
+    public synchronized boolean saveProfile(File dir, String key) throws IOException {
+        /**
+         * Save the calibration and the sensibility settings for the camera / room `key`
+         * @return: false if nothing is saved as sampling is not completed yet
+         * @see CalibrationProfile
+         */
+        return calibration.save(dir, key);
+    }
+
+    public synchronized boolean loadProfile(File dir, String key) {
+        /**
+         * Start from the calibration saved for the camera / room `key` instead of sampling.
+         * The next frame is checked against it in the sample window, only then its calibration
+         * and sensibility settings replace those of the session; if it does not fit (e.g. the lighting changed),
+         * the profile is dropped, the session keeps its own and sampling goes on as usual.
+         * @return: false if there is no usable profile, sampling goes on as usual
+         */
+        return calibration.load(dir, key);
+    }
+
+    public synchronized void release() {
+        /**
+         * Release the native buffers of this session
+         * The session could still be used afterwards, buffers will be allocated again
+         */
+        if (workspace != null) {
+            workspace.release();
+            workspace = null;
+        }
+        if (ingest != null) {
+            ingest.release();
+            ingest = null;
+        }
+        modes.release();
+    }
+
+    public boolean sampleCompleted() {
+        /**
+         * Once this returns `True`, sampling process should be completed,
+         * sampling function will not be called anymore.
+         */
+        return calibration.sampler.sampleCompleted();
+    }
+
+    public List<Point> getTaps(Mat im) {
+        return getTaps(im, System.currentTimeMillis());
+    }
+
+    public synchronized List<Point> getTaps(Mat im, long timestampMs) {
+        /**
+         * Searching tapping points from `im`
+         * @param im: one frame from a video
+         * @param timestampMs: capture time of `im` in milliseconds, on any clock increasing with the video
+         * @return : A list of `Point` indicating the points which
+         *  (1) is regarded as the finger tip
+         *  (2) is regarded as being tapping
+         */
+        if (preprocess(im, timestampMs) != FrameResult.PROCESSED) {
+            return resultCache;
+        }
+
+        List<Point> fingers = findFingers(im, null);
+        List<Point> taps = select(track(im, fingers, timestampMs, recoverRatio), false);
+        scaleResult(taps);
+        return taps;
+    }
+
+    public List<Point> getPress(Mat im) {
+        return getPress(im, System.currentTimeMillis());
+    }
+
+    public synchronized List<Point> getPress(Mat im, long timestampMs) {
+        /**
+         * Searching pressing finger tips from `im`
+         * @param im: one frame from a video
+         * @param timestampMs: capture time of `im` in milliseconds
+         * @return : A list of `Point` indicating the points which
+         *  (1) is regarded as the finger tip
+         *  (2) is regarded as being pressing
+         *
+         *  @warning: do not use getPress and getTaps in a row for the sake of performance.
+         *      Use `getAll` to get every finger tips instead
+         */
+        if (preprocess(im, timestampMs) != FrameResult.PROCESSED) {
+            return resultCache;
+        }
+
+        List<Point> fingers = findFingers(im, null);
+        List<Point> press = select(track(im, fingers, timestampMs, recoverRatio), true);
+        scaleResult(press);
+        return press;
+    }
+
+    public List<Point> getAll(Mat im,
+                              List<List<Point>> contoursOutput,
+                              List<TapDetectPoint> tapDetectPointsOutput
+    ) {
+        return getAll(im, System.currentTimeMillis(), contoursOutput, tapDetectPointsOutput);
+    }
+
+    public synchronized List<Point> getAll(Mat im, long timestampMs,
+                                           List<List<Point>> contoursOutput,
+                                           List<TapDetectPoint> tapDetectPointsOutput
+    ) {
+        /**
+         * @param: im: A image in color space BGR
+         * @param: timestampMs: capture time of `im` in milliseconds
+         * @param: contoursOutput
+         *      if is not null, apexes of the contour of hand will be saved
+         * @param: tapDetectPointsOutput
+         *      if is not null, all results of detected points will be saved
+         * @retrun:
+         *      A list of points detected as being tapping
+         *      (nothing but `TapDetectPoint` with status `FALLING` in `tapDetectPointsOutput`)
+         *  This function will modify `im` into YCrCb as well as a smaller size
+         */
+        if (preprocess(im, null, timestampMs) != FrameResult.PROCESSED) {
+            return resultCache;
+        }
+        return select(detect(im, timestampMs, contoursOutput, tapDetectPointsOutput), false);
+    }
+
+    public synchronized List<Point> getAll(YuvFrame frame, long timestampMs,
+                                           List<List<Point>> contoursOutput,
+                                           List<TapDetectPoint> tapDetectPointsOutput
+    ) {
+        /**
+         * Same with `getAll(im, timestampMs, ...)` but on a raw camera frame,
+         * which is downscaled and converted to YCrCb at once, without going through BGR.
+         * Points are in the coordinate of `frame`.
+         * Not used in pyramid mode, which needs a BGR frame.
+         */
+        Mat im = getIngest();
+        if (preprocess(im, frame, timestampMs) != FrameResult.PROCESSED) {
+            return resultCache;
+        }
+        return select(detect(im, timestampMs, contoursOutput, tapDetectPointsOutput), false);
+    }
+
+    public synchronized FrameResult process(Mat im, long timestampMs, FrameResult result) {
+        /**
+         * Run detection once and save every finger tip with its status into `result`
+         * Unlike `getAll`, no list or point is given out, `result` could be reused for every frame
+         * @param im: A image in color space BGR, will be modified like `getAll`
+         * @param timestampMs: capture time of `im` in milliseconds
+         * @param result: output, overwritten
+         * @return: `result`
+         */
+        return processPreprocessed(im, preprocess(im, null, timestampMs), timestampMs, result);
+    }
+
+    public synchronized FrameResult process(YuvFrame frame, long timestampMs, FrameResult result) {
+        /**
+         * Same with `process(im, timestampMs, result)` but on a raw camera frame
+         * @see #getAll(YuvFrame, long, List, List)
+         */
+        Mat im = getIngest();
+        return processPreprocessed(im, preprocess(im, frame, timestampMs), timestampMs, result);
+    }
+
+    private FrameResult processPreprocessed(Mat im, int status, long timestampMs, FrameResult result) {
+        result.clear(status, timestampMs);
+        if (status != FrameResult.PROCESSED) {
+            return result;
+        }
+
+        List<Point> fingers = findFingers(im, null);
+        result.setTips(track(im, fingers, timestampMs, recoverRatio), recoverRatio);
+        if (result.isContoursWanted()) {
+            Workspace ws = getWorkspace();
+            for (int i = 0; i < ws.getContourCount(); ++i) {
+                result.addContour(ws.getContour(i), recoverRatio);
+            }
+        }
+        return result;
+    }
+
+    public List<Point> getPressAll(Mat im,
+                                   List<List<Point>> contoursOutput,
+                                   List<TapDetectPoint> tapDetectPointsOutput
+    ) {
+        return getPressAll(im, System.currentTimeMillis(), contoursOutput, tapDetectPointsOutput);
+    }
+
+    public synchronized List<Point> getPressAll(Mat im, long timestampMs,
+                                                List<List<Point>> contoursOutput,
+                                                List<TapDetectPoint> tapDetectPointsOutput
+    ) {
+        /**
+         * Same with `getAll` but returns a list of `pressing` points
+         */
+        if (preprocess(im, timestampMs) != FrameResult.PROCESSED) {
+            return resultCache;
+        }
+        return select(detect(im, timestampMs, contoursOutput, tapDetectPointsOutput), true);
+    }
+
+    public synchronized List<Point> getSampleWindowContour() {
+        if (sampleWindowContour == null && recoverRatio > 0.0) {
+            sampleWindowContour = new ArrayList<>();
+            for (Point p : calibration.sampler.getSampleWindowContour()) {
+                sampleWindowContour.add(new Point(p.x * recoverRatio, p.y * recoverRatio));
+            }
+        }
+        return sampleWindowContour;
+    }
+
+    private List<Point> findFingers(Mat im, List<MatOfPoint> contourOutput) {
+        /**
+         * Search finger tips in a preprocessed `im`, only around the last hands in ROI mode
+         */
+        Workspace ws = getWorkspace();
+        Metrics m = metrics;
+        if (detectedByMode) {
+            List<Point> fingers = modes.getFingers(im, ws, contourOutput);
+            if (m != null) {
+                m.countFrame(ws.getContourCount(), fingers.size());
+            }
+            return fingers;
+        }
+
+        long t = m == null ? 0 : System.nanoTime();
+        Rect roi = modes.nextRoi();
+        Mat hand = roi == null ? modes.getHand(im, ws) : null;
+        if (hand == null) {
+            hand = HandDetector.getHand(im, colorRange, ws, roi);
+            modes.invalidate();
+        }
+        if (m != null) {
+            m.record(Metrics.HAND, t);
+        }
+        List<Point> fingers = FingerDetector.getFingers(im, hand, contourOutput, ws, roi);
+        if (m != null) {
+            m.countFrame(ws.getContourCount(), fingers.size());
+        }
+        modes.update(im, ws);
+
+        double scale = ws.getScale();
+        if (scale != 1.0) {
+            // normalize to a `Config.IM_HEIGHT` image, so that the tracker keeps its thresholds
+            for (Point pt : fingers) {
+                pt.x /= scale;
+                pt.y /= scale;
+            }
+            for (int i = 0; i < ws.getContourCount(); ++i) {
+                Core.multiply(ws.getContour(i), new Scalar(1.0 / scale, 1.0 / scale), ws.getContour(i));
+            }
+        }
+        return fingers;
+    }
+
+    private List<TapDetectPoint> detect(Mat im, long timestampMs,
+                                        List<List<Point>> contoursOutput,
+                                        List<TapDetectPoint> tapDetectPointsOutput
+    ) {
+        /**
+         * Run detection on a preprocessed `im`
+         * @return: all finger tips with their status, in the coordinate of the original image
+         */
+        List<MatOfPoint> contour = new ArrayList<>();
+        List<Point> fingers = findFingers(im, contour);
+        List<TapDetectPoint> taps = track(im, fingers, timestampMs, recoverRatio);
+
+        if (contoursOutput != null) {
+            contoursOutput.clear();
+            for (MatOfPoint cnt : contour) {
+                List<Point> cntPt = cnt.toList();
+                scaleResult(cntPt);
+                contoursOutput.add(cntPt);
+            }
+        }
+
+        for (TapDetectPoint pt : taps) {
+            pt.x *= recoverRatio;
+            pt.y *= recoverRatio;
+        }
+
+        if (tapDetectPointsOutput != null) {
+            tapDetectPointsOutput.clear();
+            tapDetectPointsOutput.addAll(taps);
+        }
+        return taps;
+    }
+
+    private boolean checkTime(long t) {
+        /**
+         * @param t: capture time of the frame
+         *      a frame older than the last processed one (e.g. the stream restarted) is always processed,
+         *      the tracker forgets the last frame then
+         */
+        if (throttled && t >= lastProcess && t - lastProcess < minInterval()) {
+            // too higher the camera fps
+            return false;
+        } else {
+            processInterval = t - lastProcess;
+            lastProcess = t;
+            return true;
+        }
+    }
+
+    private long minInterval() {
+        return modes.getIntervalMs(sensibility.getProcessIntervalMs());
+    }
+
+    private int preprocess(Mat im, long timestampMs) {
+        return preprocess(im, null, timestampMs);
+    }
+
+    private int preprocess(Mat im, YuvFrame yuv, long timestampMs) {
+        /**
+         * @param yuv: if is not null, the raw frame to build `im` from
+         * @return: `FrameResult.PROCESSED` if detection could be carried out on `im`,
+         *      otherwise why not
+         */
+        // check time
+        if (!checkTime(timestampMs)) {
+            Metrics m = metrics;
+            if (m != null) {
+                m.countThrottled();
+            }
+            return FrameResult.THROTTLED;
+        }
+        frameStartNanos = System.nanoTime();
+
+        Workspace ws = getWorkspace();
+        ws.setMorphologyEnabled(true);
+        ws.setScale(1.0);
+        modes.prepare(ws);
+        int height = Config.IM_HEIGHT, blurSize = Config.IM_BLUR_SIZE;
+        detectedByMode = false;
+        if (calibration.isCompleted()) {
+            if (modes.detects(yuv)) {
+                // resized and converted by the mode itself
+                detectedByMode = true;
+                recoverRatio = (double) im.rows() / Config.IM_HEIGHT;
+                modes.invalidate();
+                return FrameResult.PROCESSED;
+            }
+            if (isStill(im, yuv, timestampMs)) {
+                return FrameResult.STILL;
+            }
+            height = modes.getHeight(height);
+            blurSize = modes.getBlurSize(blurSize);
+        }
+
+        // finger tips will be normalized to a `Config.IM_HEIGHT` image by `findFingers`
+        recoverRatio = convert(im, yuv, height, blurSize) * height / Config.IM_HEIGHT;
+        ws.setScale((double) height / Config.IM_HEIGHT);
+        return calibrate(im) ? FrameResult.PROCESSED : FrameResult.CALIBRATING;
+    }
+
+    private boolean isStill(Mat im, YuvFrame yuv, long timestampMs) {
+        /**
+         * Check the raw frame with the motion gate, hold the tracker if the frame is skipped
+         * @return: whether nothing moved and no finger tip would change its status, i.e. the frame could be skipped
+         */
+        if (!modes.isStatic(im, yuv, getWorkspace()) || !tapDetector.isSteady()) {
+            // a falling tip at rest is a tap, judged on the frame as usual
+            return false;
+        }
+        tapDetector.hold(timestampMs);
+        frameStartNanos = 0;
+        Metrics m = metrics;
+        if (m != null) {
+            m.countStatic();
+        }
+        return true;
+    }
+
+    double convert(Mat im) {
+        /**
+         * Resize `im` to the standard size, convert it into YCrCb and blur it
+         * @return: the ratio to recover a point to the coordinate of the original image
+         */
+        return convert(im, null, Config.IM_HEIGHT, Config.IM_BLUR_SIZE);
+    }
+
+    private double convert(Mat im, YuvFrame yuv, int height, int blurSize) {
+        /**
+         * @param yuv: if is not null, `im` is built from it instead of converted in place
+         */
+        Metrics m = metrics;
+        long t = m == null ? 0 : System.nanoTime();
+
+        double ratio;
+        if (yuv != null) {
+            // resized and converted at once, recorded as color conversion
+            ratio = 1.0 / yuv.toYCrCb(height, im, ingestBuffers);
+            if (m != null) {
+                t = m.record(Metrics.COLOR, t);
+            }
+        } else {
+            ratio = 1.0 / Util.resize(im, height);
+            if (m != null) {
+                t = m.record(Metrics.RESIZE, t);
+            }
+            Imgproc.cvtColor(im, im, Imgproc.COLOR_BGR2YCrCb);
+            if (m != null) {
+                t = m.record(Metrics.COLOR, t);
+            }
+        }
+        Imgproc.blur(im, im, new Size(blurSize, blurSize));
+        if (m != null) {
+            m.record(Metrics.BLUR, t);
+        }
+        return ratio;
+    }
+
+    synchronized boolean calibrate(Mat im) {
+        /**
+         * Sample a converted `im` if sampling is not completed yet
+         * @return: whether detection could be carried out on `im`
+         */
+        if (!calibration.calibrate(im)) {
+            Metrics m = metrics;
+            if (m != null) {
+                m.countCalibrating();
+            }
+            return false;
+        }
+        return true;
+    }
+
+    synchronized List<TapDetectPoint> track(Mat im, List<Point> fingers, long timestampMs, double ratio) {
+        /**
+         * Judge the status of `fingers` by the tracker of this session, and publish the events
+         * @param ratio: the ratio to recover a point to the coordinate of the original image
+         */
+        Metrics m = metrics;
+        long t = m == null ? 0 : System.nanoTime();
+        List<TapDetectPoint> taps = tapDetector.getTappingAll(im, fingers, timestampMs);
+        if (m != null) {
+            m.record(Metrics.TRACK, t);
+        }
+
+        if (eventStream != null) {
+            eventStream.publishFrame(tapDetector.getReleased(), taps, timestampMs, ratio);
+        }
+        if (frameStartNanos != 0) {
+            double costMs = (System.nanoTime() - frameStartNanos) / 1e6;
+            frameStartNanos = 0;
+            if (modes.onFrame(costMs, throttled ? sensibility.getProcessIntervalMs() : 0)) {
+                modes.resize();
+            }
+        }
+        return taps;
+    }
+
+    Metrics metrics() {
+        return metrics;
+    }
+
+    synchronized boolean hasDetectionModes() {
+        // whether any mode beyond the plain detection path of `TapPipeline` is on
+        return !modes.isEmpty();
+    }
+
+    private Mat getIngest() {
+        if (ingest == null) {
+            ingest = new Mat();
+        }
+        return ingest;
+    }
+
+    private Workspace getWorkspace() {
+        if (workspace == null) {
+            workspace = new Workspace();
+            workspace.setMetrics(metrics);
+        }
+        return workspace;
+    }
+
+    private void scaleResult(List<Point> result) {
+        for (Point pt : result) {
+            pt.x *= recoverRatio;
+            pt.y *= recoverRatio;
+        }
+    }
+
+    private List<Point> select(List<TapDetectPoint> tips, boolean pressing) {
+        /**
+         * @return: the tapping, or pressing, ones of `tips`, kept as the result of the next skipped frames
+         */
+        List<Point> ret = new ArrayList<>();
+        for (TapDetectPoint pt : tips) {
+            if (pressing ? pt.isPressing() : pt.isTapping()) {
+                ret.add(pt);
+            }
+        }
+        resultCache.clear();
+        resultCache.addAll(ret);
+        return ret;
+    }
+}
@@ -0,0 +1,228 @@
+package tapdetect.facade;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import tapdetect.ColorRange;
+import tapdetect.Config;
+import tapdetect.TapDetector.TapDetectPoint;
+
+/**
+ * Headless tap detection of a recorded video, as fast as the CPU allows
+ * <br>The video is split into chunks of `Config.OFFLINE_CHUNK_FRAMES` frames processed on all cores.
+ * <br>Calibration is sampled once from the beginning of the video, like a live session does,
+ * <br>and copied into the session of every chunk.
+ * <br>Each chunk starts `Config.OFFLINE_WARMUP_FRAMES` frames earlier to warm up its tracker,
+ * <br>events are only reported by the chunk owning the frame, so there is no duplicate at chunk boundaries.
+ * <br>Instead of the wall clock, one frame every `Config.PROCESS_INTERVAL_MS` of video time is processed,
+ * <br>counted from the first frame, so that every chunk processes the same frames as a single pass would.
+ * <br>Frames are passed to `TapSession` with their video time, so tracking does not depend on the processing speed.
+ * <br> Usage:
+ * <code>
+ * <br>  List<VideoProcessor.TapEvent> events = new VideoProcessor("session.mp4").process(8);
+ * </code>
+ * <br>or from the command line, printing one event a line:
+ * <code>
+ * <br>  java tapdetect.facade.VideoProcessor session.mp4 [threads]
+ * </code>
+ */
+public class VideoProcessor {
+    public static class TapEvent {
+        public final long frameIndex;
+        public final double timestampMs;
+        public final boolean isTap;  // a tap if true, otherwise a finger keeps pressing
+        public final double x, y;
+
+        TapEvent(long frameIndex, double timestampMs, boolean isTap, double x, double y) {
+            this.frameIndex = frameIndex;
+            this.timestampMs = timestampMs;
+            this.isTap = isTap;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1f,%d,%s,%.1f,%.1f", timestampMs, frameIndex, isTap ? "tap" : "press", x, y);
+        }
+    }
+
+    private final String path;
+    private long frameCount;
+    private double fps;
+    private int stride;  // process one frame every `stride` frames
+
+    public VideoProcessor(String path) {
+        this.path = path;
+    }
+
+    public List<TapEvent> process(int threads) throws InterruptedException {
+        /**
+         * @param threads: number of chunks processed at the same time
+         * @return: all events ordered by frame
+         */
+        VideoCapture capture = open();
+        frameCount = (long) capture.get(Videoio.CAP_PROP_FRAME_COUNT);
+        fps = capture.get(Videoio.CAP_PROP_FPS);
+        if (fps <= 0) {
+            fps = 30;
+        }
+        stride = Math.max(1, (int) Math.round(Config.PROCESS_INTERVAL_MS * fps / 1000.0));
+
+        ColorRange calibration = calibrate(capture);
+        capture.release();
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        List<Future<List<TapEvent>>> chunks = new ArrayList<>();
+        try {
+            if (frameCount <= 0) {
+                // unknown length, can not be split
+                chunks.add(workers.submit(new Chunk(0, Long.MAX_VALUE, calibration)));
+            }
+            for (long start = 0; start < frameCount; start += Config.OFFLINE_CHUNK_FRAMES) {
+                chunks.add(workers.submit(new Chunk(
+                        start, Math.min(start + Config.OFFLINE_CHUNK_FRAMES, frameCount), calibration)));
+            }
+            List<TapEvent> events = new ArrayList<>();
+            for (Future<List<TapEvent>> chunk : chunks) {
+                events.addAll(chunk.get());
+            }
+            return events;
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to process " + path, e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private long timestampOf(long frameIndex) {
+        return Math.round(frameIndex * 1000.0 / fps);
+    }
+
+    private VideoCapture open() {
+        VideoCapture capture = new VideoCapture(path);
+        if (!capture.isOpened()) {
+            throw new IllegalArgumentException("Can not open video " + path);
+        }
+        return capture;
+    }
+
+    long seek(VideoCapture capture, long target) {
+        /**
+         * Move `capture` to the frame `target`
+         * Seeking by `CAP_PROP_POS_FRAMES` is not frame accurate with every backend, e.g. it may land on a key frame,
+         * so the position reached is read back and the frames left are decoded forward,
+         * starting over from the beginning if it went past `target` or is unknown
+         * @return: index of the next frame read from `capture`, `target` unless the video ends before it
+         */
+        long pos = 0;
+        if (target > 0 && capture.set(Videoio.CAP_PROP_POS_FRAMES, target)) {
+            pos = Math.round(capture.get(Videoio.CAP_PROP_POS_FRAMES));
+            if (pos < 0 || pos > target) {
+                capture.release();
+                if (!capture.open(path)) {
+                    throw new IllegalStateException("Can not reopen video " + path);
+                }
+                pos = 0;
+            }
+        }
+        for (; pos < target && capture.grab(); ++pos) {
+            // decode forward
+        }
+        return pos;
+    }
+
+    private ColorRange calibrate(VideoCapture capture) {
+        /**
+         * Sample frames from the beginning of the video until sampling completes
+         * @return: the calibrated color range
+         */
+        TapSession session = new TapSession();
+        session.setThrottled(false);
+        Mat frame = new Mat();
+        try {
+            for (long i = 0; !session.sampleCompleted(); ++i) {
+                if (!capture.read(frame)) {
+                    throw new IllegalStateException("Sampling never completes in " + path);
+                }
+                if (i % stride == 0) {
+                    session.getAll(frame, timestampOf(i), null, null);
+                }
+            }
+            return session.getColorRange();
+        } finally {
+            frame.release();
+            session.release();
+        }
+    }
+
+    private class Chunk implements Callable<List<TapEvent>> {
+        private final long start, end;  // frames owned by this chunk
+        private final ColorRange calibration;
+
+        Chunk(long start, long end, ColorRange calibration) {
+            this.start = start;
+            this.end = end;
+            this.calibration = calibration;
+        }
+
+        @Override
+        public List<TapEvent> call() {
+            List<TapEvent> events = new ArrayList<>();
+
+            TapSession session = new TapSession();
+            session.setThrottled(false);
+            session.getColorRange().copyFrom(calibration);
+
+            // begin at a processed frame, so that the tracker sees the same frames as a single pass
+            long first = Math.max(start - Config.OFFLINE_WARMUP_FRAMES, 0) / stride * stride;
+            VideoCapture capture = open();
+            Mat frame = new Mat();
+            List<TapDetectPoint> points = new ArrayList<>();
+            try {
+                for (long i = seek(capture, first); i < end && capture.read(frame); ++i) {
+                    if (i % stride != 0) {
+                        continue;
+                    }
+                    session.getAll(frame, timestampOf(i), null, points);
+                    if (i < start) {
+                        continue;  // warming up
+                    }
+                    for (TapDetectPoint pt : points) {
+                        if (pt.isTapping() || pt.isPressing()) {
+                            events.add(new TapEvent(i, i * 1000.0 / fps, pt.isTapping(), pt.x, pt.y));
+                        }
+                    }
+                }
+            } finally {
+                frame.release();
+                capture.release();
+                session.release();
+            }
+            return events;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: VideoProcessor <video> [threads]");
+            System.exit(1);
+        }
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        for (TapEvent event : new VideoProcessor(args[0]).process(threads)) {
+            System.out.println(event);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package tapdetect;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The straightforward paths of the baseline, which the optimized ones are compared with
+ */
+final class Baseline {
+    private Baseline() {
+    }
+
+    static List<MatOfPoint> largeContours(Mat im, int area) {
+        // `Util.largeContours`: contours of the whole image, filtered by area
+        List<MatOfPoint> contours = new ArrayList<>();
+        Mat hierarchy = new Mat();
+        Imgproc.findContours(im, contours, hierarchy, 1, Imgproc.RETR_LIST);
+        hierarchy.release();
+
+        List<MatOfPoint> ret = new ArrayList<>();
+        for (MatOfPoint cnt : contours) {
+            if (Imgproc.contourArea(cnt) > area) {
+                ret.add(cnt);
+            } else {
+                cnt.release();
+            }
+        }
+        return ret;
+    }
+
+    static List<Point> getFingers(Mat hand, List<MatOfPoint> contourOutput) {
+        // `FingerDetector.getFingers`: `Point` lists and a `Mat.get` for each apex, dilates `hand`
+        List<MatOfPoint> contours = largeContours(hand, Config.HAND_AREA_MIN);
+        Imgproc.dilate(hand, hand, Mat.ones(new Size(5, 5), CvType.CV_8UC1));
+
+        ArrayList<Point> fingerTips = new ArrayList<>();
+        for (MatOfPoint cnt : contours) {
+            MatOfPoint2f approx = new MatOfPoint2f(), cntCvt = new MatOfPoint2f();
+            cnt.convertTo(cntCvt, CvType.CV_32FC2);
+            Imgproc.approxPolyDP(cntCvt, approx, 5, true);
+            approx.convertTo(cnt, CvType.CV_32S);
+
+            fingerTips.addAll(findFingerTips(approx.toList(), hand));
+            approx.release();
+            cntCvt.release();
+        }
+        if (contourOutput != null) {
+            contourOutput.addAll(contours);
+        }
+        return fingerTips;
+    }
+
+    private static List<Point> findFingerTips(List<Point> contour, Mat hand) {
+        int len = contour.size();
+
+        Point[] diffN = new Point[len];
+        Point[] diffP = new Point[len];
+        double[] dist = new double[len];
+        for (int i = 0; i < len; ++i) {
+            int next_i = (i == len - 1) ? 0 : (i + 1);
+            int prev_i = (i == 0) ? (len - 1) : (i - 1);
+            Point p = contour.get(i), next = contour.get(next_i), prev = contour.get(prev_i);
+
+            diffN[i] = new Point(next.x - p.x, next.y - p.y);
+            diffP[i] = new Point(prev.x - p.x, prev.y - p.y);
+            dist[i] = Math.sqrt(diffN[i].x * diffN[i].x + diffN[i].y * diffN[i].y);
+        }
+
+        boolean[] isConvex = new boolean[len];
+        double[] tan = new double[len];
+        for (int i = 0; i < len; ++i) {
+            int next_i = (i == len - 1) ? 0 : (i + 1);
+            int prev_i = (i == 0) ? (len - 1) : (i - 1);
+            Point p = contour.get(i), next = contour.get(next_i), prev = contour.get(prev_i);
+
+            isConvex[i] = isConvexPoint(p, prev, next, hand);
+            if (isConvex[i]) {
+                tan[i] = diffN[i].y / diffN[i].x;
+            }
+        }
+
+        List<Point> ret = new ArrayList<>();
+        for (int i = 0; i < len; ++i) {
+            if (!isConvex[i]) {
+                continue;
+            }
+            int next_i = (i == len - 1) ? 0 : (i + 1);
+
+            boolean isLowestLocal = diffP[i].y < 0 && diffN[i].y < 0;
+            boolean isLowestPair = diffP[i].y <= 0 && diffN[next_i].y <= 0;
+            boolean isFlat = Math.abs(tan[i]) < 0.5;
+            double distRatio = dist[i] / (double) Config.FINGER_TIP_WIDTH;
+            boolean goodDist = distRatio < 2 && distRatio > 0.5;
+            boolean isColumn = isConvex[next_i] && isLowestPair && isFlat && goodDist;
+
+            Point p = contour.get(i);
+            if (isLowestLocal) {
+                ret.add(p.clone());
+            }
+            if (isColumn) {
+                ret.add(new Point((p.x + contour.get(next_i).x) / 2.0, (p.y + contour.get(next_i).y) / 2.0));
+            }
+        }
+        return ret;
+    }
+
+    private static boolean isConvexPoint(Point p, Point prev, Point next, Mat hand) {
+        Point center = Util.incenter(p, prev, next);
+        double tanNormal = (center.y - p.y) / (center.x - p.x);
+
+        int dx = (Math.abs(tanNormal) > 2.414) ? 0 : (center.x > p.x ? 5 : -5);
+        int dy = (Math.abs(tanNormal) < 0.414) ? 0 : (center.y > p.y ? 5 : -5);
+
+        // the baseline reads outside of `hand` as a null pixel, taken as not in the hand here
+        double[] pixel = hand.get((int) p.y + dy, (int) p.x + dx);
+        return center.y < p.y && pixel != null && pixel[0] > 0;
+    }
+}
@@ -0,0 +1,119 @@
+package tapdetect;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * `FingerDetector.getFingers` works on primitive buffers of a `Workspace`,
+ * <br>it has to find exactly the finger tips of the `Point` based baseline.
+ */
+public class FingerDetectorTest {
+    private Workspace ws;
+
+    @Before
+    public void setUp() {
+        Fixtures.loadOpencv();
+        ws = new Workspace();
+    }
+
+    @Test
+    public void framesSameAsBaseline() {
+        Fixtures.forEachFrame(Config.IM_HEIGHT, new Fixtures.FrameCheck() {
+            @Override
+            public void check(String name, Mat ycrcb, int fingers) {
+                Mat hand = new Mat();
+                if (fingers >= 0) {
+                    Core.inRange(ycrcb, offset(Fixtures.SKIN, -10), offset(Fixtures.SKIN, 10), hand);
+                } else {
+                    HandDetector.getHand(ycrcb, new ColorRange()).copyTo(hand);
+                }
+                int found = assertSameAsBaseline(name, ycrcb, hand);
+                assertTrue(name, fingers <= 0 || found > 0);
+                hand.release();
+            }
+        });
+    }
+
+    @Test
+    public void randomBlobsSameAsBaseline() {
+        // blobs of any shape, touching the borders as well
+        Random random = new Random(15);
+        for (int round = 0; round < 30; ++round) {
+            Mat hand = Mat.zeros(Config.IM_HEIGHT, Config.IM_HEIGHT * 4 / 3, CvType.CV_8UC1);
+            for (int i = 0; i < 8; ++i) {
+                Point center = new Point(random.nextInt(hand.cols()), random.nextInt(hand.rows()));
+                Size axes = new Size(5 + random.nextInt(60), 5 + random.nextInt(60));
+                Imgproc.ellipse(hand, center, axes, random.nextInt(180), 0, 360, Util.SCALAR_WHITE, -1);
+            }
+            Mat im = new Mat(hand.size(), CvType.CV_8UC3, new Scalar(Fixtures.SKIN));
+            assertSameAsBaseline("round " + round, im, hand);
+            im.release();
+            hand.release();
+        }
+    }
+
+    @Test
+    public void workspaceReusedAcrossSizes() {
+        // buffers only grow, a smaller frame after a bigger one reads no stale pixels
+        for (int height : new int[]{500, Config.IM_HEIGHT, 120}) {
+            Mat im = Fixtures.synthetic(height, 10, height);
+            Mat hand = new Mat();
+            Core.inRange(im, offset(Fixtures.SKIN, -10), offset(Fixtures.SKIN, 10), hand);
+            assertSameAsBaseline("height " + height, im, hand);
+            hand.release();
+            im.release();
+        }
+    }
+
+    private int assertSameAsBaseline(String message, Mat im, Mat hand) {
+        // @return: number of finger tips found
+        Mat expectedHand = hand.clone(), actualHand = hand.clone();
+        List<MatOfPoint> expectedContours = new ArrayList<>(), actualContours = new ArrayList<>();
+        List<Point> expected = Baseline.getFingers(expectedHand, expectedContours);
+        List<Point> actual = FingerDetector.getFingers(im, actualHand, actualContours, ws);
+
+        assertEquals(message + ": contours", expectedContours.size(), actualContours.size());
+        assertEquals(message + ": finger tips", sorted(expected).toString(), sorted(actual).toString());
+        Fixtures.assertMaxDiff(message + ": dilated hand", expectedHand, actualHand, 0);
+
+        for (MatOfPoint cnt : expectedContours) {
+            cnt.release();
+        }
+        expectedHand.release();
+        actualHand.release();
+        return actual.size();
+    }
+
+    private static List<Point> sorted(List<Point> points) {
+        // contours may be found in another order
+        List<Point> ret = new ArrayList<>(points);
+        Collections.sort(ret, new Comparator<Point>() {
+            @Override
+            public int compare(Point a, Point b) {
+                return a.y != b.y ? Double.compare(a.y, b.y) : Double.compare(a.x, b.x);
+            }
+        });
+        return ret;
+    }
+
+    private static Scalar offset(double[] color, double d) {
+        return new Scalar(color[0] + d, color[1] + d, color[2] + d);
+    }
+}
@@ -0,0 +1,174 @@
+package tapdetect;
+
+import org.junit.Assume;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Fixtures of the tests
+ * <br>Tests needing opencv call `loadOpencv()` first, they are skipped where the native library is missing,
+ * <br>e.g. run them by `gradle -p benchmark test` on a desktop.
+ */
+public final class Fixtures {
+    private static Boolean loaded = null;
+
+    public interface FrameCheck {
+        /**
+         * @param name: telling the frame in messages
+         * @param ycrcb: a preprocessed frame, released once checked
+         * @param fingers: fingers in the frame, -1 for a snapshot
+         */
+        void check(String name, Mat ycrcb, int fingers);
+    }
+
+    // colors of the generated frames, in YCrCb
+    public static final double[] SKIN = {150, 150, 110};
+    public static final double[] BACKGROUND = {70, 128, 128};
+
+    private Fixtures() {
+    }
+
+    public static synchronized void loadOpencv() {
+        if (loaded == null) {
+            try {
+                System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+                loaded = true;
+            } catch (UnsatisfiedLinkError e) {
+                loaded = false;
+            }
+        }
+        Assume.assumeTrue("opencv native library is not available", loaded);
+    }
+
+    static Mat snapshot(String name) {
+        /**
+         * @return: a BGR snapshot in `snapshots/` of `Config.IM_HEIGHT` rows
+         */
+        File file = new File(System.getProperty("tapdetect.snapshots", "snapshots"), name);
+        Mat im = Imgcodecs.imread(file.getPath());
+        Assume.assumeFalse("snapshot " + file + " is not available", im.empty());
+        Util.resize(im);
+        return im;
+    }
+
+    static Mat preprocessed(String name) {
+        // a snapshot through the preprocessing of `TapSession.convert`
+        Mat im = snapshot(name);
+        Imgproc.cvtColor(im, im, Imgproc.COLOR_BGR2YCrCb);
+        Imgproc.blur(im, im, new Size(Config.IM_BLUR_SIZE, Config.IM_BLUR_SIZE));
+        return im;
+    }
+
+    public static Mat synthetic(int height, int fingers, long seed) {
+        /**
+         * @return: a YCrCb frame of `height` rows with `fingers` fingers hanging down from palms,
+         *      pixels get a noise of a few levels so that the edges are not all straight
+         */
+        int width = height * 4 / 3;
+        Mat im = new Mat(height, width, CvType.CV_8UC3, new Scalar(BACKGROUND));
+        Scalar skin = new Scalar(SKIN);
+        Random random = new Random(seed);
+
+        double slot = width / (fingers + 1.0);
+        int fingerWidth = (int) Math.max(slot / 2, 2);
+        for (int hand = 0; hand * 5 < fingers; ++hand) {
+            int first = hand * 5, last = Math.min(first + 5, fingers) - 1;
+            Imgproc.rectangle(im,
+                    new Point(slot * (first + 1) - fingerWidth, height * 0.35),
+                    new Point(slot * (last + 1) + fingerWidth, height * 0.5),
+                    skin, -1);
+        }
+        for (int i = 0; i < fingers; ++i) {
+            double x = slot * (i + 1);
+            double bottom = height * (0.6 + 0.2 * random.nextDouble());
+            Imgproc.ellipse(im, new Point(x, bottom), new Size(fingerWidth / 2, fingerWidth / 2), 0, 0, 360, skin, -1);
+            Imgproc.rectangle(im,
+                    new Point(x - fingerWidth / 2, height * 0.45), new Point(x + fingerWidth / 2, bottom),
+                    skin, -1);
+        }
+
+        addNoise(im, seed);
+        return im;
+    }
+
+    public static ColorRange skinRange() {
+        // a range calibrated on the skin of `Fixtures.synthetic`
+        ColorRange colorRange = new ColorRange();
+        double n = 100;
+        double[] sum = new double[3], sqSum = new double[3];
+        for (int ch = 0; ch < 3; ++ch) {
+            double aver = SKIN[ch] + 2.5, std = 4;
+            sum[ch] = aver * n;
+            sqSum[ch] = (aver * aver + std * std) * n;
+        }
+        colorRange.updateRange(sum, sqSum, (int) n);
+        return colorRange;
+    }
+
+    public static void addNoise(Mat im, long seed) {
+        /**
+         * Add a noise of 0 ~ 5 levels to every channel of a CV_8UC3 `im`, the same noise for the same seed
+         */
+        Mat noise = new Mat(im.size(), CvType.CV_8UC3);
+        Core.setRNGSeed((int) seed);
+        Core.randu(noise, 0, 6);
+        Core.add(im, noise, im);
+        noise.release();
+    }
+
+    static void forEachFrame(int height, FrameCheck check) {
+        /**
+         * Run `check` on synthetic frames of `height` rows with 0, 5, ..., 20 fingers,
+         * then on the preprocessed snapshots if `height` is `Config.IM_HEIGHT`, where they are available
+         */
+        for (int fingers = 0; fingers <= 20; fingers += 5) {
+            Mat im = synthetic(height, fingers, fingers);
+            check.check(height + " rows, " + fingers + " fingers", im, fingers);
+            im.release();
+        }
+        if (height == Config.IM_HEIGHT) {
+            for (String name : new String[]{"detection.jpg", "sample.jpg"}) {
+                Mat im = preprocessed(name);
+                check.check(name, im, -1);
+                im.release();
+            }
+        }
+    }
+
+    static Mat randomImage(int rows, int cols, int type, long seed) {
+        // uniformly random pixels of all levels
+        Mat im = new Mat(rows, cols, type);
+        byte[] pixels = new byte[(int) (im.total() * im.channels())];
+        new Random(seed).nextBytes(pixels);
+        im.put(0, 0, pixels);
+        return im;
+    }
+
+    static void assertMaxDiff(String message, Mat expected, Mat actual, double tolerance) {
+        /**
+         * Assert two images of the same shape and type differ by at most `tolerance` levels in any pixel
+         */
+        org.junit.Assert.assertEquals(message + ": size", expected.size(), actual.size());
+        org.junit.Assert.assertEquals(message + ": type", expected.type(), actual.type());
+        Mat diff = new Mat();
+        Core.absdiff(expected, actual, diff);
+        double max = 0;
+        for (int ch = 0; ch < diff.channels(); ++ch) {
+            Mat plane = new Mat();
+            Core.extractChannel(diff, plane, ch);
+            max = Math.max(max, Core.minMaxLoc(plane).maxVal);
+            plane.release();
+        }
+        diff.release();
+        org.junit.Assert.assertTrue(message + ": max difference " + max + " > " + tolerance, max <= tolerance);
+    }
+}
@@ -0,0 +1,107 @@
+package tapdetect;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * `ParallelSegmenter` stitches masks of strips segmented with a halo,
+ * <br>it has to give exactly the hand mask of `HandDetector.getHand` and its 5x5 dilation of `FingerDetector`.
+ */
+public class ParallelSegmenterTest {
+    private final int threads = Config.SEGMENT_THREADS;
+    private final int rowsMin = Config.SEGMENT_STRIP_ROWS_MIN;
+    private final int lutModel = Config.SKIN_LUT_MODEL;
+    private ParallelSegmenter segmenter;
+
+    @Before
+    public void setUp() {
+        Fixtures.loadOpencv();
+        segmenter = new ParallelSegmenter();
+        Config.SEGMENT_THREADS = 4;
+        Config.SEGMENT_STRIP_ROWS_MIN = 8;
+    }
+
+    @After
+    public void tearDown() {
+        Config.SEGMENT_THREADS = threads;
+        Config.SEGMENT_STRIP_ROWS_MIN = rowsMin;
+        Config.SKIN_LUT_MODEL = lutModel;
+        if (segmenter != null) {
+            segmenter.release();
+        }
+    }
+
+    @Test
+    public void framesSameAsSequential() {
+        final ColorRange skinRange = Fixtures.skinRange();
+        for (int lut = -1; lut <= SkinLut.MODEL_GAUSSIAN; ++lut) {
+            Config.SKIN_LUT_MODEL = lut;
+            final String model = "lut " + lut + ", ";
+            for (int height : new int[]{Config.IM_HEIGHT, 97, 480}) {
+                Fixtures.forEachFrame(height, new Fixtures.FrameCheck() {
+                    @Override
+                    public void check(String name, Mat ycrcb, int fingers) {
+                        ColorRange colorRange = fingers >= 0 ? skinRange : new ColorRange();
+                        int skin = assertSameAsSequential(model + name, ycrcb, colorRange, true);
+                        assertTrue(model + name, fingers <= 0 || skin > 0);
+                        assertSameAsSequential(model + name + ", no morphology", ycrcb, colorRange, false);
+                    }
+                });
+            }
+        }
+    }
+
+    @Test
+    public void poolFollowsTheSetting() {
+        Mat im = Fixtures.synthetic(Config.IM_HEIGHT, 5, 0);
+        ColorRange colorRange = Fixtures.skinRange();
+        assertSameAsSequential("4 threads", im, colorRange, true);
+        ForkJoinPool old = segmenter.pool;
+        assertEquals(4, old.getParallelism());
+
+        Config.SEGMENT_THREADS = 3;
+        assertSameAsSequential("3 threads", im, colorRange, true);
+        assertEquals(3, segmenter.pool.getParallelism());
+        assertTrue(old.isShutdown());
+
+        old = segmenter.pool;
+        segmenter.release();
+        assertTrue(old.isShutdown());
+        assertNull(segmenter.pool);
+        assertSameAsSequential("after release", im, colorRange, true);
+        im.release();
+    }
+
+    private int assertSameAsSequential(String message, Mat im, ColorRange colorRange, boolean morphology) {
+        /**
+         * @return: pixels of the hands
+         */
+        Workspace expected = new Workspace(), actual = new Workspace();
+        expected.setMorphologyEnabled(morphology);
+        actual.setMorphologyEnabled(morphology);
+
+        HandDetector.getHand(im, colorRange, expected);
+        Mat dilated = new Mat();
+        Imgproc.dilate(expected.hand, dilated, expected.kernel5);
+        segmenter.getHand(im, colorRange, actual);
+
+        assertTrue(message, actual.handDilatedReady);
+        Fixtures.assertMaxDiff(message + ": hand", expected.hand, actual.hand, 0);
+        Fixtures.assertMaxDiff(message + ": dilated", dilated, actual.handDilated, 0);
+        int skin = Core.countNonZero(expected.hand);
+        dilated.release();
+        expected.release();
+        actual.release();
+        return skin;
+    }
+}
@@ -0,0 +1,129 @@
+package tapdetect;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * On a 720p frame of fingers hanging down to known rows,
+ * <br>finger tips refined at the fine resolution are closer to those rows than tips found at `Config.IM_HEIGHT`,
+ * <br>and `refine` leaves a tip where it is when the finger runs on beyond the window.
+ */
+public class PyramidDetectorTest {
+    private static final int ROWS = 720, COLS = 960;
+    private static final int FINGER_WIDTH = 36;
+    // the lowest row of every finger, in pixels of the frame, most of them between two rows of a `Config.IM_HEIGHT` image
+    private static final int[] TIP_ROWS = {481, 497, 512, 530, 545};
+
+    private PyramidDetector detector;
+    private final ColorRange colorRange = Fixtures.skinRange();
+    private Workspace ws;
+    private Mat frame;
+
+    @Before
+    public void setUp() {
+        Fixtures.loadOpencv();
+        detector = new PyramidDetector();
+        ws = new Workspace();
+        frame = hand();
+    }
+
+    @After
+    public void tearDown() {
+        frame.release();
+        detector.release();
+        ws.release();
+    }
+
+    @Test
+    public void refinedTipsCloserThanWorkingHeight() {
+        double toWork = (double) Config.IM_HEIGHT / ROWS;
+
+        List<Point> refined = detector.getFingers(frame, colorRange, ws, null);
+        double refinedError = meanError(refined, toWork);
+
+        Mat im = frame.clone();
+        Util.resize(im, Config.IM_HEIGHT);
+        Imgproc.cvtColor(im, im, Imgproc.COLOR_BGR2YCrCb);
+        Imgproc.blur(im, im, new Size(Config.IM_BLUR_SIZE, Config.IM_BLUR_SIZE));
+        Mat hand = HandDetector.getHand(im, colorRange, ws);
+        List<Point> coarse = FingerDetector.getFingers(im, hand, null, ws);
+        double coarseError = meanError(coarse, toWork);
+        im.release();
+
+        assertTrue("refined " + refinedError + ", " + Config.IM_HEIGHT + " rows " + coarseError,
+                refinedError < coarseError);
+        // within a row of a `Config.IM_HEIGHT` image
+        assertTrue("refined " + refinedError, refinedError < (double) ROWS / Config.IM_HEIGHT);
+    }
+
+    @Test
+    public void tipLeftWhenFingerRunsPastWindow() {
+        int half = (int) Math.ceil(Config.PYRAMID_WINDOW * (double) ROWS / Config.IM_HEIGHT);
+        int reach = (int) Math.round(Config.FINGER_TIP_WIDTH * (double) ROWS / Config.IM_HEIGHT / 2);
+
+        // well above the lowest row, the finger goes on below the window
+        Point tip = new Point(fingerX(0), TIP_ROWS[0] - half * 3);
+        assertFalse(detector.refine(frame, tip, half, 1.0, reach, colorRange, ws));
+        assertEquals(new Point(fingerX(0), TIP_ROWS[0] - half * 3), tip);
+
+        // near the lowest row, moved onto it
+        tip = new Point(fingerX(0) + 5, TIP_ROWS[0] - half / 2);
+        assertTrue(detector.refine(frame, tip, half, 1.0, reach, colorRange, ws));
+        assertEquals(TIP_ROWS[0], tip.y, 1);
+        assertEquals(fingerX(0), tip.x, 2);
+    }
+
+    private double meanError(List<Point> tips, double toWork) {
+        /**
+         * @param tips: in the coordinate of a `Config.IM_HEIGHT` image, one near every finger
+         * @return: mean distance of the rows of `tips` from those of the fingers, in pixels of the frame
+         */
+        assertEquals(TIP_ROWS.length, tips.size());
+        double sum = 0;
+        for (int i = 0; i < TIP_ROWS.length; ++i) {
+            Point nearest = null;
+            for (Point pt : tips) {
+                if (nearest == null || Math.abs(pt.x / toWork - fingerX(i)) < Math.abs(nearest.x / toWork - fingerX(i))) {
+                    nearest = pt;
+                }
+            }
+            assertEquals("finger " + i, fingerX(i), nearest.x / toWork, FINGER_WIDTH / 2);
+            sum += Math.abs(nearest.y / toWork - TIP_ROWS[i]);
+        }
+        return sum / TIP_ROWS.length;
+    }
+
+    private static double fingerX(int i) {
+        return COLS / (TIP_ROWS.length + 1.0) * (i + 1);
+    }
+
+    private static Mat hand() {
+        // a BGR frame of a palm with fingers hanging down to `TIP_ROWS`, in the colors of `Fixtures`
+        Mat im = new Mat(ROWS, COLS, CvType.CV_8UC3, new Scalar(Fixtures.BACKGROUND));
+        Scalar skin = new Scalar(Fixtures.SKIN);
+        int r = FINGER_WIDTH / 2;
+        Imgproc.rectangle(im, new Point(fingerX(0) - r, ROWS * 0.35),
+                new Point(fingerX(TIP_ROWS.length - 1) + r, ROWS * 0.5), skin, -1);
+        for (int i = 0; i < TIP_ROWS.length; ++i) {
+            double x = fingerX(i);
+            Imgproc.rectangle(im, new Point(x - r, ROWS * 0.45), new Point(x + r, TIP_ROWS[i] - r), skin, -1);
+            Imgproc.ellipse(im, new Point(x, TIP_ROWS[i] - r), new Size(r, r), 0, 0, 360, skin, -1);
+        }
+        Fixtures.addNoise(im, 16);
+        Imgproc.cvtColor(im, im, Imgproc.COLOR_YCrCb2BGR);
+        return im;
+    }
+}
@@ -0,0 +1,123 @@
+package tapdetect;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The skin of a hand drifts in Cr step by step during detection, as under a slow change of lighting:
+ * <br>the range follows the drift without going back, its std never shrinks below
+ * <br>`Config.RECALIBRATE_STD_MIN_RATIO` of the sampled one though the skin is less noisy than sampled,
+ * <br>and the running statistics restart from the calibration once the `ColorRange` is calibrated again.
+ */
+public class RecalibratorTest {
+    private static final int SHIFT_MAX = 8;
+    private static final Point HAND_TL = new Point(100, 80), HAND_BR = new Point(220, 220);
+
+    private ColorRange colorRange;
+    private Recalibrator recalibrator;
+    private Workspace ws;
+    private int frameCnt = 0;
+
+    @Before
+    public void setUp() {
+        Fixtures.loadOpencv();
+        colorRange = Fixtures.skinRange();
+        recalibrator = new Recalibrator(colorRange);
+        ws = new Workspace();
+        ws.contours.add(new MatOfPoint(HAND_TL, new Point(HAND_BR.x, HAND_TL.y), HAND_BR,
+                new Point(HAND_TL.x, HAND_BR.y)));
+    }
+
+    @After
+    public void tearDown() {
+        recalibrator.release();
+        ws.release();
+    }
+
+    @Test
+    public void rangeFollowsSkinShift() {
+        double sampledStd = colorRange.stdCalibrated[1];
+        double last = colorRange.averCalibrated[1];
+        for (int shift = 0; shift <= SHIFT_MAX; ++shift) {
+            int updates = learn(shift, 10);
+            assertEquals(10, updates);
+            double aver = colorRange.averCalibrated[1];
+            assertTrue("shift " + shift + ": " + aver + " after " + last, aver >= last - 0.05);
+            last = aver;
+            for (int ch = 0; ch < 3; ++ch) {
+                assertTrue("shift " + shift + ", channel " + ch + ": " + colorRange.stdCalibrated[ch],
+                        colorRange.stdCalibrated[ch] >= sampledStd * Config.RECALIBRATE_STD_MIN_RATIO - 1e-9);
+            }
+        }
+        // settled on the shifted skin (+2.5 for the mean of the noise), the range around it
+        learn(SHIFT_MAX, 60);
+        double target = Fixtures.SKIN[1] + SHIFT_MAX + 2.5;
+        assertEquals(target, colorRange.averCalibrated[1], 0.5);
+        assertEquals(sampledStd * Config.RECALIBRATE_STD_MIN_RATIO, colorRange.stdCalibrated[1], 0.1);
+        Scalar[] range = colorRange.getRange();
+        assertTrue(range[0].val[1] < target && target < range[1].val[1]);
+        assertTrue(range[0].val[1] > Fixtures.SKIN[1] + 2.5);
+    }
+
+    @Test
+    public void restartsOnCalibration() {
+        learn(SHIFT_MAX, 100);
+        assertEquals(Fixtures.SKIN[1] + SHIFT_MAX + 2.5, colorRange.averCalibrated[1], 0.5);
+
+        // sampled again, wider than before
+        double n = 100, std = 6;
+        double[] sum = new double[3], sqSum = new double[3];
+        for (int ch = 0; ch < 3; ++ch) {
+            double aver = Fixtures.SKIN[ch] + 2.5;
+            sum[ch] = aver * n;
+            sqSum[ch] = (aver * aver + std * std) * n;
+        }
+        colorRange.updateRange(sum, sqSum, (int) n);
+        long version = colorRange.getVersion();
+
+        // one update starts from the new calibration, only a little towards the shifted skin
+        assertEquals(1, learn(SHIFT_MAX, 1));
+        assertTrue(colorRange.getVersion() > version);
+        double aver = colorRange.averCalibrated[1];
+        assertTrue("restarted at " + aver, aver > Fixtures.SKIN[1] + 2.5 && aver < Fixtures.SKIN[1] + 2.5 + SHIFT_MAX / 2);
+        // and from its std floor
+        for (int ch = 0; ch < 3; ++ch) {
+            assertTrue(colorRange.stdCalibrated[ch] >= std * Config.RECALIBRATE_STD_MIN_RATIO - 1e-9);
+        }
+
+        // reset by the session, sampled again from scratch: nothing to start from
+        colorRange.reset();
+        assertEquals(0, learn(SHIFT_MAX, 5));
+    }
+
+    private int learn(int shift, int updates) {
+        /**
+         * Run `updates` recalibrations on frames of a hand with the skin of `Fixtures` shifted in Cr
+         * @return: how many of them updated `colorRange`
+         */
+        double[] skin = Fixtures.SKIN.clone();
+        skin[1] += shift;
+        int updated = 0;
+        for (int i = 0; i < updates * Config.RECALIBRATE_INTERVAL; ++i) {
+            Mat im = new Mat(Config.IM_HEIGHT, Config.IM_HEIGHT * 4 / 3, CvType.CV_8UC3,
+                    new Scalar(Fixtures.BACKGROUND));
+            Imgproc.rectangle(im, HAND_TL, HAND_BR, new Scalar(skin), -1);
+            Fixtures.addNoise(im, ++frameCnt);
+            if (recalibrator.update(im, ws)) {
+                ++updated;
+            }
+            im.release();
+        }
+        return updated;
+    }
+}
@@ -0,0 +1,133 @@
+package tapdetect;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * The region of the next frame is the padded box of the hands, the padding scaled with the working image,
+ * <br>and the full frame is scanned again when a hand touches an edge of the region inside the frame,
+ * <br>when no hand is found, and every `Config.ROI_RESCAN_INTERVAL` frames.
+ */
+public class RoiTrackerTest {
+    private static final int ROWS = Config.IM_HEIGHT, COLS = Config.IM_HEIGHT * 4 / 3;
+
+    private final RoiTracker tracker = new RoiTracker();
+    private Workspace ws;
+
+    @Before
+    public void setUp() {
+        Fixtures.loadOpencv();
+        ws = new Workspace();
+    }
+
+    @After
+    public void tearDown() {
+        ws.release();
+    }
+
+    @Test
+    public void paddedBoxOfHands() {
+        int pad = Config.ROI_PADDING;
+        assertNull(tracker.next());
+        hands(new Rect(100, 120, 50, 60), new Rect(160, 130, 20, 30));
+        tracker.update(ws, ROWS, COLS);
+        assertEquals(new Rect(100 - pad, 120 - pad, 80 + pad * 2, 60 + pad * 2), tracker.next());
+
+        // twice the working height, twice the padding
+        tracker.reset();
+        ws.setScale(2);
+        assertNull(tracker.next());
+        hands(new Rect(200, 240, 100, 120));
+        tracker.update(ws, ROWS * 2, COLS * 2);
+        assertEquals(new Rect(200 - pad * 2, 240 - pad * 2, 100 + pad * 4, 120 + pad * 4), tracker.next());
+    }
+
+    @Test
+    public void handCutByRegionScansFullFrame() {
+        Rect roi = track(new Rect(100, 120, 50, 60));
+
+        // within the region, it follows
+        hands(new Rect(110, 125, 50, 60));
+        tracker.update(ws, ROWS, COLS);
+        Rect next = tracker.next();
+        assertEquals(new Rect(110 - Config.ROI_PADDING, 125 - Config.ROI_PADDING, 90, 100), next);
+
+        // running to the right edge of the region, it may go on beyond
+        hands(new Rect(next.x + 10, next.y + 10, next.width - 10, 20));
+        tracker.update(ws, ROWS, COLS);
+        assertNull(tracker.next());
+
+        // and to the left, top or bottom edge
+        for (Rect cut : new Rect[]{
+                new Rect(roi.x, roi.y + 10, 20, 20),
+                new Rect(roi.x + 10, roi.y, 20, 20),
+                new Rect(roi.x + 10, roi.y + 10, 20, roi.height - 10)}) {
+            track(new Rect(100, 120, 50, 60));
+            hands(cut);
+            tracker.update(ws, ROWS, COLS);
+            assertNull(cut.toString(), tracker.next());
+        }
+    }
+
+    @Test
+    public void frameEdgesCutNothing() {
+        // the bottom and right edges of the frame, and the face area at the top
+        Rect[] boxes = {
+                new Rect(COLS - 40, ROWS - 50, 40, 50),
+                new Rect(0, ROWS / 4, 60, 60),
+        };
+        for (Rect box : boxes) {
+            Rect roi = track(box);
+            hands(box);
+            tracker.update(ws, ROWS, COLS);
+            assertEquals(roi, tracker.next());
+        }
+    }
+
+    @Test
+    public void rescanWithoutHandsAndPeriodically() {
+        Rect roi = track(new Rect(100, 120, 50, 60));
+        for (int i = 1; i < Config.ROI_RESCAN_INTERVAL; ++i) {
+            assertEquals(roi, tracker.next());
+        }
+        assertNull(tracker.next());
+
+        track(new Rect(100, 120, 50, 60));
+        hands();
+        tracker.update(ws, ROWS, COLS);
+        assertNull(tracker.next());
+    }
+
+    private Rect track(Rect box) {
+        /**
+         * Find the hand in a full frame
+         * @return: the region of the next frame
+         */
+        tracker.reset();
+        assertNull(tracker.next());
+        hands(box);
+        tracker.update(ws, ROWS, COLS);
+        Rect roi = tracker.next();
+        assertEquals(box.x, roi.x + (box.x > 0 ? Config.ROI_PADDING : 0));
+        return roi;
+    }
+
+    private void hands(Rect... boxes) {
+        // hand contours of the last frame with these bounding boxes
+        ws.recycleContours();
+        for (Rect box : boxes) {
+            ws.contours.add(new MatOfPoint(
+                    new Point(box.x, box.y),
+                    new Point(box.x + box.width - 1, box.y),
+                    new Point(box.x + box.width - 1, box.y + box.height - 1),
+                    new Point(box.x, box.y + box.height - 1)));
+        }
+    }
+}
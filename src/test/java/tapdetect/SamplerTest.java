@@ -0,0 +1,110 @@
+package tapdetect;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * `Sampler.sample` reads the sample window in bulk,
+ * <br>it has to update the color range exactly like the per pixel `Mat.get` of the baseline.
+ */
+public class SamplerTest {
+    @Before
+    public void setUp() {
+        Fixtures.loadOpencv();
+    }
+
+    @Test
+    public void sampleFramesSameAsPerPixel() {
+        Fixtures.forEachFrame(Config.IM_HEIGHT, new Fixtures.FrameCheck() {
+            @Override
+            public void check(String name, Mat ycrcb, int fingers) {
+                assertSameAsPerPixel(ycrcb);
+            }
+        });
+    }
+
+    @Test
+    public void sampleAcceptedSameAsPerPixel() {
+        // skin color all over the window with some noise, the range is updated and gets stable
+        Mat im = new Mat(Config.IM_HEIGHT, Config.IM_HEIGHT * 4 / 3, CvType.CV_8UC3, new Scalar(Fixtures.SKIN));
+        Mat noise = Fixtures.randomImage(im.rows(), im.cols(), CvType.CV_8UC3, 1);
+        Core.multiply(noise, new Scalar(0.02, 0.02, 0.02), noise);
+        Core.add(im, noise, im);
+        assertTrue(assertSameAsPerPixel(im).isStable());
+        noise.release();
+        im.release();
+    }
+
+    @Test
+    public void sampleRejectedResetsLikePerPixel() {
+        // nothing near the skin color, both reset the range
+        Mat im = new Mat(Config.IM_HEIGHT, Config.IM_HEIGHT * 4 / 3, CvType.CV_8UC3, new Scalar(Fixtures.BACKGROUND));
+        assertSameAsPerPixel(im);
+        im.release();
+    }
+
+    private static ColorRange assertSameAsPerPixel(Mat im) {
+        ColorRange bulk = new ColorRange(), perPixel = new ColorRange();
+        Sampler sampler = new Sampler(bulk);
+        for (int i = 0; i < Config.SAMPLE_STABLE_CNT; ++i) {
+            sampler.sample(im);
+            samplePerPixel(im, sampler.getSampleWindowContour(), perPixel);
+
+            Scalar[] expected = perPixel.getRange(), actual = bulk.getRange();
+            assertArrayEquals(expected[0].val, actual[0].val, 0);
+            assertArrayEquals(expected[1].val, actual[1].val, 0);
+            assertEquals(perPixel.isStable(), bulk.isStable());
+        }
+        return bulk;
+    }
+
+    private static void samplePerPixel(Mat im, List<Point> window, ColorRange colorRange) {
+        // `Sampler.sample` of the baseline, one `Mat.get` for each pixel
+        Mat mask = Mat.zeros(im.size(), CvType.CV_8UC1);
+        // the window is centered in `im`, so is its center
+        int rowOffset = (im.rows() - Sampler.sampleWindowHeight) / 2;
+        int colOffset = (im.cols() - Sampler.sampleWindowWidth) / 2;
+        Util.fillContour(mask, window, new Point(
+                colOffset + Sampler.sampleWindowWidth / 2, rowOffset + Sampler.sampleWindowHeight / 2));
+
+        List<Point> samplePixels = new ArrayList<>();
+        for (int r = 0; r < im.rows(); r += 4) {
+            for (int c = 0; c < im.cols(); c += 4) {
+                if (mask.get(r, c)[0] > 0) {
+                    samplePixels.add(new Point(c, r));
+                }
+            }
+        }
+        mask.release();
+
+        List<Point> pixelsToUpdate = new ArrayList<>();
+        pixelLoop:
+        for (Point p : samplePixels) {
+            for (int ch = 0; ch < 3; ++ch) {
+                if (Math.abs(im.get((int) p.y, (int) p.x)[ch] - Config.FINGER_COLOR[ch])
+                        >= Config.FINGER_COLOR_TOLERANCE[ch]) {
+                    continue pixelLoop;
+                }
+            }
+            pixelsToUpdate.add(p);
+        }
+
+        if (pixelsToUpdate.size() < samplePixels.size() * Config.SAMPLE_PASS_THRESHOLD) {
+            colorRange.reset();
+        } else {
+            colorRange.updateRange(im, pixelsToUpdate);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package tapdetect;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import java.util.Random;
+
+/**
+ * `SkinLut.MODEL_BOX` has to give exactly the mask of `Core.inRange` with `ColorRange.getRange()`
+ */
+public class SkinLutTest {
+    @Before
+    public void setUp() {
+        Fixtures.loadOpencv();
+    }
+
+    @Test
+    public void boxSameAsInRangeOnAllCrCb() {
+        // the fractional bounds of the review, and bounds at half a level which are rounded to even
+        double[][][] ranges = {
+                {{0, 133.6, 100.4}, {255, 141.5, 129.5}},
+                {{60.5, 132.5, 99.5}, {200.5, 141.49, 130.51}},
+                {{0, 0, 0}, {255, 255, 255}},
+                {{100.2, 150.7, 110.3}, {100.2, 150.7, 110.3}},
+        };
+        for (double[][] range : ranges) {
+            ColorRange colorRange = colorRange(range[0], range[1]);
+            for (int y = 0; y < 256; y += 15) {
+                Mat im = crCbGrid(y);
+                assertSameAsInRange(colorRange, im);
+                im.release();
+            }
+        }
+    }
+
+    @Test
+    public void boxSameAsInRangeOnRandomImages() {
+        Random random = new Random(6);
+        for (int i = 0; i < 20; ++i) {
+            double[] lower = new double[3], upper = new double[3];
+            for (int ch = 0; ch < 3; ++ch) {
+                double a = random.nextInt(25600) / 100.0, b = random.nextInt(25600) / 100.0;
+                lower[ch] = Math.min(a, b);
+                upper[ch] = Math.max(a, b);
+            }
+            Mat im = Fixtures.randomImage(120, 160, CvType.CV_8UC3, i);
+            assertSameAsInRange(colorRange(lower, upper), im);
+            im.release();
+        }
+    }
+
+    @Test
+    public void boxSameAsInRangeOnSubmat() {
+        Mat im = Fixtures.randomImage(120, 160, CvType.CV_8UC3, 7);
+        Mat roi = im.submat(10, 90, 30, 150);
+        assertSameAsInRange(colorRange(new double[]{0, 64.3, 64.5}, new double[]{255, 191.5, 190.6}), roi);
+        roi.release();
+        im.release();
+    }
+
+    private static ColorRange colorRange(double[] lower, double[] upper) {
+        // a calibrated range of exactly [lower, upper]
+        Sensibility sensibility = new Sensibility();
+        sensibility.setColorRangeExpand(new double[]{1, 1, 1});
+        ColorRange colorRange = new ColorRange(sensibility);
+        int n = 100;
+        double[] sum = new double[3], sqSum = new double[3];
+        for (int ch = 0; ch < 3; ++ch) {
+            double aver = (lower[ch] + upper[ch]) / 2, std = (upper[ch] - lower[ch]) / 2;
+            sum[ch] = aver * n;
+            sqSum[ch] = (aver * aver + std * std) * n;
+        }
+        colorRange.updateRange(sum, sqSum, n);
+        return colorRange;
+    }
+
+    private static Mat crCbGrid(int y) {
+        // one pixel for each (Cr, Cb), Cr by rows and Cb by columns
+        byte[] pixels = new byte[256 * 256 * 3];
+        for (int cr = 0, i = 0; cr < 256; ++cr) {
+            for (int cb = 0; cb < 256; ++cb, i += 3) {
+                pixels[i] = (byte) y;
+                pixels[i + 1] = (byte) cr;
+                pixels[i + 2] = (byte) cb;
+            }
+        }
+        Mat im = new Mat(256, 256, CvType.CV_8UC3);
+        im.put(0, 0, pixels);
+        return im;
+    }
+
+    private static void assertSameAsInRange(ColorRange colorRange, Mat im) {
+        Scalar[] range = colorRange.getRange();
+        Mat expected = new Mat(), actual = new Mat();
+        Core.inRange(im, range[0], range[1], expected);
+
+        SkinLut lut = new SkinLut();
+        lut.update(colorRange, SkinLut.MODEL_BOX);
+        lut.classify(im, actual);
+
+        Fixtures.assertMaxDiff("box of " + range[0] + " ~ " + range[1], expected, actual, 0);
+        expected.release();
+        actual.release();
+    }
+}
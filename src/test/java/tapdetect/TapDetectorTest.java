@@ -0,0 +1,139 @@
+package tapdetect;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import tapdetect.TapDetector.TapDetectPoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The tracker judges finger tips by capture time: frames skipped in between, a tip missed for a frame
+ * <br>and a gap longer than `Config.TRACK_GAP_MAX_MS` are checked here, with a move of 25 and a linger of 2 pixels
+ * <br>between frames 50 ms apart.
+ */
+public class TapDetectorTest {
+    private static final int INTERVAL_MS = 50;
+
+    private TapDetector tracker;
+
+    @Before
+    public void setUp() {
+        Sensibility sensibility = new Sensibility();
+        sensibility.setHighPerformance(true);
+        sensibility.setMotionSensibility(1);
+        assertEquals(INTERVAL_MS, sensibility.getProcessIntervalMs());
+        assertEquals(25, sensibility.getMoveDistMax());
+        assertEquals(2, sensibility.getLingerDistMax());
+        tracker = new TapDetector(sensibility);
+    }
+
+    @Test
+    public void tapAcrossASkippedFrame() {
+        TapDetectPoint start = only(track(0, 100, 100));
+        TapDetectPoint falling = only(track(50, 100, 120));
+        assertTrue(falling.isFalling());
+        // the frame of 100 ms is skipped, the tip is at rest since
+        TapDetectPoint tap = only(track(150, 100, 121));
+        assertTrue(tap.isTapping());
+        assertEquals(start.getTrackId(), falling.getTrackId());
+        assertEquals(start.getTrackId(), tap.getTrackId());
+    }
+
+    @Test
+    public void fallFartherThanOneFrameAcrossSkippedFrames() {
+        // 40 pixels in 100 ms is out of reach of one frame, not of two
+        TapDetectPoint start = only(track(0, 100, 100));
+        TapDetectPoint falling = only(track(2 * INTERVAL_MS, 100, 140));
+        assertTrue(falling.isFalling());
+        assertEquals(start.getTrackId(), falling.getTrackId());
+
+        // but it is a new finger tip if it moved as far within one frame
+        TapDetectPoint jump = only(track(3 * INTERVAL_MS, 100, 180));
+        assertNotEquals(start.getTrackId(), jump.getTrackId());
+    }
+
+    @Test
+    public void missedTipKeepsItsTrack() {
+        TapDetectPoint start = only(track(0, 100, 100));
+        assertTrue(only(track(50, 100, 110)).isFalling());
+
+        // missed at 100 ms, nothing was tapping, nothing is released
+        assertTrue(track(100).isEmpty());
+        assertTrue(tracker.getReleased().isEmpty());
+
+        // seen again within `Config.TRACK_GAP_MAX_MS`, judged against where it was last seen
+        TapDetectPoint tap = only(track(150, 100, 111));
+        assertTrue(tap.isTapping());
+        assertEquals(start.getTrackId(), tap.getTrackId());
+    }
+
+    @Test
+    public void missedPressingTipIsReleased() {
+        TapDetectPoint pressing = press();
+
+        assertTrue(track(200).isEmpty());
+        assertEquals(1, tracker.getReleased().size());
+        assertEquals(pressing.getTrackId(), tracker.getReleased().get(0).getTrackId());
+
+        // the same finger tip again, pressing only after another fall
+        TapDetectPoint back = only(track(250, 100, 110));
+        assertEquals(pressing.getTrackId(), back.getTrackId());
+        assertTrue(!back.isTapping() && !back.isPressing());
+        assertTrue(tracker.getReleased().isEmpty());
+    }
+
+    @Test
+    public void gapLongerThanTheMaxLosesTheTrack() {
+        TapDetectPoint pressing = press();
+
+        // unseen for more than `Config.TRACK_GAP_MAX_MS`, even at the same place it is a new finger tip
+        long t = 150 + Config.TRACK_GAP_MAX_MS + INTERVAL_MS;
+        TapDetectPoint again = only(track(t, 100, 110));
+        assertNotEquals(pressing.getTrackId(), again.getTrackId());
+        assertTrue(!again.isTapping() && !again.isPressing());
+        assertEquals(1, tracker.getReleased().size());
+        assertEquals(pressing.getTrackId(), tracker.getReleased().get(0).getTrackId());
+
+        // and does not tap before it falls again
+        assertTrue(only(track(t + INTERVAL_MS, 100, 110)).isLingering());
+    }
+
+    @Test
+    public void gapWithinTheMaxKeepsTheTrack() {
+        TapDetectPoint start = only(track(0, 100, 100));
+        TapDetectPoint again = only(track(Config.TRACK_GAP_MAX_MS, 100, 100));
+        assertEquals(start.getTrackId(), again.getTrackId());
+        assertTrue(again.isLingering());
+    }
+
+    private TapDetectPoint press() {
+        // a tip falling at 0 ~ 50 ms, tapping at 100 ms and pressing at 150 ms
+        track(0, 100, 100);
+        assertTrue(only(track(50, 100, 110)).isFalling());
+        assertTrue(only(track(100, 100, 110)).isTapping());
+        TapDetectPoint pressing = only(track(150, 100, 110));
+        assertTrue(pressing.isPressing());
+        return pressing;
+    }
+
+    private List<TapDetectPoint> track(long timestampMs, double... xy) {
+        List<Point> fingers = new ArrayList<>();
+        for (int i = 0; i < xy.length; i += 2) {
+            fingers.add(new Point(xy[i], xy[i + 1]));
+        }
+        return tracker.getTappingAll(null, fingers, timestampMs);
+    }
+
+    private static TapDetectPoint only(List<TapDetectPoint> tips) {
+        assertEquals(Arrays.toString(tips.toArray()), 1, tips.size());
+        return tips.get(0);
+    }
+}
@@ -0,0 +1,159 @@
+package tapdetect;
+
+import org.junit.Test;
+import org.opencv.core.Point;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import tapdetect.TapDetector.FingerTipStatus;
+import tapdetect.TapDetector.TapDetectPoint;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * `TipMatcher` has to find a least cost assignment, checked against all assignments of small sets,
+ * <br>with buffers reused between calls of any size.
+ */
+public class TipMatcherTest {
+    private static final int MAX_DIST = 25;
+
+    @Test
+    public void closeTipsDoNotStealMatches() {
+        // nearest first would give next[0] to prev[1] and leave next[1] unmatched
+        List<TapDetectPoint> prev = tips(new double[][]{{100, 100}, {100, 110}});
+        List<Point> next = points(new double[][]{{100, 108}, {100, 128}});
+        assertArrayEquals(new int[]{0, 1}, new TipMatcher().match(prev, next, MAX_DIST));
+    }
+
+    @Test
+    public void tipsOutOfReachAreUnmatched() {
+        // `distanceFrom` counts half of the horizontal move
+        List<TapDetectPoint> prev = tips(new double[][]{{0, 0}, {300, 0}});
+        List<Point> next = points(new double[][]{{0, MAX_DIST + 1}, {300 + 2 * MAX_DIST + 2, 0}, {0, 0}});
+        assertArrayEquals(new int[]{-1, -1, 0}, new TipMatcher().match(prev, next, MAX_DIST));
+    }
+
+    @Test
+    public void leastCostOnRandomSets() {
+        // one matcher for all the calls, so that its buffers are reused from bigger and smaller calls
+        TipMatcher matcher = new TipMatcher();
+        Random random = new Random(8);
+        for (int round = 0; round < 2000; ++round) {
+            int n = random.nextInt(7), m = random.nextInt(7);
+            // a small area so that the tips form groups of several tips
+            int area = 20 + random.nextInt(150);
+            List<TapDetectPoint> prev = new ArrayList<>();
+            List<Point> next = new ArrayList<>();
+            for (int j = 0; j < m; ++j) {
+                prev.add(tip(random.nextInt(area), random.nextInt(area)));
+            }
+            for (int i = 0; i < n; ++i) {
+                next.add(new Point(random.nextInt(area), random.nextInt(area)));
+            }
+            int[] gates = null;
+            if (random.nextBoolean()) {
+                gates = new int[m];
+                for (int j = 0; j < m; ++j) {
+                    gates[j] = random.nextInt(MAX_DIST + 1);
+                }
+            }
+
+            int[] matches = matcher.match(prev, next, MAX_DIST, gates);
+            assertValid(prev, next, gates, matches);
+            assertEquals("round " + round, bestScore(prev, next, gates, 0, new boolean[m]),
+                    score(prev, next, matches));
+
+            // the order of the tips does not change the cost
+            List<Point> shuffled = new ArrayList<>(next);
+            Collections.shuffle(shuffled, random);
+            assertEquals(score(prev, next, matches),
+                    score(prev, shuffled, matcher.match(prev, shuffled, MAX_DIST, gates)));
+        }
+    }
+
+    @Test
+    public void manyTipsInOneGroup() {
+        // a row of tips all connected, one group solved at once
+        List<TapDetectPoint> prev = new ArrayList<>();
+        List<Point> next = new ArrayList<>();
+        for (int i = 0; i < 40; ++i) {
+            prev.add(tip(i * 10, 100));
+            next.add(new Point(i * 10 + 2, 100));
+        }
+        int[] matches = new TipMatcher().match(prev, next, MAX_DIST);
+        for (int i = 0; i < 40; ++i) {
+            assertEquals(i, matches[i]);
+        }
+    }
+
+    private static void assertValid(List<TapDetectPoint> prev, List<Point> next, int[] gates, int[] matches) {
+        assertEquals(next.size(), matches.length);
+        boolean[] taken = new boolean[prev.size()];
+        for (int i = 0; i < matches.length; ++i) {
+            int j = matches[i];
+            if (j < 0) {
+                continue;
+            }
+            assertTrue("matched twice", !taken[j]);
+            taken[j] = true;
+            assertTrue("out of the gate", prev.get(j).distanceFrom(next.get(i)) <= gate(gates, j));
+        }
+    }
+
+    private static int score(List<TapDetectPoint> prev, List<Point> next, int[] matches) {
+        // an unmatched tip costs `MAX_DIST + 1`, so the least cost is the most of this score
+        int score = 0;
+        for (int i = 0; i < matches.length; ++i) {
+            if (matches[i] >= 0) {
+                score += MAX_DIST + 1 - prev.get(matches[i]).distanceFrom(next.get(i));
+            }
+        }
+        return score;
+    }
+
+    private static int bestScore(List<TapDetectPoint> prev, List<Point> next, int[] gates, int i, boolean[] taken) {
+        // the most score of all assignments of next[i:]
+        if (i == next.size()) {
+            return 0;
+        }
+        int best = bestScore(prev, next, gates, i + 1, taken);
+        for (int j = 0; j < prev.size(); ++j) {
+            int dist = prev.get(j).distanceFrom(next.get(i));
+            if (!taken[j] && dist <= gate(gates, j)) {
+                taken[j] = true;
+                best = Math.max(best, MAX_DIST + 1 - dist + bestScore(prev, next, gates, i + 1, taken));
+                taken[j] = false;
+            }
+        }
+        return best;
+    }
+
+    private static int gate(int[] gates, int j) {
+        return gates == null ? MAX_DIST : gates[j];
+    }
+
+    private static TapDetectPoint tip(double x, double y) {
+        return new TapDetectPoint(new Point(x, y), FingerTipStatus.NOT_CARE, 0);
+    }
+
+    private static List<TapDetectPoint> tips(double[][] xy) {
+        List<TapDetectPoint> ret = new ArrayList<>();
+        for (double[] p : xy) {
+            ret.add(tip(p[0], p[1]));
+        }
+        return ret;
+    }
+
+    private static List<Point> points(double[][] xy) {
+        List<Point> ret = new ArrayList<>();
+        for (double[] p : xy) {
+            ret.add(new Point(p[0], p[1]));
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,125 @@
+package tapdetect;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * `Util.largeContours` only traces the blobs whose bounding box could hold a large contour,
+ * <br>it has to find the same contours as tracing the whole image, in any order.
+ */
+public class UtilTest {
+    @Before
+    public void setUp() {
+        Fixtures.loadOpencv();
+    }
+
+    @Test
+    public void largeContoursOfRandomBlobs() {
+        Random random = new Random(23);
+        for (int round = 0; round < 50; ++round) {
+            Mat im = Mat.zeros(120 + random.nextInt(80), 160 + random.nextInt(80), CvType.CV_8UC1);
+            for (int i = random.nextInt(30); i > 0; --i) {
+                Point center = new Point(random.nextInt(im.cols()), random.nextInt(im.rows()));
+                Size axes = new Size(1 + random.nextInt(30), 1 + random.nextInt(30));
+                Imgproc.ellipse(im, center, axes, random.nextInt(180), 0, 360, new Scalar(255), -1);
+                if (random.nextInt(3) == 0) {
+                    // a hole, maybe with an island inside
+                    Imgproc.circle(im, center, (int) Math.min(axes.width, axes.height) / 2, new Scalar(0), -1);
+                    Imgproc.circle(im, center, random.nextInt(4), new Scalar(255), -1);
+                }
+            }
+            for (int area : new int[]{0, 20, Config.HAND_AREA_MIN, 2000}) {
+                assertSameAsBaseline("round " + round + ", area " + area, im, area);
+            }
+            im.release();
+        }
+    }
+
+    @Test
+    public void largeContoursOfBlobsOnTheBorder() {
+        // blobs cut by every side of the image, the whole image, single pixels and lines
+        Mat im = Mat.zeros(100, 140, CvType.CV_8UC1);
+        Imgproc.rectangle(im, new Point(0, 0), new Point(30, 20), new Scalar(255), -1);
+        Imgproc.rectangle(im, new Point(110, 70), new Point(139, 99), new Scalar(255), -1);
+        Imgproc.circle(im, new Point(70, 0), 15, new Scalar(255), -1);
+        Imgproc.circle(im, new Point(0, 60), 15, new Scalar(255), -1);
+        Imgproc.line(im, new Point(40, 50), new Point(100, 50), new Scalar(255), 1);
+        Imgproc.line(im, new Point(40, 40), new Point(90, 90), new Scalar(255), 1);
+        im.put(80, 50, 255);
+        for (int area : new int[]{0, 1, 40, Config.HAND_AREA_MIN}) {
+            assertSameAsBaseline("border, area " + area, im, area);
+        }
+
+        im.setTo(new Scalar(255));
+        assertSameAsBaseline("full", im, 0);
+        im.release();
+    }
+
+    @Test
+    public void largeContoursOfHandMasks() {
+        Fixtures.forEachFrame(Config.IM_HEIGHT, new Fixtures.FrameCheck() {
+            @Override
+            public void check(String name, Mat ycrcb, int fingers) {
+                Mat hand = HandDetector.getHand(ycrcb, new ColorRange());
+                assertSameAsBaseline(name, hand, Config.HAND_AREA_MIN);
+                hand.release();
+            }
+        });
+    }
+
+    @Test
+    public void largeContoursOfSubmatWithOffset() {
+        Mat im = Mat.zeros(160, 200, CvType.CV_8UC1);
+        Imgproc.circle(im, new Point(60, 60), 30, new Scalar(255), -1);
+        Imgproc.rectangle(im, new Point(100, 90), new Point(190, 150), new Scalar(255), -1);
+        Mat roi = im.submat(20, 140, 30, 180);
+        Point offset = new Point(30, 20);
+
+        Mat hierarchy = new Mat();
+        List<String> actual = canonical(Util.largeContours(roi, 100, hierarchy, offset));
+        List<MatOfPoint> baseline = Baseline.largeContours(roi.clone(), 100);
+        for (MatOfPoint cnt : baseline) {
+            Core.add(cnt, new Scalar(offset.x, offset.y), cnt);
+        }
+        assertEquals(canonical(baseline), actual);
+        hierarchy.release();
+        roi.release();
+        im.release();
+    }
+
+    private static void assertSameAsBaseline(String message, Mat im, int area) {
+        // `findContours` of the baseline modifies its input in opencv 3.2
+        List<String> expected = canonical(Baseline.largeContours(im.clone(), area));
+        List<String> actual = canonical(Util.largeContours(im, area));
+        assertEquals(message, expected, actual);
+    }
+
+    private static List<String> canonical(List<MatOfPoint> contours) {
+        // each contour as its points, in a sorted list, released
+        List<String> ret = new ArrayList<>();
+        for (MatOfPoint cnt : contours) {
+            int[] xy = new int[(int) cnt.total() * 2];
+            cnt.get(0, 0, xy);
+            ret.add(Arrays.toString(xy));
+            cnt.release();
+        }
+        Collections.sort(ret);
+        return ret;
+    }
+}
@@ -0,0 +1,153 @@
+package tapdetect;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * `YuvFrame.toYCrCb` has to give the working image of the BGR path, i.e. the frame decoded to BGR,
+ * <br>`Util.resize` and `COLOR_BGR2YCrCb`, within the tolerance documented by `YuvFrame`.
+ */
+public class YuvFrameTest {
+    // per pixel, Y then Cr / Cb, block means against bilinear samples at the edges of the hands
+    private static final double Y_TOLERANCE = 19;
+    private static final double C_TOLERANCE = 8;
+    // per pixel once both are blurred by `Config.IM_BLUR_SIZE`, and on average of camera or blurred images
+    private static final double BLURRED_TOLERANCE = 8;
+    private static final double MEAN_TOLERANCE = 1;
+
+    @Before
+    public void setUp() {
+        Fixtures.loadOpencv();
+        Core.setRNGSeed(21);
+    }
+
+    @Test
+    public void cameraFramesWithinTolerance() {
+        // hands as a camera sees them, edges spread over a few pixels
+        for (int fingers = 0; fingers <= 10; fingers += 5) {
+            Mat bgr = camera(Fixtures.synthetic(720, fingers, fingers), 3);
+            Mat[] pair = convert(bgr);
+            String message = fingers + " fingers";
+            Fixtures.assertMaxDiff(message + ", Y", channel(pair[0], 0), channel(pair[1], 0), Y_TOLERANCE);
+            for (int ch = 1; ch < 3; ++ch) {
+                Fixtures.assertMaxDiff(message + ", channel " + ch,
+                        channel(pair[0], ch), channel(pair[1], ch), C_TOLERANCE);
+            }
+            assertMeanDiff(message, pair[0], pair[1]);
+            release(bgr, pair);
+        }
+    }
+
+    @Test
+    public void blurredWorkingImageWithinTolerance() {
+        // sharp snapshots, single pixel edges included, as detection sees them after the blur
+        for (String name : new String[]{"detection.jpg", "sample.jpg"}) {
+            Mat bgr = Fixtures.snapshot(name);
+            Imgproc.resize(bgr, bgr, new Size(1280, 720));
+            Mat[] pair = convert(bgr);
+            Size blur = new Size(Config.IM_BLUR_SIZE, Config.IM_BLUR_SIZE);
+            Imgproc.blur(pair[0], pair[0], blur);
+            Imgproc.blur(pair[1], pair[1], blur);
+            Fixtures.assertMaxDiff(name, pair[0], pair[1], BLURRED_TOLERANCE);
+            assertMeanDiff(name, pair[0], pair[1]);
+            release(bgr, pair);
+        }
+    }
+
+    @Test
+    public void layoutsGiveTheSameImage() {
+        // the same frame as I420 (planar chroma) and NV21 (interleaved VU), with padded rows
+        Mat bgr = camera(Fixtures.synthetic(480, 5, 1), 1);
+        Mat i420 = new Mat();
+        Imgproc.cvtColor(bgr, i420, Imgproc.COLOR_BGR2YUV_I420);
+        int w = bgr.cols(), h = bgr.rows(), stride = w + 16;
+        byte[] planes = new byte[(int) i420.total()];
+        i420.get(0, 0, planes);
+
+        byte[] nv21 = new byte[stride * h * 3 / 2];
+        for (int r = 0; r < h; ++r) {
+            System.arraycopy(planes, r * w, nv21, r * stride, w);
+        }
+        int u = w * h, v = u + w * h / 4;
+        for (int r = 0; r < h / 2; ++r) {
+            for (int c = 0; c < w / 2; ++c) {
+                int i = stride * h + r * stride + c * 2;
+                nv21[i] = planes[v + r * w / 2 + c];
+                nv21[i + 1] = planes[u + r * w / 2 + c];
+            }
+        }
+
+        Mat planar = new Mat(), interleaved = new Mat();
+        YuvFrame.Buffers buffers = new YuvFrame.Buffers();
+        i420(planes, w, h).toYCrCb(Config.IM_HEIGHT, planar, buffers);
+        YuvFrame.nv21(ByteBuffer.wrap(nv21), w, h, stride).toYCrCb(Config.IM_HEIGHT, interleaved, buffers);
+        Fixtures.assertMaxDiff("nv21", planar, interleaved, 0);
+
+        planar.release();
+        interleaved.release();
+        i420.release();
+        bgr.release();
+    }
+
+    private static Mat camera(Mat ycrcb, double sigma) {
+        // a YCrCb image to a BGR frame through a lens blur of `sigma` pixels
+        Imgproc.cvtColor(ycrcb, ycrcb, Imgproc.COLOR_YCrCb2BGR);
+        Imgproc.GaussianBlur(ycrcb, ycrcb, new Size(0, 0), sigma);
+        return ycrcb;
+    }
+
+    private static Mat[] convert(Mat bgr) {
+        /**
+         * @return: the working image of the BGR path and of `YuvFrame`, from the same I420 frame
+         */
+        Mat i420 = new Mat();
+        Imgproc.cvtColor(bgr, i420, Imgproc.COLOR_BGR2YUV_I420);
+        byte[] planes = new byte[(int) i420.total()];
+        i420.get(0, 0, planes);
+
+        Mat expected = new Mat();
+        Imgproc.cvtColor(i420, expected, Imgproc.COLOR_YUV2BGR_I420);
+        Util.resize(expected, Config.IM_HEIGHT);
+        Imgproc.cvtColor(expected, expected, Imgproc.COLOR_BGR2YCrCb);
+
+        Mat actual = new Mat();
+        i420(planes, bgr.cols(), bgr.rows()).toYCrCb(Config.IM_HEIGHT, actual, new YuvFrame.Buffers());
+        i420.release();
+        return new Mat[]{expected, actual};
+    }
+
+    private static YuvFrame i420(byte[] planes, int w, int h) {
+        ByteBuffer buf = ByteBuffer.wrap(planes);
+        return new YuvFrame(w, h, buf, 0, w, buf, w * h, buf, w * h + w * h / 4, w / 2, 1);
+    }
+
+    private static Mat channel(Mat im, int ch) {
+        Mat plane = new Mat();
+        Core.extractChannel(im, plane, ch);
+        return plane;
+    }
+
+    private static void assertMeanDiff(String message, Mat expected, Mat actual) {
+        Mat diff = new Mat();
+        Core.absdiff(expected, actual, diff);
+        double[] mean = Core.mean(diff).val;
+        diff.release();
+        for (int ch = 0; ch < 3; ++ch) {
+            assertTrue(message + ": mean difference " + mean[ch] + " of channel " + ch, mean[ch] < MEAN_TOLERANCE);
+        }
+    }
+
+    private static void release(Mat bgr, Mat[] pair) {
+        bgr.release();
+        pair[0].release();
+        pair[1].release();
+    }
+}
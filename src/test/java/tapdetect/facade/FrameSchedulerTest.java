@@ -0,0 +1,263 @@
+package tapdetect.facade;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import tapdetect.Config;
+import tapdetect.Fixtures;
+import tapdetect.TapDetector.TapDetectPoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Frames of a stream are queued while its worker is held in `onResult` of the first frame:
+ * <br>a full queue drops the oldest frame, a frame waiting beyond the deadline is dropped,
+ * <br>frames of a stream are processed in order, and every frame is released once it is reported,
+ * <br>including the frames of a removed stream, a shut down scheduler, and frames refused by `submit`.
+ */
+public class FrameSchedulerTest {
+    private static final long LONG_DEADLINE_MS = 60000;
+
+    private final int queueSize = Config.SCHEDULER_QUEUE_SIZE;
+    private FrameScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        Fixtures.loadOpencv();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        Config.SCHEDULER_QUEUE_SIZE = queueSize;
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler.awaitTermination(10000);
+        }
+    }
+
+    @Test
+    public void fullQueueDropsOldest() throws InterruptedException {
+        Config.SCHEDULER_QUEUE_SIZE = 2;
+        scheduler = new FrameScheduler(1);
+        Recorder recorder = new Recorder(5);
+        int stream = scheduler.addStream(LONG_DEADLINE_MS, recorder);
+
+        List<Mat> frames = submitHeld(stream, recorder, 5);
+        recorder.resume();
+        recorder.await();
+
+        assertEquals(Arrays.asList(0L, 3L, 4L), recorder.results);
+        assertEquals(Arrays.asList(1L, 2L), recorder.dropped);
+        assertReleased(recorder, frames);
+    }
+
+    @Test
+    public void lateFramesDropped() throws InterruptedException {
+        scheduler = new FrameScheduler(1);
+        Recorder recorder = new Recorder(4);
+        int stream = scheduler.addStream(50, recorder);
+
+        List<Mat> frames = submitHeld(stream, recorder, 3);
+        Thread.sleep(200);
+        recorder.resume();
+        frames.add(frame());
+        // the late frames are dropped when the worker takes the next frame, maybe after this one is queued
+        scheduler.submit(stream, frames.get(3), 3);
+        recorder.await();
+
+        assertEquals(Arrays.asList(0L, 3L), recorder.results);
+        assertEquals(Arrays.asList(1L, 2L), recorder.dropped);
+        assertReleased(recorder, frames);
+    }
+
+    @Test
+    public void streamsInOrder() throws InterruptedException {
+        final int streamCount = 4, frameCount = 50;
+        Config.SCHEDULER_QUEUE_SIZE = frameCount;
+        scheduler = new FrameScheduler(3);
+        Recorder[] recorders = new Recorder[streamCount];
+        int[] streams = new int[streamCount];
+        List<List<Mat>> frames = new ArrayList<>();
+        for (int s = 0; s < streamCount; ++s) {
+            recorders[s] = new Recorder(frameCount);
+            recorders[s].resume();
+            streams[s] = scheduler.addStream(LONG_DEADLINE_MS, recorders[s]);
+            frames.add(new ArrayList<Mat>());
+        }
+        // interleaved submission, the streams spread over the workers
+        for (int i = 0; i < frameCount; ++i) {
+            for (int s = 0; s < streamCount; ++s) {
+                Mat im = frame();
+                frames.get(s).add(im);
+                scheduler.submit(streams[s], im, i);
+            }
+        }
+
+        for (Recorder recorder : recorders) {
+            recorder.await();
+        }
+        for (int s = 0; s < streamCount; ++s) {
+            assertEquals(Collections.<Long>emptyList(), recorders[s].dropped);
+            assertEquals(frameCount, recorders[s].results.size());
+            for (int i = 0; i < frameCount; ++i) {
+                assertEquals("stream " + s, (long) i, (long) recorders[s].results.get(i));
+            }
+            assertReleased(recorders[s], frames.get(s));
+        }
+    }
+
+    @Test
+    public void removedStreamReleasesWaitingFrames() throws InterruptedException {
+        scheduler = new FrameScheduler(1);
+        Recorder recorder = new Recorder(3);
+        int stream = scheduler.addStream(LONG_DEADLINE_MS, recorder);
+
+        List<Mat> frames = submitHeld(stream, recorder, 3);
+        scheduler.removeStream(stream);
+        assertEquals(Arrays.asList(1L, 2L), recorder.dropped);
+        assertTrue(frames.get(1).empty() && frames.get(2).empty());
+
+        Mat refused = frame();
+        try {
+            scheduler.submit(stream, refused, 3);
+            fail("submitted to a removed stream");
+        } catch (IllegalArgumentException e) {
+            assertTrue(refused.empty());
+        }
+
+        // the frame in flight is done and released as usual
+        recorder.resume();
+        recorder.await();
+        assertEquals(Arrays.asList(0L), recorder.results);
+        assertReleased(recorder, frames);
+    }
+
+    @Test
+    public void shutdownReleasesWaitingFrames() throws InterruptedException {
+        scheduler = new FrameScheduler(1);
+        Recorder recorder = new Recorder(3);
+        int stream = scheduler.addStream(LONG_DEADLINE_MS, recorder);
+
+        List<Mat> frames = submitHeld(stream, recorder, 3);
+        scheduler.shutdown();
+        assertEquals(Arrays.asList(1L, 2L), recorder.dropped);
+
+        recorder.resume();
+        recorder.await();
+        assertReleased(recorder, frames);
+
+        Mat refused = frame();
+        try {
+            scheduler.submit(stream, refused, 3);
+            fail("submitted after shutdown");
+        } catch (IllegalStateException e) {
+            assertTrue(refused.empty());
+        }
+        try {
+            scheduler.addStream(LONG_DEADLINE_MS, recorder);
+            fail("stream added after shutdown");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private List<Mat> submitHeld(int stream, Recorder recorder, int count) throws InterruptedException {
+        /**
+         * Submit `count` frames, the first one holding the worker in `onResult` until `recorder.resume()`
+         * @return: the submitted frames
+         */
+        List<Mat> frames = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            frames.add(frame());
+            scheduler.submit(stream, frames.get(i), i);
+            if (i == 0) {
+                assertTrue(recorder.held.await(10, TimeUnit.SECONDS));
+            }
+        }
+        return frames;
+    }
+
+    private void assertReleased(Recorder recorder, List<Mat> frames) throws InterruptedException {
+        // a processed frame is released once `onResult` returns, wait for the workers
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(10000));
+        assertEquals(Collections.<String>emptyList(), recorder.failures);
+        for (int i = 0; i < frames.size(); ++i) {
+            assertTrue("frame " + i + " released", frames.get(i).empty());
+        }
+    }
+
+    private static Mat frame() {
+        return new Mat(Config.IM_HEIGHT, Config.IM_HEIGHT * 4 / 3, CvType.CV_8UC3, new Scalar(Fixtures.SKIN));
+    }
+
+    private static class Recorder implements FrameScheduler.Listener {
+        final List<Long> results = Collections.synchronizedList(new ArrayList<Long>());
+        final List<Long> dropped = Collections.synchronizedList(new ArrayList<Long>());
+        final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch held = new CountDownLatch(1);
+        private final CountDownLatch resumed = new CountDownLatch(1);
+        private final CountDownLatch reported;
+        private int inFlight = 0;
+
+        Recorder(int frameCount) {
+            reported = new CountDownLatch(frameCount);
+        }
+
+        void resume() {
+            resumed.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("frames not reported", reported.await(30, TimeUnit.SECONDS));
+        }
+
+        @Override
+        public void onResult(int streamId, long frameId, List<Point> taps, List<TapDetectPoint> all) {
+            synchronized (this) {
+                if (++inFlight > 1) {
+                    failures.add("frame " + frameId + " overlapped");
+                }
+            }
+            held.countDown();
+            try {
+                if (!resumed.await(30, TimeUnit.SECONDS)) {
+                    failures.add("frame " + frameId + " not resumed");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                --inFlight;
+            }
+            results.add(frameId);
+            reported.countDown();
+        }
+
+        @Override
+        public void onDropped(int streamId, long frameId) {
+            dropped.add(frameId);
+            reported.countDown();
+        }
+
+        @Override
+        public void onError(int streamId, long frameId, RuntimeException e) {
+            failures.add("frame " + frameId + ": " + e);
+            reported.countDown();
+        }
+    }
+}
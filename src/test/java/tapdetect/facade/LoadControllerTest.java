@@ -0,0 +1,139 @@
+package tapdetect.facade;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import tapdetect.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * `LoadController` is fed the synthetic cost of a device: a cost at level 0, scaled with the working area,
+ * <br>a little less without half the blur or the morphology, and a noise of 10%.
+ * <br>The level has to step down until within the budget, step up once the device gets cheaper, and never oscillate;
+ * <br>the interval has to follow the share of it a frame takes.
+ */
+public class LoadControllerTest {
+    private static final double BUDGET_MS = 10;
+    private static final long INTERVAL_MS = 50;
+
+    private final Random random = new Random(17);
+
+    @Test
+    public void stepsDownUntilWithinBudget() {
+        LoadController controller = new LoadController(BUDGET_MS);
+        run(controller, 25, 1000, 0, 1);
+        assertEquals(controller.getLevelCount() - 1, controller.getLevel());
+        assertTrue(cost(controller, 25) < BUDGET_MS);
+
+        // a device too slow for any level stays at the cheapest one
+        run(controller, 100, 1000, 0, 1);
+        assertEquals(controller.getLevelCount() - 1, controller.getLevel());
+    }
+
+    @Test
+    public void stepsUpOnceCheaper() {
+        LoadController controller = new LoadController(BUDGET_MS);
+        run(controller, 25, 1000, 0, 1);
+        int low = controller.getLevel();
+
+        run(controller, 8, 2000, 0, -1);
+        assertTrue(controller.getLevel() < low);
+        assertTrue(controller.getLevel() == 0 || cost(controller, 8) >= BUDGET_MS * Config.LOAD_HEADROOM);
+        assertTrue(cost(controller, 8) <= BUDGET_MS);
+
+        run(controller, 2, 2000, 0, -1);
+        assertEquals(0, controller.getLevel());
+    }
+
+    @Test
+    public void steadyCostNeverOscillates() {
+        // every cost from well within to far beyond the budget settles on one level, whatever the noise
+        for (double deviceMs = 2; deviceMs <= 40; deviceMs += 0.5) {
+            LoadController controller = new LoadController(BUDGET_MS);
+            run(controller, deviceMs, 3000, 0, 1);
+            int level = controller.getLevel();
+            run(controller, deviceMs, 3000, 0, 0);
+            assertEquals("cost " + deviceMs, level, controller.getLevel());
+        }
+    }
+
+    @Test
+    public void intervalFollowsTheLoad() {
+        // a budget never exceeded, only the interval moves
+        LoadController controller = new LoadController(100);
+
+        // 90% of the interval, stretched once to 60%
+        run(controller, 45, 500, INTERVAL_MS, 0);
+        assertEquals(0, controller.getLevel());
+        assertEquals(75, controller.getIntervalMs(INTERVAL_MS));
+
+        // beyond the interval, stretched to the longest
+        run(controller, 70, 500, INTERVAL_MS, 0);
+        assertEquals(100, controller.getIntervalMs(INTERVAL_MS));
+
+        // light enough for the shortest interval again, step by step
+        run(controller, 20, 500, INTERVAL_MS, 0);
+        assertEquals(INTERVAL_MS, controller.getIntervalMs(INTERVAL_MS));
+
+        // frames not throttled, the interval is left alone
+        run(controller, 70, 500, 0, 0);
+        assertEquals(INTERVAL_MS, controller.getIntervalMs(INTERVAL_MS));
+    }
+
+    @Test
+    public void intervalNeverOscillates() {
+        // close to `Config.LOAD_CPU_MAX` the noise may stretch the interval late, but it never comes back
+        for (double deviceMs = 5; deviceMs <= 120; deviceMs += 1) {
+            LoadController controller = new LoadController(1000);
+            long interval = controller.getIntervalMs(INTERVAL_MS);
+            for (int i = 0; i < 6000; ++i) {
+                controller.onFrame(noisy(deviceMs), INTERVAL_MS);
+                long next = controller.getIntervalMs(INTERVAL_MS);
+                assertTrue("cost " + deviceMs + " at frame " + i, next >= interval);
+                interval = next;
+            }
+        }
+    }
+
+    private void run(LoadController controller, double deviceMs, int frames, long intervalMs, int direction) {
+        /**
+         * @param direction: 1 if the level could only step down, -1 only up, 0 if it could not change at all
+         *      once it changed in one direction, i.e. it must not come back
+         */
+        int last = controller.getLevel();
+        int moved = 0;
+        for (int i = 0; i < frames; ++i) {
+            controller.onFrame(noisy(cost(controller, deviceMs)), intervalMs);
+            int step = Integer.signum(controller.getLevel() - last);
+            last = controller.getLevel();
+            if (step != 0) {
+                assertTrue("level " + last + " at cost " + deviceMs, direction == 0 ? moved == 0 : step == direction);
+                moved = direction == 0 ? step : moved;
+            }
+            if (direction == 0 && step != 0) {
+                // settling from the first frames, but then no more changes
+                assertTrue("level " + last + " changed after frame " + i, i < frames / 3);
+            }
+        }
+    }
+
+    private double noisy(double costMs) {
+        return costMs * (0.9 + 0.2 * random.nextDouble());
+    }
+
+    private static double cost(LoadController controller, double deviceMs) {
+        // `deviceMs` at level 0, scaled with the working area
+        double height = (double) controller.getHeight() / Config.IM_HEIGHT;
+        double cost = deviceMs * height * height;
+        if (controller.getBlurSize() < Config.IM_BLUR_SIZE * height) {
+            cost *= 0.95;
+        }
+        if (!controller.isMorphologyEnabled()) {
+            cost *= 0.9;
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,105 @@
+package tapdetect.facade;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Subscribers of `TapEventStream` never hold the publisher back,
+ * <br>a lapped one skips to the oldest event still in the ring and sees the gap.
+ */
+public class TapEventStreamTest {
+    private static final int RING = 16;
+
+    private static class Collector implements TapEventStream.Listener {
+        final List<Long> sequences = new ArrayList<>();
+        boolean torn = false;
+
+        @Override
+        public void onEvent(TapEventStream.Event event) {
+            sequences.add(event.getSequence());
+            // every field of an event is written from its sequence number
+            long seq = event.getSequence();
+            torn |= event.getTimestampMs() != seq || event.getTrackId() != (int) seq
+                    || event.getX() != seq || event.getY() != -seq;
+        }
+    }
+
+    @Test
+    public void idleSubscriberDoesNotBlockOthers() {
+        TapEventStream stream = new TapEventStream(RING);
+        stream.subscribe();  // never polled nor closed
+        TapEventStream.Subscription sub = stream.subscribe();
+        Collector collector = new Collector();
+        for (int i = 0; i < RING * 3; ++i) {
+            publish(stream, i);
+            sub.poll(collector);
+        }
+        assertEquals(RING * 3, collector.sequences.size());
+        for (int i = 0; i < RING * 3; ++i) {
+            assertEquals(i, (long) collector.sequences.get(i));
+        }
+        assertEquals(0, sub.getMissed());
+    }
+
+    @Test
+    public void lappedSubscriberSkipsToOldest() {
+        TapEventStream stream = new TapEventStream(RING);
+        TapEventStream.Subscription sub = stream.subscribe();
+        int total = RING * 2 + RING / 2;
+        for (int i = 0; i < total; ++i) {
+            publish(stream, i);
+        }
+        Collector collector = new Collector();
+        assertEquals(RING, sub.poll(collector));
+        assertEquals(total - RING, sub.getMissed());
+        for (int i = 0; i < RING; ++i) {
+            assertEquals(total - RING + i, (long) collector.sequences.get(i));
+        }
+
+        // caught up again
+        publish(stream, total);
+        assertEquals(1, sub.poll(collector));
+        assertEquals(total, (long) collector.sequences.get(RING));
+        assertEquals(total - RING, sub.getMissed());
+    }
+
+    @Test
+    public void concurrentReaderSeesWholeEventsInOrder() throws InterruptedException {
+        final TapEventStream stream = new TapEventStream(RING);
+        final TapEventStream.Subscription sub = stream.subscribe();
+        final int total = 200000;
+        final Collector collector = new Collector();
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                while (!sub.isClosed() || sub.poll(collector) > 0) {
+                    sub.await(collector, 10);
+                }
+            }
+        };
+        reader.start();
+        for (int i = 0; i < total; ++i) {
+            publish(stream, i);
+            if (i % 64 == 0) {
+                stream.flush();
+            }
+        }
+        sub.close();
+        reader.join();
+
+        assertTrue("torn event", !collector.torn);
+        for (int i = 1; i < collector.sequences.size(); ++i) {
+            assertTrue(collector.sequences.get(i) > collector.sequences.get(i - 1));
+        }
+        assertEquals(total, collector.sequences.size() + sub.getMissed());
+    }
+
+    private static void publish(TapEventStream stream, long seq) {
+        stream.publish(TapEventStream.Type.PRESS, seq, (int) seq, seq, -seq);
+    }
+}
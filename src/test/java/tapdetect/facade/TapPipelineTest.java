@@ -0,0 +1,194 @@
+package tapdetect.facade;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import tapdetect.Config;
+import tapdetect.Fixtures;
+import tapdetect.TapDetector.TapDetectPoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Numbered frames are pushed through a pipeline saturated by a slow listener:
+ * <br>frames are tracked in submission order, every frame ends up tracked or dropped once, and is released.
+ */
+public class TapPipelineTest {
+    private static final int FRAMES = 200;
+    private static final long START_MS = 1000;
+
+    private final int queueSize = Config.PIPELINE_QUEUE_SIZE;
+    private TapPipeline pipeline;
+
+    @Before
+    public void setUp() {
+        Fixtures.loadOpencv();
+        Config.PIPELINE_QUEUE_SIZE = 1;
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        Config.PIPELINE_QUEUE_SIZE = queueSize;
+        if (pipeline != null) {
+            pipeline.stop();
+            pipeline.getSession().release();
+        }
+    }
+
+    @Test
+    public void saturatedFramesInOrderAndReleased() throws InterruptedException {
+        final Mat[] frames = new Mat[FRAMES];
+        final int[] seen = new int[FRAMES];
+        final List<Long> tracked = Collections.synchronizedList(new ArrayList<Long>());
+        final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(FRAMES);
+
+        pipeline = new TapPipeline(new TapPipeline.Listener() {
+            @Override
+            public void onResult(long frameId, List<Point> taps, List<TapDetectPoint> all) {
+                tracked.add(timestampOf(frameId));
+                ++seen[(int) frameId];
+                try {
+                    // the tracking stage is the bottleneck, the queues before it fill up
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+
+            @Override
+            public void onDropped(long frameId) {
+                if (!frames[(int) frameId].empty()) {
+                    failures.add("frame " + frameId + " dropped but not released");
+                }
+                ++seen[(int) frameId];
+                done.countDown();
+            }
+
+            @Override
+            public void onError(long frameId, RuntimeException e) {
+                failures.add("frame " + frameId + ": " + e);
+                ++seen[(int) frameId];
+                done.countDown();
+            }
+        });
+        calibrate(pipeline.getSession());
+        pipeline.start();
+
+        Mat[] hands = new Mat[3];
+        for (int i = 0; i < hands.length; ++i) {
+            hands[i] = Fixtures.synthetic(Config.IM_HEIGHT * 2, 5, i);
+            Imgproc.cvtColor(hands[i], hands[i], Imgproc.COLOR_YCrCb2BGR);
+        }
+        for (int i = 0; i < FRAMES; ++i) {
+            frames[i] = hands[i % hands.length].clone();
+            pipeline.submit(frames[i], timestampOf(i));
+        }
+        for (Mat hand : hands) {
+            hand.release();
+        }
+        assertTrue("frames left in the pipeline", done.await(60, TimeUnit.SECONDS));
+        pipeline.stop();
+
+        assertEquals(Collections.<String>emptyList(), failures);
+        for (int i = 0; i < FRAMES; ++i) {
+            assertEquals("frame " + i + " reported", 1, seen[i]);
+            assertTrue("frame " + i + " released", frames[i].empty());
+        }
+        assertTrue(tracked.size() > 0);
+        assertTrue("not saturated", tracked.size() < FRAMES);
+        for (int i = 1; i < tracked.size(); ++i) {
+            assertTrue("tracked " + tracked.get(i) + " after " + tracked.get(i - 1), tracked.get(i) > tracked.get(i - 1));
+        }
+    }
+
+    @Test
+    public void startRefusedWithSessionModes() throws InterruptedException {
+        for (int mode = 0; mode < 6; ++mode) {
+            pipeline = new TapPipeline(new TapPipeline.Listener() {
+                @Override
+                public void onResult(long frameId, List<Point> taps, List<TapDetectPoint> all) {
+                }
+
+                @Override
+                public void onDropped(long frameId) {
+                }
+
+                @Override
+                public void onError(long frameId, RuntimeException e) {
+                }
+            });
+            TapSession session = pipeline.getSession();
+            setMode(session, mode, true);
+            try {
+                pipeline.start();
+                fail("mode " + mode + " started");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+
+            // the plain detection path starts
+            setMode(session, mode, false);
+            pipeline.start();
+            pipeline.stop();
+            session.release();
+        }
+        pipeline = null;
+    }
+
+    private static long timestampOf(long frameId) {
+        return START_MS + frameId * Config.PROCESS_INTERVAL_MS;
+    }
+
+    private static void calibrate(TapSession session) {
+        // sample a frame of skin before the pipeline runs
+        session.setThrottled(false);
+        Mat skin = new Mat(Config.IM_HEIGHT, Config.IM_HEIGHT * 4 / 3, CvType.CV_8UC3, new Scalar(Fixtures.SKIN));
+        Fixtures.addNoise(skin, 20);
+        Imgproc.cvtColor(skin, skin, Imgproc.COLOR_YCrCb2BGR);
+        for (int i = 0; i < Config.SAMPLE_STABLE_CNT * 2 && !session.sampleCompleted(); ++i) {
+            Mat im = skin.clone();
+            session.getTaps(im, i);
+            im.release();
+        }
+        skin.release();
+        assertTrue(session.sampleCompleted());
+    }
+
+    private static void setMode(TapSession session, int mode, boolean on) {
+        switch (mode) {
+            case 0:
+                session.setRoiMode(on);
+                break;
+            case 1:
+                session.setPyramidMode(on);
+                break;
+            case 2:
+                session.setMotionGate(on);
+                break;
+            case 3:
+                session.setParallelSegmentation(on);
+                break;
+            case 4:
+                session.setRecalibration(on);
+                break;
+            default:
+                session.setLoadBudget(on ? 10 : 0);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package tapdetect.facade;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import tapdetect.Config;
+import tapdetect.Fixtures;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * With the motion gate, a frame where nothing moved is skipped before preprocessing and not tracked,
+ * <br>unless a finger tip of the last frame would change its status, e.g. a falling tip coming to rest.
+ */
+public class TapSessionMotionGateTest {
+    private TapSession session;
+    private final FrameResult result = new FrameResult();
+    private long timestampMs = 0;
+
+    @Before
+    public void setUp() {
+        Fixtures.loadOpencv();
+        session = new TapSession();
+        session.setThrottled(false);
+        session.setMetricsEnabled(true);
+        Mat skin = noisy(new Mat(Config.IM_HEIGHT, Config.IM_HEIGHT * 4 / 3, CvType.CV_8UC3, new Scalar(Fixtures.SKIN)));
+        for (int i = 0; i < Config.SAMPLE_STABLE_CNT * 2 && !session.sampleCompleted(); ++i) {
+            process(skin);
+        }
+        skin.release();
+        assertTrue(session.sampleCompleted());
+        session.setMotionGate(true);
+    }
+
+    @After
+    public void tearDown() {
+        if (session != null) {
+            session.release();
+        }
+    }
+
+    @Test
+    public void stillFramesAreNotTracked() {
+        assertEquals(FrameResult.PROCESSED, step(150));
+        assertTrue(result.size() > 0);
+        int[] tracks = trackIds();
+
+        // still for longer than a track could stay unseen, the tips are held rather than lost
+        long still = 0;
+        for (int i = 0; i * Config.PROCESS_INTERVAL_MS <= Config.TRACK_GAP_MAX_MS * 3; ++i) {
+            assertEquals(FrameResult.STILL, step(150));
+            assertEquals(0, result.size());
+            ++still;
+        }
+        assertEquals(still, session.getMetrics().getFramesStatic());
+
+        assertEquals(FrameResult.PROCESSED, step(154));
+        assertArrayEquals(tracks, trackIds());
+    }
+
+    @Test
+    public void fallingTipIsJudgedWhenItStops() {
+        assertEquals(FrameResult.PROCESSED, step(140));
+        assertEquals(FrameResult.PROCESSED, step(150));
+        assertTrue(result.size() > 0 && result.getStatus(0) == FrameResult.FALLING);
+
+        // no tile changed, but the falling tips came to rest: a tap
+        assertEquals(FrameResult.PROCESSED, step(150));
+        assertTrue(result.isTapping(0));
+        assertEquals(FrameResult.PROCESSED, step(150));
+        assertTrue(result.isPressing(0));
+
+        // pressing tips stay pressing, nothing to judge again
+        assertEquals(FrameResult.STILL, step(150));
+        assertEquals(1, session.getMetrics().getFramesStatic());
+    }
+
+    private int process(Mat frame) {
+        timestampMs += Config.PROCESS_INTERVAL_MS;
+        Mat im = frame.clone();
+        session.process(im, timestampMs, result);
+        im.release();
+        return result.getFrameStatus();
+    }
+
+    private int step(int bottom) {
+        Mat frame = hand(bottom);
+        int status = process(frame);
+        frame.release();
+        return status;
+    }
+
+    private int[] trackIds() {
+        int[] ids = new int[result.size()];
+        for (int i = 0; i < ids.length; ++i) {
+            ids[i] = result.getTrackId(i);
+        }
+        return ids;
+    }
+
+    private static Mat hand(int bottom) {
+        /**
+         * @return: a BGR frame of a palm with 4 fingers hanging down to row `bottom`, the same noise every time
+         */
+        Mat im = new Mat(Config.IM_HEIGHT, Config.IM_HEIGHT * 4 / 3, CvType.CV_8UC3, new Scalar(Fixtures.BACKGROUND));
+        Scalar skin = new Scalar(Fixtures.SKIN);
+        Imgproc.rectangle(im, new Point(90, 50), new Point(240, 110), skin, -1);
+        for (int x = 110; x <= 220; x += 36) {
+            Imgproc.rectangle(im, new Point(x - 8, 100), new Point(x + 8, bottom - 8), skin, -1);
+            Imgproc.ellipse(im, new Point(x, bottom - 8), new Size(8, 8), 0, 0, 180, skin, -1);
+        }
+        return noisy(im);
+    }
+
+    private static Mat noisy(Mat im) {
+        // a YCrCb image with the same noise every time, to BGR
+        Fixtures.addNoise(im, 20);
+        Imgproc.cvtColor(im, im, Imgproc.COLOR_YCrCb2BGR);
+        return im;
+    }
+}
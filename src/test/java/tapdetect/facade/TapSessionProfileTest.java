@@ -0,0 +1,114 @@
+package tapdetect.facade;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+
+import tapdetect.Config;
+import tapdetect.Fixtures;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A loaded profile only replaces the calibration and the sensibility settings of its session
+ * <br>once a frame fits it, and leaves them untouched otherwise.
+ */
+public class TapSessionProfileTest {
+    private static final String KEY = "camera 1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Mat skin, background;
+    private long timestampMs = 0;
+
+    @Before
+    public void setUp() throws Exception {
+        Fixtures.loadOpencv();
+        skin = frame(new double[]{150, 150, 110});
+        background = frame(new double[]{70, 128, 128});
+
+        // a profile calibrated on `skin`, with other settings than the default ones
+        TapSession saved = new TapSession();
+        saved.setThrottled(false);
+        saved.getSensibility().setMotionSensibility(0);
+        saved.getSensibility().setCalibrationColorSensibility(0);
+        for (int i = 0; i < Config.SAMPLE_STABLE_CNT * 2 && !saved.sampleCompleted(); ++i) {
+            process(saved, skin);
+        }
+        assertTrue(saved.sampleCompleted());
+        assertTrue(saved.saveProfile(folder.getRoot(), KEY));
+        saved.release();
+    }
+
+    @After
+    public void tearDown() {
+        if (skin != null) {
+            skin.release();
+            background.release();
+        }
+    }
+
+    @Test
+    public void fittingProfileIsApplied() {
+        TapSession session = new TapSession();
+        session.setThrottled(false);
+        assertTrue(session.loadProfile(folder.getRoot(), KEY));
+        process(session, skin);
+
+        assertTrue(session.sampleCompleted());
+        assertEquals(20, session.getSensibility().getMoveDistMax());
+        assertEquals(0.75, session.getSensibility().getSamplePassThreshold(), 0);
+        session.release();
+    }
+
+    @Test
+    public void profileNotFittingLeavesTheSessionAlone() {
+        TapSession session = new TapSession();
+        session.setThrottled(false);
+        session.getSensibility().setMotionSensibility(2);
+        double threshold = session.getSensibility().getSamplePassThreshold();
+        double[] range = session.getColorRange().getRange()[1].val.clone();
+
+        assertTrue(session.loadProfile(folder.getRoot(), KEY));
+        // pending, nothing changes before a frame is checked
+        assertEquals(35, session.getSensibility().getMoveDistMax());
+        assertFalse(session.sampleCompleted());
+
+        process(session, background);
+        assertEquals(35, session.getSensibility().getMoveDistMax());
+        assertEquals(threshold, session.getSensibility().getSamplePassThreshold(), 0);
+        assertArrayEquals(range, session.getColorRange().getRange()[1].val, 0);
+        assertFalse(session.sampleCompleted());
+        session.release();
+    }
+
+    private void process(TapSession session, Mat frame) {
+        timestampMs += Config.PROCESS_INTERVAL_MS;
+        Mat im = frame.clone();
+        session.getAll(im, timestampMs, null, null);
+        im.release();
+    }
+
+    private static Mat frame(double[] ycrcb) {
+        // a BGR frame of the color `ycrcb` with a noise of a few levels
+        Mat im = new Mat(Config.IM_HEIGHT, Config.IM_HEIGHT * 4 / 3, CvType.CV_8UC3, new Scalar(ycrcb));
+        Mat noise = new Mat(im.size(), CvType.CV_8UC3);
+        Core.randu(noise, 0, 4);
+        Core.add(im, noise, im);
+        noise.release();
+        Imgproc.cvtColor(im, im, Imgproc.COLOR_YCrCb2BGR);
+        return im;
+    }
+}
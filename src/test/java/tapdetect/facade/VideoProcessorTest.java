@@ -0,0 +1,69 @@
+package tapdetect.facade;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.VideoWriter;
+
+import java.io.File;
+
+import tapdetect.Fixtures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Chunks of `VideoProcessor` have to start exactly at their first frame
+ */
+public class VideoProcessorTest {
+    private static final int FRAMES = 60;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String path;
+
+    @Before
+    public void setUp() throws Exception {
+        Fixtures.loadOpencv();
+
+        // frame i is all of level 4 * i, so that the index survives the compression
+        path = new File(folder.getRoot(), "frames.avi").getPath();
+        VideoWriter writer = new VideoWriter(path, VideoWriter.fourcc('M', 'J', 'P', 'G'), 30, new Size(64, 48));
+        Assume.assumeTrue("no video encoder", writer.isOpened());
+        for (int i = 0; i < FRAMES; ++i) {
+            Mat frame = new Mat(48, 64, CvType.CV_8UC3, new Scalar(4 * i, 4 * i, 4 * i));
+            writer.write(frame);
+            frame.release();
+        }
+        writer.release();
+    }
+
+    @Test
+    public void seekLandsOnTheFrame() {
+        VideoProcessor processor = new VideoProcessor(path);
+        Mat frame = new Mat();
+        for (long target : new long[]{0, 1, 17, 30, FRAMES - 1}) {
+            VideoCapture capture = new VideoCapture(path);
+            assertEquals(target, processor.seek(capture, target));
+            assertTrue(capture.read(frame));
+            assertEquals(target, Math.round(frame.get(0, 0)[0] / 4));
+            capture.release();
+        }
+        frame.release();
+    }
+
+    @Test
+    public void seekStopsAtTheEnd() {
+        VideoCapture capture = new VideoCapture(path);
+        assertTrue(new VideoProcessor(path).seek(capture, FRAMES + 10) <= FRAMES);
+        capture.release();
+    }
+}